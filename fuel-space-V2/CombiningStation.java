@@ -0,0 +1,245 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Flat-combining front-end for a SpaceFuelStation.
+ *
+ * Vehicles do not take the station lock themselves. Each arrival or
+ * departure is published as an Op; whichever caller wins the combiner flag
+ * drains every published op into one SpaceFuelStation.Batch and applies it
+ * in a single critical section, then wakes the owners. Under bursty load
+ * one lock acquisition serves a whole group of vehicles, and the other
+ * callers never queue on the station lock at all.
+ *
+ * A vehicle that has to wait in the station queue parks until its
+ * request's onWake fires, exactly like refuelVehicle's condition wait.
+ * Visits emit the same StationEvents as on the station itself: the batch
+ * emits Arrival and Queued, the vehicle's own thread Admitted (or Aborted),
+ * Departed and a QueueWait around each park; the batch's wakeup pass is a
+ * WakeupScan.
+ */
+public class CombiningStation implements FuelDepot {
+
+    private static final int MAX_BATCH = 256;
+    private static final long IDLE_PARK_NS = 20_000;
+
+    private enum Kind {
+        REFUEL_ARRIVAL, SUPPLY_ARRIVAL, REFUEL_DEPARTURE, SUPPLY_DEPARTURE
+    }
+
+    /** One published call. */
+    private static final class Op {
+        final Kind kind;
+        final SpaceFuelStation.Request req;
+        final Thread owner = Thread.currentThread();
+        volatile boolean applied; // taken into a batch
+        volatile boolean ready;   // result known: docked, aborted or departed
+
+        /** An arrival: the station calls finish() once the request is docked or aborted. */
+        Op(Kind kind, int id, String type, int n, int q) {
+            this.kind = kind;
+            this.req = new SpaceFuelStation.Request(n, q, this::finish);
+            req.id = id;
+            req.type = type;
+        }
+
+        /** A departure of a request that is docked. */
+        Op(Kind kind, SpaceFuelStation.Request req) {
+            this.kind = kind;
+            this.req = req;
+        }
+
+        void finish() {
+            ready = true;
+            if (owner != Thread.currentThread()) {
+                LockSupport.unpark(owner);
+            }
+        }
+    }
+
+    private final SpaceFuelStation station;
+    private final ConcurrentLinkedQueue<Op> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean combining = new AtomicBoolean(false);
+
+    // Only touched by the thread holding the combiner flag.
+    private final SpaceFuelStation.Batch batch = new SpaceFuelStation.Batch();
+    private final List<Op> taken = new ArrayList<>(MAX_BATCH);
+
+    public CombiningStation(SpaceFuelStation station) {
+        this.station = station;
+    }
+
+    // --- FuelDepot ---
+
+    @Override
+    public boolean refuelVehicle(int id, String type, int reqN, int reqQ, int dockTimeMs) throws InterruptedException {
+        Logger.logTrace(id, type, "Arrived, requesting {}N, {}Q.", reqN, reqQ);
+        StationMetrics.VehicleStats stats = station.metrics().vehicle(type);
+        long arrived = System.nanoTime();
+        Op arrival = arrive(Kind.REFUEL_ARRIVAL, id, type, reqN, reqQ, arrived);
+        if (arrival.req.isAborted) {
+            Logger.logTrace(id, type, "Mission Aborted: Station lacks fuel and no producers remain.");
+            stats.aborts.increment();
+            return false;
+        }
+
+        long docked = System.nanoTime();
+        stats.wait.record(docked - arrived);
+        Logger.logTrace(id, type, "Docked. Pumping fuel...");
+        try {
+            Thread.sleep(dockTimeMs);
+        } finally {
+            await(new Op(Kind.REFUEL_DEPARTURE, arrival.req), false);
+            recordDeparture(stats, id, type, arrived, docked);
+        }
+        Logger.logTrace(id, type, "Finished refueling and departed.");
+        return true;
+    }
+
+    @Override
+    public boolean supplyStation(int id, int depN, int depQ, int retN, int retQ, int dockTimeMs)
+            throws InterruptedException {
+        Logger.logTrace(id, "Supply", "Arrived to deposit {}N, {}Q.", depN, depQ);
+        StationMetrics.VehicleStats stats = station.metrics().vehicle("Supply");
+        long arrived = System.nanoTime();
+        Op arrival = arrive(Kind.SUPPLY_ARRIVAL, id, "Supply", depN, depQ, arrived);
+        if (arrival.req.isAborted) {
+            Logger.logTrace(id, "Supply", "Mission Aborted: Station full and no consumers remain.");
+            stats.aborts.increment();
+            return false;
+        }
+
+        long docked = System.nanoTime();
+        stats.wait.record(docked - arrived);
+        Logger.logTrace(id, "Supply", "Docked. Depositing fuel...");
+        try {
+            Thread.sleep(dockTimeMs);
+        } finally {
+            await(new Op(Kind.SUPPLY_DEPARTURE, arrival.req), false);
+            recordDeparture(stats, id, "Supply", arrived, docked);
+        }
+        Logger.logTrace(id, "Supply", "Finished deposit. Requesting return fuel...");
+
+        return refuelVehicle(id, "Supply", retN, retQ, dockTimeMs);
+    }
+
+    @Override
+    public void unregisterConsumer() {
+        station.unregisterConsumer();
+    }
+
+    @Override
+    public void unregisterProducer() {
+        station.unregisterProducer();
+    }
+
+    @Override
+    public SupplyDispatcher dispatcher() {
+        return station.dispatcher();
+    }
+
+    /** Metrics go to the wrapped station's registry, as if the calls had been made on it directly. */
+    private void recordDeparture(StationMetrics.VehicleStats stats, int id, String type, long arrived, long docked) {
+        long now = System.nanoTime();
+        stats.hold.record(now - docked);
+        stats.visit.record(now - arrived);
+        StationEvents.departed(station.metrics().name(), null, id, type, now - docked, now - arrived);
+    }
+
+    // --- COMBINING ---
+
+    /** Publishes an arrival and returns once it is docked or aborted. */
+    private Op arrive(Kind kind, int id, String type, int n, int q, long arrived) throws InterruptedException {
+        Op op = new Op(kind, id, type, n, q);
+        boolean done = await(op, true);
+        String name = station.metrics().name();
+        long waited = System.nanoTime() - arrived;
+        if (!done) {
+            StationEvents.aborted(name, null, id, type, "interrupted", waited);
+            throw new InterruptedException();
+        }
+        if (op.req.isAborted) {
+            StationEvents.aborted(name, null, id, type, "hopeless", waited);
+        } else {
+            StationEvents.admitted(name, null, id, type, waited, op.req.reqN, op.req.reqQ, op.req.dock.index);
+        }
+        return op;
+    }
+
+    /**
+     * Publishes op, combining if nobody else is, and waits until it is ready.
+     * If interruptible, an interrupt withdraws the op (from the pending list
+     * or the station queue) and returns false; an op that docks first wins,
+     * and the interrupt is re-raised instead. Departures are never withdrawn.
+     */
+    private boolean await(Op op, boolean interruptible) {
+        pending.add(op);
+        boolean interrupted = false;
+        while (!op.ready) {
+            if (!op.applied && combining.compareAndSet(false, true)) {
+                try {
+                    combine();
+                } finally {
+                    combining.set(false);
+                }
+                continue;
+            }
+            if (interrupted && interruptible) {
+                if (op.applied ? station.cancel(op.req) : pending.remove(op)) {
+                    return false;
+                }
+                // Too late to withdraw. Re-check before parking: cancel may have
+                // blocked on the station lock and eaten finish()'s unpark.
+                if (op.ready) {
+                    break;
+                }
+            }
+            // Timed while unapplied: the combiner may have drained just before we published.
+            if (op.applied) {
+                // Only an arrival can be parked in the station queue; a departure is finished by its batch.
+                StationEvents.QueueWait wait = op.kind == Kind.REFUEL_ARRIVAL || op.kind == Kind.SUPPLY_ARRIVAL
+                        ? StationEvents.beginWait() : null;
+                LockSupport.park(this);
+                StationEvents.endWait(wait, station.metrics().name(), null, op.req.id, op.req.type);
+            } else {
+                LockSupport.parkNanos(this, IDLE_PARK_NS);
+            }
+            interrupted |= Thread.interrupted();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+
+    /** Combiner flag held: applies everything published so far as one batch. */
+    private void combine() {
+        Op op;
+        while (taken.size() < MAX_BATCH && (op = pending.poll()) != null) {
+            switch (op.kind) {
+                case REFUEL_ARRIVAL -> batch.refuelArrivals.add(op.req);
+                case SUPPLY_ARRIVAL -> batch.supplyArrivals.add(op.req);
+                case REFUEL_DEPARTURE -> batch.refuelDepartures.add(op.req);
+                case SUPPLY_DEPARTURE -> batch.supplyDepartures.add(op.req);
+            }
+            taken.add(op);
+        }
+        if (taken.isEmpty()) {
+            return;
+        }
+
+        // Arrivals are finished by their onWake, inside or after this call.
+        station.applyBatch(batch);
+        for (Op o : taken) {
+            o.applied = true;
+            if (o.kind == Kind.REFUEL_DEPARTURE || o.kind == Kind.SUPPLY_DEPARTURE) {
+                o.finish();
+            }
+        }
+        batch.clear();
+        taken.clear();
+    }
+}
@@ -0,0 +1,162 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One docking bay of a SpaceFuelStation, with its own pump state.
+ *
+ * The station still counts free bays in its packed admission word; a vehicle
+ * that has been counted in then claims a concrete dock with one CAS on the
+ * dock's status. From then on everything the vehicle does until it leaves
+ * (pumping fuel out, its service counters) touches only this dock, so
+ * departures at different docks do not contend with each other or with the
+ * station lock.
+ *
+ * Fuel pumped out is kept per dock and folded into the tank level by
+ * whoever reads it (SpaceFuelStation.nLevel), like a striped counter.
+ */
+final class Dock {
+    private static final int FREE = 0, BUSY = 1, RETIRING = 2, OFFLINE = 3;
+
+    final int index;
+    private final AtomicInteger status = new AtomicInteger(FREE);
+
+    // Written only by the current occupant; the status CAS hands them on.
+    private final AtomicLong pumpedN = new AtomicLong();
+    private final AtomicLong pumpedQ = new AtomicLong();
+    long journalId; // the occupant's reservation record on a durable station
+
+    // --- SERVICE COUNTERS (dock lock) ---
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long addedNanos = System.nanoTime();
+    private long occupiedSince;
+    private long services;
+    private long busyNanos;
+
+    Dock(int index) {
+        this.index = index;
+    }
+
+    /** Takes the dock if it is free; the caller must already hold a bay from vFree. */
+    boolean tryClaim() {
+        if (!status.compareAndSet(FREE, BUSY)) {
+            return false;
+        }
+        lock.lock();
+        try {
+            occupiedSince = System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    /** Occupant only: fuel leaves the tank through this dock. */
+    void pump(int n, int q) {
+        pumpedN.addAndGet(n);
+        pumpedQ.addAndGet(q);
+    }
+
+    /**
+     * The occupant leaves. True if the dock is free again and its bay goes
+     * back into vFree; false if it was retiring and is now offline.
+     */
+    boolean vacate() {
+        lock.lock();
+        try {
+            services++;
+            busyNanos += System.nanoTime() - occupiedSince;
+        } finally {
+            lock.unlock();
+        }
+        // Without the station lock: an admin call may flip BUSY and RETIRING meanwhile.
+        while (true) {
+            if (status.compareAndSet(BUSY, FREE)) {
+                return true;
+            }
+            if (status.compareAndSet(RETIRING, OFFLINE)) {
+                return false;
+            }
+        }
+    }
+
+    // --- ADMINISTRATION (station lock held) ---
+
+    boolean isFree() {
+        return status.get() == FREE;
+    }
+
+    /** Free to offline; the caller must hold a bay from vFree for it. */
+    boolean tryTakeOffline() {
+        return status.compareAndSet(FREE, OFFLINE);
+    }
+
+    /** Busy to retiring: the dock goes offline when its occupant leaves. */
+    boolean tryRetire() {
+        return status.compareAndSet(BUSY, RETIRING);
+    }
+
+    /** Retiring back to busy; true if the dock had not gone offline yet. */
+    boolean tryUnretire() {
+        return status.compareAndSet(RETIRING, BUSY);
+    }
+
+    /** Offline to free; the caller then adds the bay to vFree. */
+    boolean tryBringOnline() {
+        return status.compareAndSet(OFFLINE, FREE);
+    }
+
+    /** Retiring docks still count until their occupant has left. */
+    boolean isOnline() {
+        return status.get() != OFFLINE;
+    }
+
+    // --- READERS ---
+
+    long pumpedN() {
+        return pumpedN.get();
+    }
+
+    long pumpedQ() {
+        return pumpedQ.get();
+    }
+
+    long services() {
+        lock.lock();
+        try {
+            return services;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Time occupied by completed dockings. */
+    long busyNanos() {
+        lock.lock();
+        try {
+            return busyNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Share of time occupied since the dock was added; completed dockings only. */
+    double utilization() {
+        lock.lock();
+        try {
+            return busyNanos / (double) Math.max(1, System.nanoTime() - addedNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Completed dockings per second since the dock was added. */
+    double serviceRate() {
+        lock.lock();
+        try {
+            return services * 1e9 / Math.max(1, System.nanoTime() - addedNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
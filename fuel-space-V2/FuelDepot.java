@@ -0,0 +1,16 @@
+/**
+ * What a vehicle needs from a fuel station: a single SpaceFuelStation or a
+ * StationCluster that routes each visit to one of its shards.
+ */
+public interface FuelDepot {
+    boolean refuelVehicle(int id, String type, int reqN, int reqQ, int dockTimeMs) throws InterruptedException;
+
+    boolean supplyStation(int id, int depN, int depQ, int retN, int retQ, int dockTimeMs) throws InterruptedException;
+
+    void unregisterConsumer();
+
+    void unregisterProducer();
+
+    /** Plans supply runs against this depot's tanks; null unless -Dstation.dispatch is set. */
+    SupplyDispatcher dispatcher();
+}
@@ -1,4 +1,5 @@
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
 public class OrdinaryVehicle implements Runnable {
     private static final int MIN_TRAVEL_TIME = 400;
@@ -10,13 +11,15 @@ public class OrdinaryVehicle implements Runnable {
 
     private final int id;
     private final int trips;
-    private final SpaceFuelStation station;
-    private final Random rng = new Random();
+    private final FuelDepot station;
+    private final Random rng;
+    private int completedTrips;
 
-    public OrdinaryVehicle(int id, int trips, SpaceFuelStation station) {
+    public OrdinaryVehicle(int id, int trips, FuelDepot station) {
         this.id = id;
         this.trips = trips;
         this.station = station;
+        this.rng = WorkloadTrace.vehicleRandom(WorkloadTrace.REFUEL, id);
     }
 
     @Override
@@ -28,8 +31,10 @@ public class OrdinaryVehicle implements Runnable {
                 int fuelReq = MIN_FUEL_REQUEST + rng.nextInt(MAX_FUEL_REQUEST);
 
                 Thread.sleep(travelTime);
+                WorkloadTrace.record(WorkloadTrace.REFUEL, id, fuelReq, fuelReq, 0, 0, dockTime, 0);
                 boolean success = station.refuelVehicle(id, "Ordinary", fuelReq, fuelReq, dockTime);
                 if (!success) break;
+                completedTrips++;
             }
             Logger.logTrace(id, "Ordinary", "Completed operations. Shutting down.");
         } catch (InterruptedException e) {
@@ -38,4 +43,41 @@ public class OrdinaryVehicle implements Runnable {
             station.unregisterConsumer();
         }
     }
+
+    /**
+     * The same trips without a thread of its own: travel and docking run on
+     * the station's scheduler. Completes once the vehicle is grounded.
+     */
+    public CompletableFuture<Void> runAsync(SpaceFuelStation station) {
+        return tripAsync(station, 0).whenComplete((v, ex) -> {
+            Logger.logTrace(id, "Ordinary", "Completed operations. Shutting down.");
+            station.unregisterConsumer();
+        });
+    }
+
+    private CompletableFuture<Void> tripAsync(SpaceFuelStation station, int i) {
+        if (i == trips) {
+            return CompletableFuture.completedFuture(null);
+        }
+        int travelTime = MIN_TRAVEL_TIME + rng.nextInt(MAX_TRAVEL_TIME);
+        int dockTime = MIN_DOCK_TIME + rng.nextInt(MAX_DOCK_TIME);
+        int fuelReq = MIN_FUEL_REQUEST + rng.nextInt(MAX_FUEL_REQUEST);
+
+        return SpaceFuelStation.delay(travelTime)
+                .thenCompose(x -> {
+                    WorkloadTrace.record(WorkloadTrace.REFUEL, id, fuelReq, fuelReq, 0, 0, dockTime, 0);
+                    return station.refuelAsync(id, "Ordinary", fuelReq, fuelReq, dockTime).departed;
+                })
+                .thenCompose(success -> {
+                    if (!success) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    completedTrips++;
+                    return tripAsync(station, i + 1);
+                });
+    }
+
+    public int getCompletedTrips() {
+        return completedTrips;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,218 @@
+/**
+ * Decides which queued requests SpaceFuelStation.wakeUpNext admits, and in
+ * what order.
+ *
+ * A policy only chooses; the station checks every admission against docks,
+ * fuel and tank space, keeps CONTENDED and the lock-free fast path in step,
+ * and sends hopeless waiters away afterwards. Policies are stateless, so one
+ * instance can serve any number of stations (e.g. every shard of a cluster).
+ * A policy that stops early just leaves requests queued until the next state
+ * change.
+ *
+ * Requests that arrive while others of their kind are queued always join the
+ * queue, whatever the policy, so the policy sees every waiter. Waiters are
+ * addressed by their WaitQueue position, so a pass reads demands straight
+ * from the queue's arrays.
+ *
+ * A policy that picks by size or score rather than arrival names an
+ * orderKey; the station then keeps both queues indexed by it, and the pass
+ * walks the waiters in key order from the first candidate, once, instead of
+ * comparing the whole queue for every free dock.
+ */
+public interface SchedulingPolicy {
+
+    /** What a policy sees of the station; only valid inside wake(), with the lock held. */
+    interface Station {
+        /** Waiting supply ships and refuels, each in arrival order. Remove only through admit. */
+        WaitQueue supplyQueue();
+
+        WaitQueue refuelQueue();
+
+        boolean dockFree();
+
+        boolean fits(WaitQueue queue, long pos);
+
+        /** Admits the waiter at pos; O(1), and the walk over queue can go on from pos. */
+        void admit(WaitQueue queue, long pos);
+
+        /** Tank fill level of the scarcer fuel, 0..1, counting only fuel not yet promised. */
+        double fillLevel();
+
+        /** Demand as a share of tank capacity, 0..1 (mean of both fuels). */
+        double size(WaitQueue queue, long pos);
+
+        /** No waiter in queue larger than this fits: what is on offer, sized like size(). */
+        double maxFitSize(WaitQueue queue);
+
+        long waitedNanos(WaitQueue queue, long pos);
+    }
+
+    /**
+     * Sort key of a waiter in an ordered queue, fixed when it queues up: its
+     * size() and the time it queued, in nanoseconds since the station was
+     * built. Lower keys come first, arrival order breaks ties.
+     */
+    interface OrderKey {
+        double of(double size, long queuedNanos);
+    }
+
+    /** Lock held. Admit whatever the policy chooses through s.admit, while s.dockFree(). */
+    void wake(Station s);
+
+    /** The key the station indexes its queues by for this policy; null (the default) for none. */
+    default OrderKey orderKey() {
+        return null;
+    }
+
+    // --- POLICIES ---
+
+    /** The original order: supply ships first, then refuels, first fit in arrival order. */
+    SchedulingPolicy FIRST_FIT = s -> {
+        firstFit(s, s.supplyQueue());
+        firstFit(s, s.refuelQueue());
+    };
+
+    /**
+     * No overtaking within a queue: each queue is served strictly in arrival
+     * order and stops at its first request that does not fit. Supply ships and
+     * refuels do not block each other, since each needs what the other brings.
+     */
+    SchedulingPolicy FIFO = s -> {
+        strictFifo(s, s.supplyQueue());
+        strictFifo(s, s.refuelQueue());
+    };
+
+    /**
+     * Supply ships first fit, then the smallest refuels that fit: a walk up
+     * the size order that stops at the first waiter too large for what is on
+     * offer.
+     */
+    SchedulingPolicy SHORTEST_FIRST = ordered((size, queuedNanos) -> size, s -> {
+        firstFit(s, s.supplyQueue());
+        WaitQueue queue = s.refuelQueue();
+        double bound = s.maxFitSize(queue);
+        for (long p = queue.firstOrdered(); p >= 0 && s.dockFree() && s.size(queue, p) <= bound; ) {
+            long next = queue.nextOrdered(p);
+            if (s.fits(queue, p)) {
+                s.admit(queue, p);
+                bound = s.maxFitSize(queue);
+            }
+            p = next;
+        }
+    });
+
+    /**
+     * Largest request that still fits, so the least fuel (or space) is left
+     * over: a walk down the size order from the largest size on offer.
+     */
+    SchedulingPolicy BEST_FIT = ordered((size, queuedNanos) -> -size, s -> {
+        bestFit(s, s.supplyQueue());
+        bestFit(s, s.refuelQueue());
+    });
+
+    /**
+     * Tank-level aware: when the tank is less than half full supply ships go
+     * first, otherwise refuels do, so producers only get preference when fuel
+     * is actually short. First fit within each queue.
+     */
+    SchedulingPolicy BALANCED = s -> {
+        if (s.fillLevel() < 0.5) {
+            firstFit(s, s.supplyQueue());
+            firstFit(s, s.refuelQueue());
+        } else {
+            firstFit(s, s.refuelQueue());
+            firstFit(s, s.supplyQueue());
+        }
+    };
+
+    /**
+     * Small requests first, but a request gains one full tank of priority per
+     * agingMs waited. Once the top request has waited longer than agingMs and
+     * still does not fit, nothing else of its kind is admitted, so the tank
+     * (or free space) builds up for it and its wait stays bounded.
+     *
+     * The score at time t, size - (t - queued) / agingNanos, ranks waiters
+     * the same at every t as size + queued / agingNanos does, so that fixed
+     * key orders the queue and the top request is simply the first.
+     */
+    static SchedulingPolicy aging(long agingMs) {
+        double perNano = 1.0 / (agingMs * 1_000_000.0);
+        long overdueNanos = agingMs * 1_000_000;
+        return ordered((size, queuedNanos) -> size + queuedNanos * perNano, s -> {
+            aged(s, s.supplyQueue(), overdueNanos);
+            aged(s, s.refuelQueue(), overdueNanos);
+        });
+    }
+
+    SchedulingPolicy AGING = aging(100);
+
+    /** "first-fit", "fifo", "shortest", "best-fit", "balanced", "aging" or "aging:MS". */
+    static SchedulingPolicy parse(String name) {
+        String n = name.trim().toLowerCase();
+        if (n.startsWith("aging:")) {
+            return aging(Long.parseLong(n.substring("aging:".length())));
+        }
+        return switch (n) {
+            case "first-fit", "firstfit" -> FIRST_FIT;
+            case "fifo" -> FIFO;
+            case "shortest" -> SHORTEST_FIRST;
+            case "best-fit", "bestfit" -> BEST_FIT;
+            case "balanced" -> BALANCED;
+            case "aging" -> AGING;
+            default -> throw new IllegalArgumentException("Unknown scheduling policy: " + name);
+        };
+    }
+
+    // --- BUILDING BLOCKS ---
+
+    private static SchedulingPolicy ordered(OrderKey key, SchedulingPolicy wake) {
+        return new SchedulingPolicy() {
+            @Override
+            public void wake(Station s) {
+                wake.wake(s);
+            }
+
+            @Override
+            public OrderKey orderKey() {
+                return key;
+            }
+        };
+    }
+
+    private static void firstFit(Station s, WaitQueue queue) {
+        for (long p = queue.first(); p >= 0 && s.dockFree(); p = queue.next(p)) {
+            if (s.fits(queue, p)) s.admit(queue, p);
+        }
+    }
+
+    private static void strictFifo(Station s, WaitQueue queue) {
+        for (long p = queue.first(); p >= 0 && s.dockFree(); p = queue.next(p)) {
+            if (!s.fits(queue, p)) return;
+            s.admit(queue, p);
+        }
+    }
+
+    // Ordered by -size. An admission only shrinks what is on offer, so a
+    // waiter passed over stays too large and one walk serves every dock.
+    private static void bestFit(Station s, WaitQueue queue) {
+        for (long p = queue.ceilingOrdered(-s.maxFitSize(queue)); p >= 0 && s.dockFree(); ) {
+            long next = queue.nextOrdered(p);
+            if (s.fits(queue, p)) s.admit(queue, p);
+            p = next;
+        }
+    }
+
+    // Ordered by score. The top request only changes when it is admitted, so
+    // holding back is checked whenever the walk stands on the current top.
+    private static void aged(Station s, WaitQueue queue, long overdueNanos) {
+        for (long p = queue.firstOrdered(); p >= 0 && s.dockFree(); ) {
+            long next = queue.nextOrdered(p);
+            if (s.fits(queue, p)) {
+                s.admit(queue, p);
+            } else if (p == queue.firstOrdered() && s.waitedNanos(queue, p) > overdueNanos) {
+                return; // hold back for top
+            }
+            p = next;
+        }
+    }
+}
@@ -1,4 +1,9 @@
-import java.util.LinkedList;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 void main(String[] args) {
     int numOrdinaries = 5;
@@ -7,6 +12,13 @@ void main(String[] args) {
     int stationCapN = 2000;
     int stationCapQ = 2000;
     int numDocks = 3;
+    FleetMode fleetMode = FleetMode.PLATFORM;
+    boolean async = false; // no vehicle threads at all; SpaceFuelStation's async API
+    int numStations = 1;
+    StationCluster.Routing routing = StationCluster.Routing.TWO_CHOICES;
+    int rebalanceMs = 0;
+    String policyName = "first-fit";
+    SchedulingPolicy policy = SchedulingPolicy.FIRST_FIT;
 
     if (args.length > 0) {
         try {
@@ -21,42 +33,153 @@ void main(String[] args) {
                 stationCapQ = Integer.parseInt(args[4]);
             if (args.length > 5)
                 numDocks = Integer.parseInt(args[5]);
-        } catch (NumberFormatException e) {
-            System.err
-                    .println("Usage: java SimulationRunner.java [trips] [ordinaries] [supplies] [capN] [capQ] [docks]");
+            if (args.length > 6) {
+                async = args[6].equalsIgnoreCase("async");
+                if (!async)
+                    fleetMode = FleetMode.parse(args[6]);
+            }
+            if (args.length > 7)
+                numStations = Integer.parseInt(args[7]);
+            if (args.length > 8)
+                routing = StationCluster.Routing.parse(args[8]);
+            if (args.length > 9)
+                rebalanceMs = Integer.parseInt(args[9]);
+            if (args.length > 10) {
+                policyName = args[10];
+                policy = SchedulingPolicy.parse(policyName);
+            }
+            if (async && numStations > 1)
+                throw new IllegalArgumentException("async fleets drive a single station");
+        } catch (IllegalArgumentException e) {
+            System.err.println(
+                    "Usage: java SimulationRunner.java [trips] [ordinaries] [supplies] [capN] [capQ] [docks] [platform|virtual|async]"
+                            + " [stations] [least|two|fuel] [rebalanceMs]"
+                            + " [first-fit|fifo|shortest|best-fit|balanced|aging[:ms]]");
             System.exit(1);
         }
     }
 
-    SpaceFuelStation station = new SpaceFuelStation(numDocks, stationCapN, stationCapQ, numOrdinaries, numSupplies);
-    LinkedList<Thread> fleet = new LinkedList<>();
+    // -Dstation.journal=DIR makes a single station durable; a journal left
+    // behind by a crashed run is recovered first.
+    StationJournal journal = null;
+    String journalDir = System.getProperty("station.journal");
+    if (journalDir != null) {
+        if (numStations > 1) {
+            System.err.println("station.journal needs a single station");
+            System.exit(1);
+        }
+        try {
+            journal = StationJournal.open(Path.of(journalDir), Integer.getInteger("station.journal.commitMs", 5),
+                    Integer.getInteger("station.journal.snapshotMs", 1000));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Cannot open journal " + journalDir + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Capacities and docks are per station; more than one station forms a routed cluster.
+    FuelDepot station = numStations > 1
+            ? new StationCluster(numStations, numDocks, stationCapN, stationCapQ, numOrdinaries, numSupplies,
+                    routing, rebalanceMs, policy).start()
+            : new SpaceFuelStation(numDocks, stationCapN, stationCapQ, numOrdinaries, numSupplies, policy, journal);
+
+    if (journal != null && journal.recovered() != null) {
+        StationJournal.Recovery rec = journal.recovered();
+        SpaceFuelStation durable = (SpaceFuelStation) station;
+        Logger.logTrace(0, "Journal", "Recovered N:{} Q:{} with {} reservations in doubt.", rec.nLevel(), rec.qLevel(),
+                rec.inDoubt().size());
+        Logger.logTrace(0, "Journal", "{} queued requests were lost with their vehicles.", rec.queued().size());
+        // This run's fleet is new, so nobody will come back for them: release them.
+        for (StationJournal.Entry e : rec.inDoubt()) {
+            durable.settleInDoubt(e.id(), false);
+        }
+    }
+    List<OrdinaryVehicle> ordinaries = new ArrayList<>();
+    List<SupplyVehicle> supplies = new ArrayList<>();
 
     Logger.logTrace(0, "System", "--- STARTING SPACE STATION SIMULATION ---");
-    Logger.logTrace(0, "Config", String.format("Trips:%d, Ord:%d, Sup:%d, CapN:%d, CapQ:%d, Docks:%d",
-            tripsPerVehicle, numOrdinaries, numSupplies, stationCapN, stationCapQ, numDocks));
-
-    // Spawn Ordinary Vehicles
-    for (int i = 1; i <= numOrdinaries; i++) {
-        Thread t = new Thread(new OrdinaryVehicle(i, tripsPerVehicle, station));
-        fleet.add(t);
-        t.start();
+    Logger.logTrace(0, "Config", String.format(
+            "Trips:%d, Ord:%d, Sup:%d, CapN:%d, CapQ:%d, Docks:%d, Fleet:%s, Stations:%d, Routing:%s, Rebalance:%dms, Policy:%s",
+            tripsPerVehicle, numOrdinaries, numSupplies, stationCapN, stationCapQ, numDocks, async ? "ASYNC" : fleetMode,
+            numStations, routing, rebalanceMs, policyName));
+
+    long startTime = System.nanoTime();
+
+    if (async) {
+        // A handful of scheduler threads drive the whole fleet.
+        SpaceFuelStation spaceStation = (SpaceFuelStation) station;
+        List<CompletableFuture<Void>> grounded = new ArrayList<>();
+        for (int i = 1; i <= numOrdinaries; i++) {
+            OrdinaryVehicle v = new OrdinaryVehicle(i, tripsPerVehicle, station);
+            ordinaries.add(v);
+            grounded.add(v.runAsync(spaceStation));
+        }
+        for (int i = 1; i <= numSupplies; i++) {
+            SupplyVehicle v = new SupplyVehicle(i, tripsPerVehicle, station);
+            supplies.add(v);
+            grounded.add(v.runAsync(spaceStation));
+        }
+        CompletableFuture.allOf(grounded.toArray(CompletableFuture[]::new)).join();
+    } else {
+        // close() waits for every vehicle to finish
+        try (ExecutorService fleet = fleetMode.newExecutor()) {
+            // Spawn Ordinary Vehicles
+            for (int i = 1; i <= numOrdinaries; i++) {
+                OrdinaryVehicle v = new OrdinaryVehicle(i, tripsPerVehicle, station);
+                ordinaries.add(v);
+                fleet.execute(v);
+            }
+
+            // Spawn Supply Vehicles
+            for (int i = 1; i <= numSupplies; i++) {
+                SupplyVehicle v = new SupplyVehicle(i, tripsPerVehicle, station);
+                supplies.add(v);
+                fleet.execute(v);
+            }
+        }
     }
 
-    // Spawn Supply Vehicles
-    for (int i = 1; i <= numSupplies; i++) {
-        Thread t = new Thread(new SupplyVehicle(i, tripsPerVehicle, station));
-        fleet.add(t);
-        t.start();
+    if (station instanceof StationCluster cluster)
+        cluster.close();
+    if (journal != null) {
+        journal.close();
     }
 
-    // Wait for all threads to finish
-    for (Thread t : fleet) {
-        try {
-            t.join();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    long elapsedMs = Math.max(1, (System.nanoTime() - startTime) / 1_000_000);
+    long visits = 0;
+    for (OrdinaryVehicle v : ordinaries)
+        visits += v.getCompletedTrips();
+    for (SupplyVehicle v : supplies)
+        visits += v.getCompletedTrips();
+
+    Logger.logTrace(0, "System", "--- SIMULATION COMPLETE. ALL VEHICLES GROUNDED ---");
+
+    // Printed directly so the summary also shows up with -Dstation.log=OFF.
+    Logger.flush();
+    System.out.printf("[System] Completed %d visits in %d ms (%.1f visits/s)%n",
+            visits, elapsedMs, visits * 1000.0 / elapsedMs);
+
+    // -Dstation.metrics=true adds latency histograms and gauges, one table per station.
+    if (Boolean.getBoolean("station.metrics")) {
+        if (station instanceof StationCluster cluster) {
+            for (int i = 0; i < cluster.size(); i++) {
+                System.out.printf("[Station %d]%n", i);
+                cluster.shard(i).metrics().dump(System.out);
+            }
+        } else {
+            ((SpaceFuelStation) station).metrics().dump(System.out);
         }
     }
 
-    Logger.logTrace(0, "System", "--- SIMULATION COMPLETE. ALL VEHICLES GROUNDED ---");
+    // -Dstation.lockprofile=true: lock wait and hold times per critical section, one table per station.
+    if (Boolean.getBoolean("station.lockprofile")) {
+        if (station instanceof StationCluster cluster) {
+            for (int i = 0; i < cluster.size(); i++) {
+                System.out.printf("[Station %d]%n", i);
+                cluster.shard(i).lockProfile().dump(System.out);
+            }
+        } else {
+            ((SpaceFuelStation) station).lockProfile().dump(System.out);
+        }
+    }
 }
\ No newline at end of file
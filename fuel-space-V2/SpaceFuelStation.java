@@ -1,229 +1,1774 @@
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
 
-public class SpaceFuelStation {
+public class SpaceFuelStation implements FuelDepot {
 
     // --- ENCAPSULATED DATA STRUCTURE ---
-    private static class Request {
-        int reqN, reqQ;
+    static class Request {
+        int reqN, reqQ;    // cut down to what was granted once allocated
+        int minN, minQ;    // the least it will take; reqN/reqQ unless it accepts a partial fill
         boolean isAllocated = false;
         boolean isAborted = false;
+        boolean isSupply;  // set when queued
+        long queuePos = -1; // its WaitQueue position while queued
+        long queueSeq;     // its arrival number in that queue
+        double orderKey;   // the policy's sort key, on an ordered queue
+        long deadline = NO_DEADLINE; // System.nanoTime() by which it gives up waiting
+        boolean isExpired;  // aborted because of its deadline
+        Dock dock;         // set once allocated
+        long journalId;    // its QUEUE record on a durable station
         Condition cv;
+        Runnable onWake;
+        int id;            // the vehicle, for StationEvents; set by batch drivers
+        String type;
 
-        Request(int n, int q, ReentrantLock lock) {
-            this.reqN = n;
-            this.reqQ = q;
+        Request(ReentrantLock lock) {
             this.cv = lock.newCondition();
         }
+
+        // For drivers that do their own waiting; onWake runs under the station lock.
+        Request(int n, int q, Runnable onWake) {
+            this.reqN = this.minN = n;
+            this.reqQ = this.minQ = q;
+            this.onWake = onWake;
+        }
+
+        void wake() {
+            if (cv != null) {
+                cv.signal();
+            } else if (onWake != null) {
+                onWake.run();
+            }
+        }
     }
 
+    /** Deadline of a request that waits as long as it takes. */
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    // Waiters past their deadline are always sent away; with
+    // -Dstation.shed=predicted so are those that cannot reach a dock in time
+    // at the current service rate.
+    private static final boolean SHED_PREDICTED = "predicted".equals(System.getProperty("station.shed"));
+
+    // -Dstation.partial=P: blocking callers that name no minimum accept a fill
+    // (or unload) of at least P% of what they ask for; 100 is all-or-nothing.
+    private static final int PARTIAL_PERCENT = Math.clamp(Integer.getInteger("station.partial", 100), 1, 100);
+
     // --- STATION STATE ---
     private final int MAX_N, MAX_Q;
-    private int vFree, nCurr, qCurr;
-    private int nResOut = 0, qResOut = 0;
-    private int nResIn = 0, qResIn = 0;
+    // Deposits and transfers only; fuel pumped out is counted per dock (see nLevel).
+    private final AtomicLong nCurr, qCurr;
+    private int nResIn = 0, qResIn = 0; // lock held
+
+    // --- DOCKS ---
+    // vFree counts free bays; a vehicle counted in then claims a Dock, which
+    // carries its pump state. The array only grows (lock held): docks are
+    // taken offline, never removed.
+    private static final int DOCK_LIMIT = 64; // room left in vFree for addDock
+    private volatile Dock[] docks;
+    private final AtomicInteger docksOnline;
+    private final int maxDocks;
+
+    // --- PACKED ADMISSION STATE ---
+    // vFree, nAvail (nCurr minus outbound reservations) and qAvail share one
+    // word so an uncontended refuel reserves and releases with a single CAS.
+    // CONTENDED is set whenever a queue has waiters; while it is set every
+    // refuel goes through the lock, so nobody overtakes a queued request.
+    private static final long CONTENDED = 1L << 63;
+    private final AtomicLong state;
+    private final int nShift, vShift;
+    private final long qMask, nMask, vMask;
 
     private int activeConsumers;
     private int activeProducers;
+    private volatile int queued = 0; // refuelQueue + supplyQueue, for lock-free load readers
+    private volatile int queuedN, queuedQ; // refuelQueue demand, for the supply dispatcher
 
     private final ReentrantLock lock = new ReentrantLock();
-    private final LinkedList<Request> refuelQueue = new LinkedList<>();
-    private final LinkedList<Request> supplyQueue = new LinkedList<>();
+    // Whoever holds the station lock also holds the write side of stamps, so
+    // snapshot() can read what the lock guards optimistically (see lockStation).
+    private final StampedLock stamps = new StampedLock();
+    private long writeStamp; // lock held
+    private final WaitQueue refuelQueue;
+    private final WaitQueue supplyQueue;
+    // Requests of blocking callers, kept with their Condition once they are done (lock held).
+    private Request[] spareRequests = new Request[16];
+    private int spares;
+    private final SchedulingPolicy policy;
+    private final SchedulingPolicy.OrderKey orderKey; // null: the queues are not indexed
+    private final long epoch = System.nanoTime(); // origin of the time orderKey sees
+    private final PolicyView policyView = new PolicyView();
+    // Resolved on first use: an empty Optional once -Dstation.dispatch turns out not to be set.
+    private final AtomicReference<Optional<SupplyDispatcher>> dispatcher = new AtomicReference<>();
+
+    private final StationMetrics metrics = new StationMetrics("SpaceFuelStation");
+    private final LockProfile lockProfile = LockProfile.create("SpaceFuelStation"); // null unless profiling
+    // Profiling only, lock held: the holder's section, and its hold time so far.
+    private LockProfile.Section heldSection;
+    private long heldSince, heldNanos;
+
+    // --- DURABILITY ---
+    private final StationJournal journal; // null unless durable
+    private final Map<Long, StationJournal.Entry> inDoubt = new LinkedHashMap<>(); // lock held
 
     public SpaceFuelStation(int v, int n, int q, int numCons, int numProd) {
+        this(v, n, q, numCons, numProd, SchedulingPolicy.FIRST_FIT);
+    }
+
+    public SpaceFuelStation(int v, int n, int q, int numCons, int numProd, SchedulingPolicy policy) {
+        this(v, n, q, numCons, numProd, policy, null);
+    }
+
+    /**
+     * A durable station: every reservation, commit and abort goes to journal.
+     * If the journal recovered a previous run, the tanks start at the
+     * recovered levels and the reservations still held at the crash are held
+     * again until settleInDoubt resolves them.
+     */
+    public SpaceFuelStation(int v, int n, int q, int numCons, int numProd, SchedulingPolicy policy,
+            StationJournal journal) {
+        int nBits = bits(n), qBits = bits(q);
+        int vBits = Math.max(bits(v), Math.min(bits(DOCK_LIMIT), 63 - nBits - qBits));
+        if (vBits + nBits + qBits > 63) {
+            throw new IllegalArgumentException("Station too large for packed state: " + v + " docks, " + n + "N, " + q + "Q");
+        }
         this.MAX_N = n;
         this.MAX_Q = q;
-        this.vFree = v;
-        this.nCurr = n / 2;
-        this.qCurr = q / 2;
+        this.journal = journal;
+        StationJournal.Recovery recovery = journal != null ? journal.recovered() : null;
+        int nLevel = n / 2, qLevel = q / 2, nOut = 0, qOut = 0;
+        if (recovery != null) {
+            nLevel = recovery.nLevel();
+            qLevel = recovery.qLevel();
+            for (StationJournal.Entry e : recovery.inDoubt()) {
+                inDoubt.put(e.id(), e);
+                if (e.supply()) {
+                    nResIn += e.n();
+                    qResIn += e.q();
+                } else {
+                    nOut += e.n();
+                    qOut += e.q();
+                }
+            }
+            if (nLevel < nOut || qLevel < qOut || nLevel + nResIn > n || qLevel + qResIn > q) {
+                throw new IllegalArgumentException("Recovered journal does not fit a " + n + "N/" + q + "Q station");
+            }
+        } else if (journal != null) {
+            journal.transfer(nLevel, qLevel); // the initial fill
+        }
+        this.nCurr = new AtomicLong(nLevel);
+        this.qCurr = new AtomicLong(qLevel);
+        this.maxDocks = (1 << vBits) - 1;
+        this.docks = new Dock[v];
+        for (int i = 0; i < v; i++) {
+            docks[i] = new Dock(i);
+        }
+        this.docksOnline = new AtomicInteger(v);
+        this.nShift = qBits;
+        this.vShift = qBits + nBits;
+        this.qMask = (1L << qBits) - 1;
+        this.nMask = (1L << nBits) - 1;
+        this.vMask = (1L << vBits) - 1;
+        this.state = new AtomicLong(((long) v << vShift) | ((long) (nLevel - nOut) << nShift) | (qLevel - qOut));
         this.activeConsumers = numCons;
         this.activeProducers = numProd;
+        this.policy = policy;
+        this.orderKey = policy.orderKey();
+        this.refuelQueue = new WaitQueue(false, 64, orderKey != null);
+        this.supplyQueue = new WaitQueue(true, 64, orderKey != null);
+
+        metrics.gauge("queueDepth", () -> queued);
+        metrics.gauge("docksInUse", () -> docksOnline.get() - vFree());
+        metrics.gauge("docksOnline", docksOnline::get);
+        metrics.gauge("dockUtilization", () -> metrics.dockUtilization(Math.max(1, docksOnline.get())));
+        metrics.gauge("nitrogen", this::nLevel);
+        metrics.gauge("quantum", this::qLevel);
+        for (Dock dock : docks) {
+            dockGauges(dock);
+        }
+    }
+
+    private void dockGauges(Dock dock) {
+        metrics.gauge("dock" + dock.index + ".utilization", dock::utilization);
+        metrics.gauge("dock" + dock.index + ".servicesPerSec", dock::serviceRate);
+    }
+
+    /**
+     * Wait, dock and visit histograms per vehicle type (one visit per docking,
+     * so a supply run counts twice), gauges and abort counts. Filled by the
+     * blocking and asynchronous APIs; submit/complete callers keep their own time.
+     */
+    public StationMetrics metrics() {
+        return metrics;
+    }
+
+    /** Lock acquisition and hold times per critical section; null unless -Dstation.lockprofile=true. */
+    public LockProfile lockProfile() {
+        return lockProfile;
     }
 
-    private int nAvail() { return nCurr - nResOut; }
-    private int qAvail() { return qCurr - qResOut; }
-    private int nSpace() { return MAX_N - nCurr - nResIn; }
-    private int qSpace() { return MAX_Q - qCurr - qResIn; }
+    /**
+     * The station at one instant. nAvail, qAvail are what new refuels can
+     * still reserve (the level minus fuel promised to docked vehicles);
+     * nReservedIn, qReservedIn is tank space held for deposits and transfers
+     * on their way in.
+     */
+    public record Snapshot(int nLevel, int qLevel, int nAvail, int qAvail, int nReservedIn, int qReservedIn,
+            int freeDocks, int docksOnline, int queuedRefuels, int queuedSupplies) {
+    }
 
-    private boolean canSupply(Request req) {
-        return nSpace() >= req.reqN && qSpace() >= req.reqQ;
+    /**
+     * A consistent Snapshot without the station lock, so pollers never block
+     * or delay vehicles. What the lock guards is read optimistically (its
+     * holder also holds the write side of stamps); the lock-free paths only
+     * touch the packed word and the docks' pump counters, which are read
+     * twice instead. Retries until nothing moved in between; a poller that
+     * keeps losing the race yields rather than spins.
+     */
+    public Snapshot snapshot() {
+        for (int attempt = 0;; attempt++) {
+            long stamp = stamps.tryOptimisticRead();
+            long s = state.get();
+            Dock[] ds = docks;
+            long pumpedN = 0, pumpedQ = 0;
+            for (Dock dock : ds) {
+                pumpedN += dock.pumpedN();
+                pumpedQ += dock.pumpedQ();
+            }
+            long n = nCurr.get(), q = qCurr.get();
+            int nIn = nResIn, qIn = qResIn;
+            int online = docksOnline.get(), refuels = refuelQueue.size(), supplies = supplyQueue.size();
+            // Pump counters only grow, so equal sums mean none of them moved.
+            long againN = 0, againQ = 0;
+            for (Dock dock : ds) {
+                againN += dock.pumpedN();
+                againQ += dock.pumpedQ();
+            }
+            if (stamps.validate(stamp) && state.get() == s && againN == pumpedN && againQ == pumpedQ
+                    && docks == ds) {
+                return new Snapshot((int) (n - pumpedN), (int) (q - pumpedQ), nAvail(s), qAvail(s), nIn, qIn,
+                        vFree(s), online, refuels, supplies);
+            }
+            if (attempt % 16 == 15) {
+                Thread.yield();
+            } else {
+                Thread.onSpinWait();
+            }
+        }
     }
 
-    private boolean canRefuel(Request req) {
-        return nAvail() >= req.reqN && qAvail() >= req.reqQ;
+    /**
+     * Takes the station lock and, outermost, the write side of stamps. When
+     * profiling, the outermost acquisition is timed and charged to section.
+     */
+    private void lockStation(String section) {
+        if (lockProfile != null) {
+            profiledLock(section);
+            return;
+        }
+        lock.lock();
+        if (lock.getHoldCount() == 1) {
+            writeStamp = stamps.writeLock();
+        }
+    }
+
+    private void profiledLock(String section) {
+        long start = System.nanoTime();
+        boolean contended = !lock.tryLock();
+        if (contended) {
+            lock.lock();
+        }
+        if (lock.getHoldCount() == 1) {
+            writeStamp = stamps.writeLock();
+            heldSince = System.nanoTime();
+            heldNanos = 0;
+            heldSection = lockProfile.section(section);
+            heldSection.acquire.record(heldSince - start);
+            if (contended) {
+                heldSection.contended.increment();
+            }
+        }
+    }
+
+    private void unlockStation() {
+        if (lock.getHoldCount() == 1) {
+            if (heldSection != null) {
+                heldSection.hold.record(heldNanos + System.nanoTime() - heldSince);
+                heldSection = null;
+            }
+            stamps.unlockWrite(writeStamp);
+        }
+        lock.unlock();
+    }
+
+    /**
+     * Waits on cv (lock held) until signalled or, unless NO_DEADLINE, the
+     * deadline; stamps is let go meanwhile. A profiled hold pauses while
+     * parked: other holders overwrite the held fields, so they are kept here.
+     */
+    private void await(Condition cv, long deadline) throws InterruptedException {
+        LockProfile.Section section = heldSection;
+        long held = section == null ? 0 : heldNanos + System.nanoTime() - heldSince;
+        stamps.unlockWrite(writeStamp);
+        try {
+            if (deadline == NO_DEADLINE) {
+                cv.await();
+            } else {
+                cv.awaitNanos(deadline - System.nanoTime());
+            }
+        } finally {
+            writeStamp = stamps.writeLock();
+            if (section != null) {
+                heldSection = section;
+                heldNanos = held;
+                heldSince = System.nanoTime();
+                lockProfile.wakeups.increment();
+            }
+        }
+    }
+
+    private static int bits(int x) {
+        return 32 - Integer.numberOfLeadingZeros(x);
+    }
+
+    private int vFree(long s) { return (int) ((s >>> vShift) & vMask); }
+    private int nAvail(long s) { return (int) ((s >>> nShift) & nMask); }
+    private int qAvail(long s) { return (int) (s & qMask); }
+
+    private long delta(int dv, int dn, int dq) {
+        return ((long) dv << vShift) + ((long) dn << nShift) + dq;
+    }
+
+    private int vFree() { return vFree(state.get()); }
+    private int nAvail() { return nAvail(state.get()); }
+    private int qAvail() { return qAvail(state.get()); }
+    private int nSpace() { return MAX_N - nLevel() - nResIn; }
+    private int qSpace() { return MAX_Q - qLevel() - qResIn; }
+
+    /** Tank level; sums the docks' pump counters, so O(docks). */
+    private int nLevel() {
+        long n = nCurr.get();
+        for (Dock dock : docks) n -= dock.pumpedN();
+        return (int) n;
+    }
+
+    private int qLevel() {
+        long q = qCurr.get();
+        for (Dock dock : docks) q -= dock.pumpedQ();
+        return (int) q;
+    }
+
+    /**
+     * Takes a bay plus the fuel with one CAS, then a dock; null if refused.
+     * Without the lock this refuses while the station is contended; with the
+     * lock held, pass ignoreContended.
+     */
+    private Dock casReserveRefuel(int reqN, int reqQ, boolean ignoreContended) {
+        while (true) {
+            long s = state.get();
+            if ((!ignoreContended && (s & CONTENDED) != 0)
+                    || vFree(s) == 0 || nAvail(s) < reqN || qAvail(s) < reqQ) {
+                return null;
+            }
+            if (state.compareAndSet(s, s - delta(1, reqN, reqQ))) {
+                return claimDock(false, reqN, reqQ, -1);
+            }
+        }
+    }
+
+    /**
+     * Gives bays (0 or 1) back with one CAS; fails if waiters must be woken
+     * under the lock.
+     */
+    private boolean casReleaseDock(int bays) {
+        while (true) {
+            long s = state.get();
+            if ((s & CONTENDED) != 0) {
+                return false;
+            }
+            if (bays == 0 || state.compareAndSet(s, s + delta(bays, 0, 0))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Takes a free dock for a bay just counted out of vFree, and journals the
+     * reservation (queuedId is the request's QUEUE record, or -1). Free docks
+     * always number at least the bays counted out but not yet claimed, so the
+     * scan only repeats while other claimers race us for the same docks.
+     */
+    private Dock claimDock(boolean supply, int n, int q, long queuedId) {
+        Dock[] ds = docks;
+        int start = ThreadLocalRandom.current().nextInt(ds.length);
+        while (true) {
+            for (int i = 0; i < ds.length; i++) {
+                Dock dock = ds[(start + i) % ds.length];
+                if (dock.tryClaim()) {
+                    if (journal != null) {
+                        dock.journalId = journal.reserve(supply, n, q, dock.index, queuedId);
+                    }
+                    return dock;
+                }
+            }
+            Thread.onSpinWait();
+            ds = docks;
+        }
+    }
+
+    /** The occupant leaves; returns the bays (0 or 1) that go back into vFree. */
+    private int vacate(Dock dock) {
+        if (dock.vacate()) {
+            return 1;
+        }
+        docksOnline.decrementAndGet();
+        Logger.logTrace(0, "Station", "Dock {} is now offline.", dock.index);
+        return 0;
+    }
+
+    /** Lock held: sets CONTENDED iff some request is queued. */
+    private void updateContended() {
+        queued = refuelQueue.size() + supplyQueue.size();
+        queuedN = (int) refuelQueue.demandN();
+        queuedQ = (int) refuelQueue.demandQ();
+        if (refuelQueue.isEmpty() && supplyQueue.isEmpty()) {
+            state.getAndUpdate(s -> s & ~CONTENDED);
+        } else {
+            state.getAndUpdate(s -> s | CONTENDED);
+        }
     }
 
     private void reserveSupply(Request req) {
-        vFree--;
+        state.addAndGet(-delta(1, 0, 0));
+        req.dock = claimDock(true, req.reqN, req.reqQ, req.journalId);
         nResIn += req.reqN;
         qResIn += req.reqQ;
         req.isAllocated = true;
-        req.cv.signal();
+        req.wake();
+    }
+
+    /**
+     * Cuts an admitted request down to the n, q on offer; a request that only
+     * fits whole is left as it is.
+     */
+    private static void trim(Request req, int n, int q) {
+        req.reqN = Math.min(req.reqN, n);
+        req.reqQ = Math.min(req.reqQ, q);
     }
 
     private void reserveRefuel(Request req) {
-        vFree--;
-        nResOut += req.reqN;
-        qResOut += req.reqQ;
+        // CONTENDED is set while anyone is queued, so only releases race with
+        // us here and they can only add.
+        state.addAndGet(-delta(1, req.reqN, req.reqQ));
+        req.dock = claimDock(false, req.reqN, req.reqQ, req.journalId);
         req.isAllocated = true;
-        req.cv.signal();
+        req.wake();
     }
 
-    private void processQueue(LinkedList<Request> queue, java.util.function.Predicate<Request> canProcess,
-                              java.util.function.Consumer<Request> reserve) {
-        Iterator<Request> it = queue.iterator();
-        while (it.hasNext() && vFree > 0) {
-            Request req = it.next();
-            if (canProcess.test(req)) {
-                reserve.accept(req);
-                it.remove();
+    /** The station as the scheduling policy sees it; lock held. */
+    private final class PolicyView implements SchedulingPolicy.Station {
+        long now; // one clock read per wakeUpNext
+        int admitted; // by the current wake(), for the WakeupScan event
+
+        @Override
+        public WaitQueue supplyQueue() {
+            return supplyQueue;
+        }
+
+        @Override
+        public WaitQueue refuelQueue() {
+            return refuelQueue;
+        }
+
+        @Override
+        public boolean dockFree() {
+            return vFree() > 0;
+        }
+
+        @Override
+        public boolean fits(WaitQueue queue, long pos) {
+            int n = queue.needN(pos), q = queue.needQ(pos);
+            return queue.supply ? nSpace() >= n && qSpace() >= q : nAvail() >= n && qAvail() >= q;
+        }
+
+        @Override
+        public void admit(WaitQueue queue, long pos) {
+            if (!dockFree() || !fits(queue, pos)) {
+                throw new IllegalStateException("Scheduling policy admitted a request that does not fit");
+            }
+            Request req = queue.request(pos);
+            queue.removeAt(pos);
+            admitted++;
+            if (queue.supply) {
+                trim(req, nSpace(), qSpace());
+                reserveSupply(req);
+            } else {
+                trim(req, nAvail(), qAvail());
+                reserveRefuel(req);
             }
         }
+
+        @Override
+        public double fillLevel() {
+            return Math.min((double) nAvail() / MAX_N, (double) qAvail() / MAX_Q);
+        }
+
+        @Override
+        public double maxFitSize(WaitQueue queue) {
+            return queue.supply ? tankShare(nSpace(), qSpace()) : tankShare(nAvail(), qAvail());
+        }
+
+        @Override
+        public double size(WaitQueue queue, long pos) {
+            return tankShare(queue.needN(pos), queue.needQ(pos));
+        }
+
+        @Override
+        public long waitedNanos(WaitQueue queue, long pos) {
+            return now - queue.since(pos);
+        }
+    }
+
+    /** n, q as a share of tank capacity, 0..1 (mean of both fuels): a policy's request size. */
+    private double tankShare(int n, int q) {
+        return ((double) n / MAX_N + (double) q / MAX_Q) / 2;
     }
 
     private void wakeUpNext() {
-        if (vFree > 0) {
-            processQueue(supplyQueue, this::canSupply, this::reserveSupply);
+        long start = lockProfile == null ? 0 : System.nanoTime();
+        if (vFree() > 0 && (!supplyQueue.isEmpty() || !refuelQueue.isEmpty())) {
+            if (lockProfile != null) lockProfile.scanLength.record(supplyQueue.size() + refuelQueue.size());
+            StationEvents.WakeupScan scan = StationEvents.beginScan(supplyQueue.size() + refuelQueue.size());
+            policyView.now = System.nanoTime();
+            policyView.admitted = 0;
+            policy.wake(policyView);
+            StationEvents.endScan(scan, metrics.name(), policyView.admitted);
+        }
+        if (supplyQueue.timed() + refuelQueue.timed() > 0) {
+            long now = System.nanoTime();
+            long perRank = SHED_PREDICTED ? meanHoldNanos() / Math.max(1, docksOnline.get()) : 0;
+            shedLate(supplyQueue, now, perRank);
+            shedLate(refuelQueue, now, perRank);
+        }
+        // With one side gone a late waiter may never be served (e.g. a supply
+        // ship queued for a dock while the tank filled up); send it away.
+        if (activeConsumers == 0) {
+            for (long p = supplyQueue.first(); p >= 0; p = supplyQueue.next(p)) {
+                if (supplyHopeless(supplyQueue.needN(p), supplyQueue.needQ(p))) abortAt(supplyQueue, p);
+            }
         }
-        if (vFree > 0) {
-            processQueue(refuelQueue, this::canRefuel, this::reserveRefuel);
+        if (activeProducers == 0) {
+            for (long p = refuelQueue.first(); p >= 0; p = refuelQueue.next(p)) {
+                if (refuelHopeless(refuelQueue.needN(p), refuelQueue.needQ(p))) abortAt(refuelQueue, p);
+            }
         }
+        updateContended();
+        if (lockProfile != null) lockProfile.section("wakeUpNext").hold.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Lock held: sends away waiters that will not dock before their deadline.
+     * Every waiter still ahead in the queue is taken to hold the line for
+     * perRank more (0: only deadlines already past count), so the estimate
+     * assumes arrival order; a policy that lets a waiter overtake may have
+     * served it in time.
+     */
+    private void shedLate(WaitQueue queue, long now, long perRank) {
+        long ahead = 0;
+        for (long p = queue.first(); p >= 0; p = queue.next(p)) {
+            long deadline = queue.deadline(p);
+            if (deadline != NO_DEADLINE && deadline - now < ahead * perRank) {
+                queue.request(p).isExpired = true;
+                abortAt(queue, p);
+            } else {
+                ahead++;
+            }
+        }
+    }
+
+    /** Mean dock occupancy of the completed dockings so far. */
+    private long meanHoldNanos() {
+        long busy = 0, services = 0;
+        for (Dock dock : docks) {
+            busy += dock.busyNanos();
+            services += dock.services();
+        }
+        return services == 0 ? 0 : busy / services;
+    }
+
+    /**
+     * Lock held: a queued request leaves of its own accord (deadline or
+     * interrupt); whoever it held back gets another chance at once.
+     */
+    private void withdraw(WaitQueue queue, Request req) {
+        queue.remove(req);
+        req.isAborted = true;
+        if (journal != null) journal.abort(req.journalId);
+        wakeUpNext();
+    }
+
+    private void abortAt(WaitQueue queue, long pos) {
+        Request req = queue.request(pos);
+        queue.removeAt(pos);
+        req.isAborted = true;
+        if (journal != null) journal.abort(req.journalId);
+        req.wake();
+    }
+
+    /**
+     * Lock held: queues a request that could not be admitted. Raising CONTENDED
+     * and then re-running wakeUpNext closes the gap with a lock-free release
+     * that slipped in before the flag; the request may already be admitted on
+     * return.
+     */
+    private void enqueue(WaitQueue queue, Request req) {
+        queueUp(queue, req);
+        updateContended();
+        wakeUpNext();
+    }
+
+    /** Lock held: appends a waiter and stamps what the scheduling policy needs. */
+    private void queueUp(WaitQueue queue, Request req) {
+        req.isSupply = queue.supply;
+        if (journal != null) req.journalId = journal.queue(req.isSupply, req.reqN, req.reqQ);
+        long now = System.nanoTime();
+        if (orderKey != null) {
+            req.orderKey = orderKey.of(tankShare(req.minN, req.minQ), now - epoch);
+        }
+        queue.add(req, now);
+    }
+
+    /** Lock held: a request for a blocking caller, with its Condition, reused where possible. */
+    private Request takeRequest(int n, int q, int minN, int minQ, long deadline) {
+        Request req;
+        if (spares == 0) {
+            req = new Request(lock);
+        } else {
+            req = spareRequests[--spares];
+            spareRequests[spares] = null;
+        }
+        req.reqN = n;
+        req.reqQ = q;
+        req.minN = minN;
+        req.minQ = minQ;
+        req.deadline = deadline;
+        return req;
+    }
+
+    /** Lock held: the blocking caller is done with req (allocated or aborted, so off the queue). */
+    private void recycle(Request req) {
+        req.isAllocated = req.isAborted = req.isExpired = false;
+        req.dock = null;
+        req.journalId = 0;
+        if (spares == spareRequests.length) {
+            spareRequests = Arrays.copyOf(spareRequests, spares * 2);
+        }
+        spareRequests[spares++] = req;
     }
 
     public void unregisterConsumer() {
-        lock.lock();
+        lockStation("unregisterConsumer");
         try {
             activeConsumers--;
             if (activeConsumers == 0 && !supplyQueue.isEmpty()) {
                 Logger.logTrace(0, "Station", "ALERT: All consumers left. Aborting waiting supply ships.");
-                for (Request req : supplyQueue) {
+                for (long p = supplyQueue.first(); p >= 0; p = supplyQueue.next(p)) {
+                    Request req = supplyQueue.request(p);
                     req.isAborted = true;
-                    req.cv.signal();
+                    if (journal != null) journal.abort(req.journalId);
+                    req.wake();
                 }
                 supplyQueue.clear();
+                updateContended();
             }
         } finally {
-            lock.unlock();
+            unlockStation();
         }
     }
 
     public void unregisterProducer() {
-        lock.lock();
+        lockStation("unregisterProducer");
         try {
             activeProducers--;
             if (activeProducers == 0 && !refuelQueue.isEmpty()) {
                 Logger.logTrace(0, "Station", "ALERT: All supply ships left. Aborting waiting ordinary ships.");
-                for (Request req : refuelQueue) {
+                for (long p = refuelQueue.first(); p >= 0; p = refuelQueue.next(p)) {
+                    Request req = refuelQueue.request(p);
                     req.isAborted = true;
-                    req.cv.signal();
+                    if (journal != null) journal.abort(req.journalId);
+                    req.wake();
                 }
                 refuelQueue.clear();
+                updateContended();
             }
         } finally {
-            lock.unlock();
+            unlockStation();
         }
     }
 
-    public boolean refuelVehicle(int id, String type, int reqN, int reqQ, int dockTimeMs) throws InterruptedException {
-        lock.lock();
-        try {
-            Logger.logTrace(id, type, "Arrived, requesting " + reqN + "N, " + reqQ + "Q.");
+    // --- ADMISSION STEPS (lock held) ---
+    // Shared by the blocking API and the non-blocking submit/complete API.
+    // Lock-free refuels may run concurrently while CONTENDED is clear, so every
+    // check-then-take on the packed state is a CAS.
 
-            if (refuelQueue.isEmpty() && vFree > 0 && nAvail() >= reqN && qAvail() >= reqQ) {
-                vFree--;
-                nResOut += reqN;
-                qResOut += reqQ;
-            } else {
-                if (activeProducers == 0 && (nAvail() < reqN || qAvail() < reqQ)) {
-                    Logger.logTrace(id, type, "Mission Aborted: Station lacks fuel and no producers remain.");
+    private Dock tryReserveRefuel(int reqN, int reqQ) {
+        return refuelQueue.isEmpty() ? casReserveRefuel(reqN, reqQ, true) : null;
+    }
+
+    /**
+     * A request that accepts a partial fill and found no room for all of it
+     * takes what is there, if that is at least its minimum; req is trimmed to
+     * the grant. Full requests have been tried already.
+     */
+    private Dock tryPartialRefuel(Request req) {
+        if (!refuelQueue.isEmpty() || (req.minN == req.reqN && req.minQ == req.reqQ)) {
+            return null;
+        }
+        while (true) {
+            long s = state.get();
+            int n = Math.min(req.reqN, nAvail(s)), q = Math.min(req.reqQ, qAvail(s));
+            if (vFree(s) == 0 || n < req.minN || q < req.minQ) {
+                return null;
+            }
+            if (state.compareAndSet(s, s - delta(1, n, q))) {
+                trim(req, n, q);
+                return claimDock(false, n, q, -1);
+            }
+        }
+    }
+
+    private boolean refuelHopeless(int reqN, int reqQ) {
+        return activeProducers == 0 && (nAvail() < reqN || qAvail() < reqQ);
+    }
+
+    /** Fuel leaves the tank without a dock (transfers). */
+    private void drainTank(int n, int q) {
+        nCurr.addAndGet(-n);
+        qCurr.addAndGet(-q);
+    }
+
+    private void commitRefuel(Dock dock, int reqN, int reqQ) {
+        dock.pump(reqN, reqQ);
+        if (journal != null) journal.commit(dock.journalId, false, reqN, reqQ);
+        state.addAndGet(delta(vacate(dock), 0, 0));
+    }
+
+    /** Not under the lock: the lock-free counterpart of commitRefuel. */
+    private void departRefuel(Dock dock, int reqN, int reqQ) {
+        dock.pump(reqN, reqQ);
+        if (journal != null) journal.commit(dock.journalId, false, reqN, reqQ);
+        int bays = vacate(dock);
+        if (!casReleaseDock(bays)) {
+            lockStation("refuel commit");
+            try {
+                state.addAndGet(delta(bays, 0, 0));
+                wakeUpNext();
+            } finally {
+                unlockStation();
+            }
+        }
+    }
+
+    private Dock tryReserveSupply(int depN, int depQ) {
+        if (!supplyQueue.isEmpty() || nSpace() < depN || qSpace() < depQ) {
+            return null;
+        }
+        while (true) {
+            long s = state.get();
+            if (vFree(s) == 0) {
+                return null;
+            }
+            if (state.compareAndSet(s, s - delta(1, 0, 0))) {
+                nResIn += depN;
+                qResIn += depQ;
+                return claimDock(true, depN, depQ, -1);
+            }
+        }
+    }
+
+    /** The deposit counterpart of tryPartialRefuel: unloads what fits. */
+    private Dock tryPartialSupply(Request req) {
+        if (req.minN == req.reqN && req.minQ == req.reqQ) {
+            return null;
+        }
+        int n = Math.min(req.reqN, nSpace()), q = Math.min(req.reqQ, qSpace());
+        if (n < req.minN || q < req.minQ) {
+            return null;
+        }
+        Dock dock = tryReserveSupply(n, q);
+        if (dock != null) {
+            trim(req, n, q);
+        }
+        return dock;
+    }
+
+    private boolean supplyHopeless(int depN, int depQ) {
+        return activeConsumers == 0 && (nSpace() < depN || qSpace() < depQ);
+    }
+
+    private void commitInbound(int depN, int depQ) {
+        nCurr.addAndGet(depN);
+        qCurr.addAndGet(depQ);
+        nResIn -= depN;
+        qResIn -= depQ;
+    }
+
+    private void commitSupply(Dock dock, int depN, int depQ) {
+        commitInbound(depN, depQ);
+        if (journal != null) journal.commit(dock.journalId, true, depN, depQ);
+        state.addAndGet(delta(vacate(dock), depN, depQ));
+    }
+
+    // --- LOAD AND TRANSFER (used by StationCluster) ---
+    // The readers are lock-free snapshots and may be slightly stale; they are
+    // routing hints, not admission checks.
+
+    /** Occupied docks plus vehicles waiting in either queue. */
+    int load() {
+        return docksOnline.get() - vFree() + queued;
+    }
+
+    /** Lock-free readings for a SupplyDispatcher; StationCluster sums them over its shards. */
+    SupplyDispatcher.Tanks tanks() {
+        return new SupplyDispatcher.Tanks() {
+            @Override
+            public int capacityN() {
+                return MAX_N;
+            }
+
+            @Override
+            public int capacityQ() {
+                return MAX_Q;
+            }
+
+            @Override
+            public int levelN() {
+                return nLevel();
+            }
+
+            @Override
+            public int levelQ() {
+                return qLevel();
+            }
+
+            @Override
+            public long drawnN() {
+                long sum = 0;
+                for (Dock dock : docks) sum += dock.pumpedN();
+                return sum;
+            }
+
+            @Override
+            public long drawnQ() {
+                long sum = 0;
+                for (Dock dock : docks) sum += dock.pumpedQ();
+                return sum;
+            }
+
+            @Override
+            public int queuedN() {
+                return queuedN;
+            }
+
+            @Override
+            public int queuedQ() {
+                return queuedQ;
+            }
+        };
+    }
+
+    public SupplyDispatcher dispatcher() {
+        // Created here rather than in the constructor, which must not hand out this.
+        Optional<SupplyDispatcher> d = dispatcher.get();
+        if (d == null) {
+            dispatcher.compareAndSet(null, Optional.ofNullable(SupplyDispatcher.fromProperty(tanks())));
+            d = dispatcher.get();
+        }
+        return d.orElse(null);
+    }
+
+    int availableN() { return nAvail(); }
+    int availableQ() { return qAvail(); }
+    int spaceN() { return nSpace(); }
+    int spaceQ() { return qSpace(); }
+
+    /**
+     * Takes fuel out of the tank without a dock. Refuses while ordinary ships
+     * are queued here, so a transfer never starves local waiters.
+     */
+    boolean withdrawFuel(int n, int q) {
+        lockStation("depot transfer");
+        try {
+            if (!refuelQueue.isEmpty()) {
+                return false;
+            }
+            while (true) {
+                long s = state.get();
+                if (nAvail(s) < n || qAvail(s) < q) {
                     return false;
                 }
+                if (state.compareAndSet(s, s - delta(0, n, q))) {
+                    drainTank(n, q);
+                    if (journal != null) journal.transfer(-n, -q);
+                    wakeUpNext(); // the freed space may admit a queued supply ship
+                    return true;
+                }
+            }
+        } finally {
+            unlockStation();
+        }
+    }
+
+    /** Holds tank space for an incoming transfer, like a docked supply ship. */
+    boolean reserveSpace(int n, int q) {
+        lockStation("depot transfer");
+        try {
+            if (nSpace() < n || qSpace() < q) {
+                return false;
+            }
+            nResIn += n;
+            qResIn += q;
+            return true;
+        } finally {
+            unlockStation();
+        }
+    }
+
+    /** Lands a transfer in space held by reserveSpace. */
+    void depositReserved(int n, int q) {
+        lockStation("depot transfer");
+        try {
+            commitInbound(n, q);
+            if (journal != null) journal.transfer(n, q);
+            state.addAndGet(delta(0, n, q));
+            wakeUpNext();
+        } finally {
+            unlockStation();
+        }
+    }
+
+    /** Releases space held by reserveSpace when the transfer fell through. */
+    void cancelReserved(int n, int q) {
+        lockStation("depot transfer");
+        try {
+            nResIn -= n;
+            qResIn -= q;
+            wakeUpNext();
+        } finally {
+            unlockStation();
+        }
+    }
+
+    // --- DOCK ADMINISTRATION ---
+    // Docks can be added and taken offline while vehicles come and go. A busy
+    // dock is not interrupted: it retires and goes offline once its occupant
+    // has left.
+
+    /** Every dock ever added, online or not, indexed by Dock.index. */
+    List<Dock> docks() {
+        return List.of(docks);
+    }
+
+    public int docksOnline() {
+        return docksOnline.get();
+    }
+
+    /** Adds a free dock and returns its index. */
+    public int addDock() {
+        lockStation("dock admin");
+        try {
+            Dock[] ds = docks;
+            if (ds.length >= maxDocks) {
+                throw new IllegalStateException("Station cannot hold more than " + maxDocks + " docks");
+            }
+            Dock dock = new Dock(ds.length);
+            Dock[] grown = Arrays.copyOf(ds, ds.length + 1);
+            grown[dock.index] = dock;
+            docks = grown; // published before its bay, so claimDock always finds it
+            dockGauges(dock);
+            docksOnline.incrementAndGet();
+            state.addAndGet(delta(1, 0, 0));
+            Logger.logTrace(0, "Station", "Dock {} added.", dock.index);
+            wakeUpNext();
+            return dock.index;
+        } finally {
+            unlockStation();
+        }
+    }
+
+    /**
+     * Takes a dock out of service: a free dock at once, a busy one once its
+     * occupant leaves. False if it is already offline or retiring.
+     */
+    public boolean takeDockOffline(int index) {
+        lockStation("dock admin");
+        try {
+            Dock dock = docks[index];
+            while (true) {
+                if (dock.tryRetire()) {
+                    Logger.logTrace(0, "Station", "Dock {} retiring after its current visit.", dock.index);
+                    return true;
+                }
+                if (!dock.isFree()) {
+                    return false; // already retiring or offline
+                }
+                // A free dock needs its bay out of vFree first. With no bay
+                // left, either a claimer that counted one is about to take a
+                // dock (maybe this one) or a departure is about to return its
+                // bay, possibly through wakeUpNext; let both settle.
+                if (!casTakeBay()) {
+                    unlockStation();
+                    Thread.yield();
+                    lockStation("dock admin");
+                    continue;
+                }
+                if (dock.tryTakeOffline()) {
+                    docksOnline.decrementAndGet();
+                    Logger.logTrace(0, "Station", "Dock {} is now offline.", dock.index);
+                    return true;
+                }
+                state.addAndGet(delta(1, 0, 0)); // claimed under us; retire it instead
+            }
+        } finally {
+            unlockStation();
+        }
+    }
 
-                Logger.logTrace(id, type, "Insufficient resources/bays. Waiting in orbit...");
-                Request myReq = new Request(reqN, reqQ, lock);
-                refuelQueue.add(myReq);
+    /** Returns an offline or retiring dock to service; false if it was in service. */
+    public boolean bringDockOnline(int index) {
+        lockStation("dock admin");
+        try {
+            Dock dock = docks[index];
+            if (dock.tryUnretire()) {
+                return true;
+            }
+            if (!dock.tryBringOnline()) {
+                return false;
+            }
+            docksOnline.incrementAndGet();
+            state.addAndGet(delta(1, 0, 0));
+            Logger.logTrace(0, "Station", "Dock {} back online.", dock.index);
+            wakeUpNext();
+            return true;
+        } finally {
+            unlockStation();
+        }
+    }
 
-                while (!myReq.isAllocated && !myReq.isAborted) {
-                    myReq.cv.await();
+    /** Lock held: counts one bay out of vFree without a vehicle, e.g. to take its dock offline. */
+    private boolean casTakeBay() {
+        while (true) {
+            long s = state.get();
+            if (vFree(s) == 0) {
+                return false;
+            }
+            if (state.compareAndSet(s, s - delta(1, 0, 0))) {
+                return true;
+            }
+        }
+    }
+
+    // --- RECOVERY ---
+    // Reservations that were held when a durable station went down. Their
+    // vehicles are gone, so nobody will complete them; until they are
+    // settled their fuel (refuels) or tank space (supplies) stays held. They
+    // hold no dock.
+
+    public List<StationJournal.Entry> inDoubt() {
+        lockStation("journal");
+        try {
+            return List.copyOf(inDoubt.values());
+        } finally {
+            unlockStation();
+        }
+    }
+
+    /**
+     * Resolves an in-doubt reservation: pumped means the transfer did
+     * happen before the crash, so the fuel leaves (or lands in) the tank;
+     * otherwise it is released. False if id is not in doubt.
+     */
+    public boolean settleInDoubt(long id, boolean pumped) {
+        lockStation("journal");
+        try {
+            StationJournal.Entry e = inDoubt.remove(id);
+            if (e == null) {
+                return false;
+            }
+            if (e.supply()) {
+                if (pumped) {
+                    commitInbound(e.n(), e.q());
+                    state.addAndGet(delta(0, e.n(), e.q()));
+                    journal.commit(id, true, e.n(), e.q());
+                } else {
+                    nResIn -= e.n();
+                    qResIn -= e.q();
+                    journal.release(id, true, e.n(), e.q());
                 }
+            } else if (pumped) {
+                drainTank(e.n(), e.q());
+                journal.commit(id, false, e.n(), e.q());
+            } else {
+                state.addAndGet(delta(0, e.n(), e.q()));
+                journal.release(id, false, e.n(), e.q());
+            }
+            wakeUpNext();
+            return true;
+        } finally {
+            unlockStation();
+        }
+    }
 
-                if (myReq.isAborted) {
-                    Logger.logTrace(id, type, "Forced to abort from orbit: Station is closing.");
-                    return false;
+    // --- NON-BLOCKING API ---
+    // The returned request is either allocated (dock reserved), aborted, or
+    // queued; a queued request becomes allocated or aborted later, and onWake
+    // is then called under the station lock. Used by the event simulation.
+
+    Request submitRefuel(int reqN, int reqQ, Runnable onWake) {
+        lockStation("refuel reserve");
+        try {
+            Request req = new Request(reqN, reqQ, (Runnable) null);
+            if ((req.dock = tryReserveRefuel(reqN, reqQ)) != null) {
+                req.isAllocated = true;
+            } else if (refuelHopeless(reqN, reqQ)) {
+                req.isAborted = true;
+            } else {
+                enqueue(refuelQueue, req);
+            }
+            // Set afterwards: an admission inside enqueue is reported by the return value.
+            req.onWake = onWake;
+            return req;
+        } finally {
+            unlockStation();
+        }
+    }
+
+    void completeRefuel(Request req) {
+        lockStation("refuel commit");
+        try {
+            commitRefuel(req.dock, req.reqN, req.reqQ);
+            wakeUpNext();
+        } finally {
+            unlockStation();
+        }
+    }
+
+    Request submitSupply(int depN, int depQ, Runnable onWake) {
+        lockStation("supply reserve");
+        try {
+            Request req = new Request(depN, depQ, (Runnable) null);
+            if ((req.dock = tryReserveSupply(depN, depQ)) != null) {
+                req.isAllocated = true;
+            } else if (supplyHopeless(depN, depQ)) {
+                req.isAborted = true;
+            } else {
+                enqueue(supplyQueue, req);
+            }
+            req.onWake = onWake;
+            return req;
+        } finally {
+            unlockStation();
+        }
+    }
+
+    void completeSupply(Request req) {
+        lockStation("supply commit");
+        try {
+            commitSupply(req.dock, req.reqN, req.reqQ);
+            wakeUpNext();
+        } finally {
+            unlockStation();
+        }
+    }
+
+    // --- BATCHED API ---
+    // Many arrivals and departures for the price of one lock acquisition and
+    // one wakeUpNext. Unlike submitRefuel/submitSupply, every arrival's onWake
+    // runs exactly once, under the station lock, when it is allocated or
+    // aborted; that may be inside applyBatch itself.
+
+    /** Work for one batched critical section. Requests are built with the Runnable constructor. */
+    static final class Batch {
+        final List<Request> refuelDepartures = new ArrayList<>();
+        final List<Request> supplyDepartures = new ArrayList<>();
+        final List<Request> refuelArrivals = new ArrayList<>();
+        final List<Request> supplyArrivals = new ArrayList<>();
+
+        boolean isEmpty() {
+            return refuelDepartures.isEmpty() && supplyDepartures.isEmpty()
+                    && refuelArrivals.isEmpty() && supplyArrivals.isEmpty();
+        }
+
+        void clear() {
+            refuelDepartures.clear();
+            supplyDepartures.clear();
+            refuelArrivals.clear();
+            supplyArrivals.clear();
+        }
+    }
+
+    /**
+     * Completes the departures (docked requests, as completeRefuel/completeSupply
+     * would), then admits, aborts or queues the arrivals in list order,
+     * emitting their Arrival and Queued events (the driver, which knows when
+     * each vehicle is woken, emits the rest). Queue
+     * order is the same as for one-by-one submits: once an arrival of a kind
+     * has to wait, the later ones of that kind queue behind it.
+     */
+    void applyBatch(Batch batch) {
+        lockStation("batch");
+        try {
+            for (Request req : batch.refuelDepartures) {
+                commitRefuel(req.dock, req.reqN, req.reqQ);
+            }
+            for (Request req : batch.supplyDepartures) {
+                commitSupply(req.dock, req.reqN, req.reqQ);
+            }
+            for (Request req : batch.supplyArrivals) {
+                StationEvents.arrival(metrics.name(), null, req.id, req.type, true, req.reqN, req.reqQ);
+                if ((req.dock = tryReserveSupply(req.reqN, req.reqQ)) != null) {
+                    req.isAllocated = true;
+                    req.wake();
+                } else if (supplyHopeless(req.reqN, req.reqQ)) {
+                    req.isAborted = true;
+                    req.wake();
+                } else {
+                    StationEvents.queued(metrics.name(), null, req.id, req.type, supplyQueue.size());
+                    queueUp(supplyQueue, req);
+                }
+            }
+            for (Request req : batch.refuelArrivals) {
+                StationEvents.arrival(metrics.name(), null, req.id, req.type, false, req.reqN, req.reqQ);
+                if ((req.dock = tryReserveRefuel(req.reqN, req.reqQ)) != null) {
+                    req.isAllocated = true;
+                    req.wake();
+                } else if (refuelHopeless(req.reqN, req.reqQ)) {
+                    req.isAborted = true;
+                    req.wake();
+                } else {
+                    StationEvents.queued(metrics.name(), null, req.id, req.type, refuelQueue.size());
+                    queueUp(refuelQueue, req);
                 }
             }
+            updateContended();
+            wakeUpNext();
+        } finally {
+            unlockStation();
+        }
+    }
+
+    /** Withdraws a queued request; false if it was already allocated or aborted. */
+    boolean cancel(Request req) {
+        lockStation("cancel");
+        try {
+            if (req.isAllocated || req.isAborted) {
+                return false;
+            }
+            if (!(req.isSupply ? supplyQueue : refuelQueue).remove(req)) {
+                return false;
+            }
+            req.isAborted = true;
+            if (journal != null) journal.abort(req.journalId);
+            wakeUpNext(); // it may have been the head that held the others back
+            return true;
         } finally {
-            lock.unlock();
+            unlockStation();
         }
+    }
+
+    // --- ASYNCHRONOUS API ---
+    // No thread waits for a dock or sleeps through the docking time. Queued
+    // requests are admitted by wakeUpNext as usual; their onWake only hands
+    // the visit to a small shared scheduler, which also runs the dock timers
+    // and the departures. Future callbacks therefore never run under the
+    // station lock, and a fixed pool drives a fleet of any size.
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(
+            Integer.getInteger("station.timers", 2), Thread.ofPlatform().name("station-timer-", 1).daemon().factory());
 
+    /**
+     * One asynchronous visit. docked completes with true once a dock is held,
+     * or false if the station sent the vehicle away; departed completes once
+     * the vehicle has left (false if it never docked). Cancelling docked, or
+     * completing it exceptionally (e.g. orTimeout), withdraws a queued request
+     * and completes departed the same way. A vehicle already pumping cannot
+     * be cancelled.
+     */
+    static final class Visit {
+        final CompletableFuture<Boolean> docked = new CompletableFuture<>();
+        final CompletableFuture<Boolean> departed = new CompletableFuture<>();
+        final long arrivedNanos = System.nanoTime();
+        long dockedNanos;
+    }
+
+    /** Completes after ms on the shared scheduler, e.g. for travel times. */
+    static CompletableFuture<Void> delay(long ms) {
+        CompletableFuture<Void> f = new CompletableFuture<>();
+        SCHEDULER.schedule(() -> f.complete(null), ms, TimeUnit.MILLISECONDS);
+        return f;
+    }
+
+    Visit refuelAsync(int id, String type, int reqN, int reqQ, int dockTimeMs) {
+        Logger.logTrace(id, type, "Arrived, requesting {}N, {}Q.", reqN, reqQ);
+        StationEvents.arrival(metrics.name(), null, id, type, false, reqN, reqQ);
+        Visit visit = new Visit();
+        Request req = new Request(reqN, reqQ, (Runnable) null);
+        Runnable onDocked = () -> admitted(visit, req, id, type, dockTimeMs,
+                () -> releaseRefuel(req),
+                () -> {
+                    departRefuel(req.dock, reqN, reqQ);
+                    recordDeparture(metrics.vehicle(type), visit.arrivedNanos, visit.dockedNanos);
+                    departed(id, type, visit.arrivedNanos, visit.dockedNanos);
+                    Logger.logTrace(id, type, "Finished refueling and departed. (Station N:{} Q:{})",
+                            nLevel(), qLevel());
+                    visit.departed.complete(true);
+                });
+        watchCancel(visit, req, id, type);
+
+        if ((req.dock = casReserveRefuel(reqN, reqQ, false)) != null) {
+            req.isAllocated = true;
+        } else {
+            lockStation("refuel reserve");
+            try {
+                if (visit.docked.isDone()) {
+                    req.isAborted = true;
+                } else if ((req.dock = tryReserveRefuel(reqN, reqQ)) != null) {
+                    req.isAllocated = true;
+                } else if (refuelHopeless(reqN, reqQ)) {
+                    req.isAborted = true;
+                } else {
+                    Logger.logTrace(id, type, "Insufficient resources/bays. Waiting in orbit...");
+                    StationEvents.queued(metrics.name(), null, id, type, refuelQueue.size());
+                    req.onWake = () -> SCHEDULER.execute(onDocked);
+                    enqueue(refuelQueue, req);
+                    return visit;
+                }
+            } finally {
+                unlockStation();
+            }
+        }
+        onDocked.run();
+        return visit;
+    }
+
+    /**
+     * Deposit, then take the return fuel as a second visit, like supplyStation.
+     * docked refers to the deposit; departed to the return refuel.
+     */
+    Visit supplyAsync(int id, int depN, int depQ, int retN, int retQ, int dockTimeMs) {
+        Logger.logTrace(id, "Supply", "Arrived to deposit {}N, {}Q.", depN, depQ);
+        StationEvents.arrival(metrics.name(), null, id, "Supply", true, depN, depQ);
+        Visit visit = new Visit();
+        Request req = new Request(depN, depQ, (Runnable) null);
+        Runnable onDocked = () -> admitted(visit, req, id, "Supply", dockTimeMs,
+                () -> releaseSupply(req),
+                () -> {
+                    completeSupply(req);
+                    recordDeparture(metrics.vehicle("Supply"), visit.arrivedNanos, visit.dockedNanos);
+                    departed(id, "Supply", visit.arrivedNanos, visit.dockedNanos);
+                    Logger.logTrace(id, "Supply", "Finished deposit. Requesting return fuel...");
+                    refuelAsync(id, "Supply", retN, retQ, dockTimeMs).departed.whenComplete((ok, ex) -> {
+                        if (ex != null) {
+                            visit.departed.completeExceptionally(ex);
+                        } else {
+                            visit.departed.complete(ok);
+                        }
+                    });
+                });
+        watchCancel(visit, req, id, "Supply");
+
+        lockStation("supply reserve");
+        try {
+            if (visit.docked.isDone()) {
+                req.isAborted = true;
+            } else if ((req.dock = tryReserveSupply(depN, depQ)) != null) {
+                req.isAllocated = true;
+            } else if (supplyHopeless(depN, depQ)) {
+                req.isAborted = true;
+            } else {
+                Logger.logTrace(id, "Supply", "Insufficient space/bays. Waiting in orbit...");
+                StationEvents.queued(metrics.name(), null, id, "Supply", supplyQueue.size());
+                req.onWake = () -> SCHEDULER.execute(onDocked);
+                enqueue(supplyQueue, req);
+                return visit;
+            }
+        } finally {
+            unlockStation();
+        }
+        onDocked.run();
+        return visit;
+    }
+
+    /** An abandoned docked future withdraws the request if it is still queued. */
+    private void watchCancel(Visit visit, Request req, int id, String type) {
+        visit.docked.whenComplete((ok, ex) -> {
+            if (ex != null) {
+                if (cancel(req)) {
+                    metrics.vehicle(type).aborts.increment();
+                    StationEvents.aborted(metrics.name(), null, id, type, "cancelled",
+                            System.nanoTime() - visit.arrivedNanos);
+                }
+                visit.departed.completeExceptionally(ex);
+            }
+        });
+    }
+
+    /** Not under the lock: the request has just been allocated or aborted. */
+    private void admitted(Visit visit, Request req, int id, String type, int dockTimeMs, Runnable undo,
+            Runnable depart) {
+        if (req.isAborted) {
+            if (visit.docked.complete(false)) {
+                Logger.logTrace(id, type, "Mission Aborted: Station cannot serve the request.");
+                metrics.vehicle(type).aborts.increment();
+                StationEvents.aborted(metrics.name(), null, id, type, "hopeless",
+                        System.nanoTime() - visit.arrivedNanos);
+                visit.departed.complete(false);
+            }
+            return;
+        }
+        visit.dockedNanos = System.nanoTime();
+        if (!visit.docked.complete(true)) {
+            // Given up on while the allocation was on its way: hand the dock back.
+            undo.run();
+            return;
+        }
+        metrics.vehicle(type).wait.record(visit.dockedNanos - visit.arrivedNanos);
+        StationEvents.admitted(metrics.name(), null, id, type, visit.dockedNanos - visit.arrivedNanos,
+                req.reqN, req.reqQ, req.dock.index);
         Logger.logTrace(id, type, "Docked. Pumping fuel...");
-        Thread.sleep(dockTimeMs);
+        SCHEDULER.schedule(depart, dockTimeMs, TimeUnit.MILLISECONDS);
+    }
 
-        lock.lock();
+    private static void recordDeparture(StationMetrics.VehicleStats stats, long arrived, long docked) {
+        long now = System.nanoTime();
+        stats.hold.record(now - docked);
+        stats.visit.record(now - arrived);
+    }
+
+    private void departed(int id, String type, long arrived, long docked) {
+        long now = System.nanoTime();
+        StationEvents.departed(metrics.name(), null, id, type, now - docked, now - arrived);
+    }
+
+    /** An allocated refuel that never pumped: dock and fuel go back. */
+    private void releaseRefuel(Request req) {
+        lockStation("release");
         try {
-            nCurr -= reqN;
-            qCurr -= reqQ;
-            nResOut -= reqN;
-            qResOut -= reqQ;
-            vFree++;
-            Logger.logTrace(id, type, "Finished refueling and departed. (Station N:" + nCurr + " Q:" + qCurr + ")");
+            if (journal != null) journal.release(req.dock.journalId, false, req.reqN, req.reqQ);
+            state.addAndGet(delta(vacate(req.dock), req.reqN, req.reqQ));
             wakeUpNext();
         } finally {
-            lock.unlock();
+            unlockStation();
+        }
+    }
+
+    /** An allocated deposit that never pumped: dock and tank space go back. */
+    private void releaseSupply(Request req) {
+        lockStation("release");
+        try {
+            if (journal != null) journal.release(req.dock.journalId, true, req.reqN, req.reqQ);
+            nResIn -= req.reqN;
+            qResIn -= req.reqQ;
+            state.addAndGet(delta(vacate(req.dock), 0, 0));
+            wakeUpNext();
+        } finally {
+            unlockStation();
+        }
+    }
+
+    // --- BLOCKING API ---
+    // The deadline variants take an absolute System.nanoTime() by which the
+    // vehicle must have docked; past it the vehicle leaves the queue (O(1))
+    // and returns false. Once docked it stays until it is done.
+    //
+    // The variants with a minimum (minN, minQ) accept a partial fill: when
+    // the tank cannot cover the whole request the vehicle docks as soon as
+    // it can have at least the minimum, and takes whatever is there up to
+    // what it asked for. Without one, -Dstation.partial decides.
+
+    public boolean refuelVehicle(int id, String type, int reqN, int reqQ, int dockTimeMs) throws InterruptedException {
+        return refuelVehicle(id, type, reqN, reqQ, dockTimeMs, NO_DEADLINE);
+    }
+
+    public boolean refuelVehicle(int id, String type, int reqN, int reqQ, int dockTimeMs, long deadlineNanos)
+            throws InterruptedException {
+        return refuelVehicle(id, type, reqN, reqQ, acceptable(reqN), acceptable(reqQ), dockTimeMs, deadlineNanos);
+    }
+
+    public boolean refuelVehicle(int id, String type, int reqN, int reqQ, int minN, int minQ, int dockTimeMs,
+            long deadlineNanos) throws InterruptedException {
+        checkMinimum(reqN, reqQ, minN, minQ);
+        Logger.logTrace(id, type, "Arrived, requesting {}N, {}Q.", reqN, reqQ);
+        StationEvents.arrival(metrics.name(), null, id, type, false, reqN, reqQ);
+        StationMetrics.VehicleStats stats = metrics.vehicle(type);
+        long arrived = System.nanoTime();
+        int gotN = reqN, gotQ = reqQ;
+
+        // Fast path: nobody waiting and enough of everything, so no lock at all.
+        Dock dock = casReserveRefuel(reqN, reqQ, false);
+        if (dock == null) {
+            lockStation("refuel reserve");
+            try {
+                if ((dock = tryReserveRefuel(reqN, reqQ)) == null) {
+                    if (refuelHopeless(minN, minQ)) {
+                        Logger.logTrace(id, type, "Mission Aborted: Station lacks fuel and no producers remain.");
+                        stats.aborts.increment();
+                        StationEvents.aborted(metrics.name(), null, id, type, "hopeless",
+                                System.nanoTime() - arrived);
+                        return false;
+                    }
+                    if (expired(deadlineNanos)) {
+                        Logger.logTrace(id, type, "Gave up: no dock before the deadline.");
+                        stats.timeouts.increment();
+                        StationEvents.aborted(metrics.name(), null, id, type, "timeout",
+                                System.nanoTime() - arrived);
+                        return false;
+                    }
+
+                    Request myReq = takeRequest(reqN, reqQ, minN, minQ, deadlineNanos);
+                    boolean late = false;
+                    if ((dock = tryPartialRefuel(myReq)) == null) {
+                        Logger.logTrace(id, type, "Insufficient resources/bays. Waiting in orbit...");
+                        StationEvents.queued(metrics.name(), null, id, type, refuelQueue.size());
+                        enqueue(refuelQueue, myReq);
+                        dock = awaitDock(refuelQueue, myReq, id, type, arrived);
+                        late = myReq.isExpired;
+                    }
+                    gotN = myReq.reqN;
+                    gotQ = myReq.reqQ;
+                    recycle(myReq);
+                    if (dock == null) {
+                        if (late) {
+                            Logger.logTrace(id, type, "Gave up: no dock before the deadline.");
+                            stats.timeouts.increment();
+                        } else {
+                            Logger.logTrace(id, type, "Forced to abort from orbit: Station is closing.");
+                            stats.aborts.increment();
+                        }
+                        StationEvents.aborted(metrics.name(), null, id, type, late ? "timeout" : "closing",
+                                System.nanoTime() - arrived);
+                        return false;
+                    }
+                }
+            } finally {
+                unlockStation();
+            }
+        }
+
+        long docked = System.nanoTime();
+        stats.wait.record(docked - arrived);
+        StationEvents.admitted(metrics.name(), null, id, type, docked - arrived, gotN, gotQ, dock.index);
+        if (gotN < reqN || gotQ < reqQ) {
+            stats.partials.increment();
+            Logger.logTrace(id, type, "Docked for a partial fill of {}N, {}Q. Pumping fuel...", gotN, gotQ);
+        } else {
+            Logger.logTrace(id, type, "Docked. Pumping fuel...");
         }
+        Thread.sleep(dockTimeMs);
+
+        departRefuel(dock, gotN, gotQ);
+        recordDeparture(stats, arrived, docked);
+        departed(id, type, arrived, docked);
+        Logger.logTrace(id, type, "Finished refueling and departed. (Station N:{} Q:{})", nLevel(), qLevel());
         return true;
     }
 
     public boolean supplyStation(int id, int depN, int depQ, int retN, int retQ, int dockTimeMs) throws InterruptedException {
-        lock.lock();
+        return supplyStation(id, depN, depQ, retN, retQ, dockTimeMs, NO_DEADLINE);
+    }
+
+    public boolean supplyStation(int id, int depN, int depQ, int retN, int retQ, int dockTimeMs, long deadlineNanos)
+            throws InterruptedException {
+        return supplyStation(id, depN, depQ, acceptable(depN), acceptable(depQ), retN, retQ, dockTimeMs,
+                deadlineNanos);
+    }
+
+    /**
+     * A ship that accepts a partial unload deposits what fits (at least minN,
+     * minQ), leaves the dock and queues again with the rest until all of it
+     * is delivered; then it takes its return fuel in full. The deadline covers
+     * docking for the deposits only; a ship that has delivered waits for its
+     * return fuel as long as it takes.
+     */
+    public boolean supplyStation(int id, int depN, int depQ, int minN, int minQ, int retN, int retQ,
+            int dockTimeMs, long deadlineNanos) throws InterruptedException {
+        checkMinimum(depN, depQ, minN, minQ);
+        int leftN = depN, leftQ = depQ;
+        do {
+            // Each leg unloads at least one unit of every fuel still aboard, so the ship always makes progress.
+            long unloaded = deposit(id, leftN, leftQ, Math.min(Math.max(minN, 1), leftN),
+                    Math.min(Math.max(minQ, 1), leftQ), dockTimeMs, deadlineNanos);
+            if (unloaded < 0) {
+                return false;
+            }
+            leftN -= (int) (unloaded >>> 32);
+            leftQ -= (int) unloaded;
+            if (leftN > 0 || leftQ > 0) {
+                Logger.logTrace(id, "Supply", "Tank full: {}N, {}Q still aboard. Queueing again...", leftN, leftQ);
+            }
+        } while (leftN > 0 || leftQ > 0);
+
+        return refuelVehicle(id, "Supply", retN, retQ, retN, retQ, dockTimeMs, NO_DEADLINE);
+    }
+
+    /** One docking to unload; returns what was deposited (N << 32 | Q), or -1 if the ship never docked. */
+    private long deposit(int id, int depN, int depQ, int minN, int minQ, int dockTimeMs, long deadlineNanos)
+            throws InterruptedException {
+        StationMetrics.VehicleStats stats = metrics.vehicle("Supply");
+        long arrived = System.nanoTime();
+        int gotN = depN, gotQ = depQ;
+        Dock dock;
+        lockStation("supply reserve");
         try {
-            Logger.logTrace(id, "Supply", "Arrived to deposit " + depN + "N, " + depQ + "Q.");
+            Logger.logTrace(id, "Supply", "Arrived to deposit {}N, {}Q.", depN, depQ);
+            StationEvents.arrival(metrics.name(), null, id, "Supply", true, depN, depQ);
 
-            if (supplyQueue.isEmpty() && vFree > 0 && nSpace() >= depN && qSpace() >= depQ) {
-                vFree--;
-                nResIn += depN;
-                qResIn += depQ;
-            } else {
-                if (activeConsumers == 0 && (nSpace() < depN || qSpace() < depQ)) {
+            if ((dock = tryReserveSupply(depN, depQ)) == null) {
+                if (supplyHopeless(minN, minQ)) {
                     Logger.logTrace(id, "Supply", "Mission Aborted: Station full and no consumers remain.");
-                    return false;
+                    stats.aborts.increment();
+                    StationEvents.aborted(metrics.name(), null, id, "Supply", "hopeless",
+                            System.nanoTime() - arrived);
+                    return -1;
                 }
-
-                Logger.logTrace(id, "Supply", "Insufficient space/bays. Waiting in orbit...");
-                Request myReq = new Request(depN, depQ, lock);
-                supplyQueue.add(myReq);
-
-                while (!myReq.isAllocated && !myReq.isAborted) {
-                    myReq.cv.await();
+                if (expired(deadlineNanos)) {
+                    Logger.logTrace(id, "Supply", "Gave up: no dock before the deadline.");
+                    stats.timeouts.increment();
+                    StationEvents.aborted(metrics.name(), null, id, "Supply", "timeout",
+                            System.nanoTime() - arrived);
+                    return -1;
                 }
 
-                if (myReq.isAborted) {
-                    Logger.logTrace(id, "Supply", "Forced to abort from orbit: Station is closing.");
-                    return false;
+                Request myReq = takeRequest(depN, depQ, minN, minQ, deadlineNanos);
+                boolean late = false;
+                if ((dock = tryPartialSupply(myReq)) == null) {
+                    Logger.logTrace(id, "Supply", "Insufficient space/bays. Waiting in orbit...");
+                    StationEvents.queued(metrics.name(), null, id, "Supply", supplyQueue.size());
+                    enqueue(supplyQueue, myReq);
+                    dock = awaitDock(supplyQueue, myReq, id, "Supply", arrived);
+                    late = myReq.isExpired;
+                }
+                gotN = myReq.reqN;
+                gotQ = myReq.reqQ;
+                recycle(myReq);
+                if (dock == null) {
+                    if (late) {
+                        Logger.logTrace(id, "Supply", "Gave up: no dock before the deadline.");
+                        stats.timeouts.increment();
+                    } else {
+                        Logger.logTrace(id, "Supply", "Forced to abort from orbit: Station is closing.");
+                        stats.aborts.increment();
+                    }
+                    StationEvents.aborted(metrics.name(), null, id, "Supply", late ? "timeout" : "closing",
+                            System.nanoTime() - arrived);
+                    return -1;
                 }
             }
         } finally {
-            lock.unlock();
+            unlockStation();
         }
 
-        Logger.logTrace(id, "Supply", "Docked. Depositing fuel...");
+        long docked = System.nanoTime();
+        stats.wait.record(docked - arrived);
+        StationEvents.admitted(metrics.name(), null, id, "Supply", docked - arrived, gotN, gotQ, dock.index);
+        if (gotN < depN || gotQ < depQ) {
+            stats.partials.increment();
+            Logger.logTrace(id, "Supply", "Docked to unload {}N, {}Q of it. Depositing fuel...", gotN, gotQ);
+        } else {
+            Logger.logTrace(id, "Supply", "Docked. Depositing fuel...");
+        }
         Thread.sleep(dockTimeMs);
 
-        lock.lock();
+        lockStation("supply commit");
         try {
-            nCurr += depN;
-            qCurr += depQ;
-            nResIn -= depN;
-            qResIn -= depQ;
-            vFree++;
-            Logger.logTrace(id, "Supply", "Finished deposit. Requesting return fuel...");
+            commitSupply(dock, gotN, gotQ);
+            if (gotN == depN && gotQ == depQ) {
+                Logger.logTrace(id, "Supply", "Finished deposit. Requesting return fuel...");
+            } else {
+                Logger.logTrace(id, "Supply", "Finished unloading what fits.");
+            }
             wakeUpNext();
         } finally {
-            lock.unlock();
+            unlockStation();
+        }
+        recordDeparture(stats, arrived, docked);
+        departed(id, "Supply", arrived, docked);
+        return (long) gotN << 32 | gotQ;
+    }
+
+    /** The -Dstation.partial share of amount, rounded up. */
+    private static int acceptable(int amount) {
+        return (int) ((amount * (long) PARTIAL_PERCENT + 99) / 100);
+    }
+
+    private static void checkMinimum(int n, int q, int minN, int minQ) {
+        if (minN < 0 || minQ < 0 || minN > n || minQ > q) {
+            throw new IllegalArgumentException("Minimum " + minN + "N, " + minQ + "Q is not within " + n + "N, " + q + "Q");
         }
+    }
+
+    private static boolean expired(long deadlineNanos) {
+        return deadlineNanos != NO_DEADLINE && deadlineNanos - System.nanoTime() <= 0;
+    }
 
-        return refuelVehicle(id, "Supply", retN, retQ, dockTimeMs);
+    /**
+     * Lock held, req queued: waits until it is allocated or aborted (which
+     * includes being shed), or its deadline passes. Returns its dock, or null
+     * if it did not get one; isExpired tells a missed deadline from an abort.
+     * An interrupted waiter leaves the queue, or hands back a dock it was
+     * given in the meantime, before the exception propagates. Each park is
+     * a QueueWait event for vehicle id of type, which arrived at arrived.
+     */
+    private Dock awaitDock(WaitQueue queue, Request req, int id, String type, long arrived)
+            throws InterruptedException {
+        boolean woken = false;
+        try {
+            while (!req.isAllocated && !req.isAborted) {
+                if (req.deadline != NO_DEADLINE && expired(req.deadline)) {
+                    req.isExpired = true;
+                    withdraw(queue, req);
+                } else {
+                    if (woken && lockProfile != null) {
+                        lockProfile.futileWakeups.increment(); // woken, still not served: back to sleep
+                    }
+                    woken = true;
+                    StationEvents.QueueWait parked = StationEvents.beginWait();
+                    try {
+                        await(req.cv, req.deadline);
+                    } finally {
+                        StationEvents.endWait(parked, metrics.name(), null, id, type);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            StationEvents.aborted(metrics.name(), null, id, type, "interrupted", System.nanoTime() - arrived);
+            if (req.isAllocated) {
+                if (queue.supply) {
+                    releaseSupply(req);
+                } else {
+                    releaseRefuel(req);
+                }
+            } else if (!req.isAborted) {
+                withdraw(queue, req);
+            }
+            recycle(req);
+            throw e;
+        }
+        return req.isAllocated ? req.dock : null;
     }
-}
\ No newline at end of file
+}
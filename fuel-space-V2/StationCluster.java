@@ -0,0 +1,299 @@
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToLongFunction;
+
+/**
+ * N independent SpaceFuelStations behind one FuelDepot.
+ *
+ * Each shard has its own lock, queues, docks and tanks, so visits to
+ * different shards never contend. Every refuelVehicle/supplyStation call is
+ * routed to one shard (a supply ship takes its return fuel where it
+ * deposited). An optional background task evens out fuel between shards.
+ *
+ * Vehicles may visit any shard, so consumer/producer counts are kept here;
+ * when the last one of a kind leaves, every shard is told, which aborts the
+ * ships still waiting on it exactly like a single station does.
+ */
+public class StationCluster implements FuelDepot, AutoCloseable {
+
+    public enum Routing {
+        /** Shard with the fewest docked plus queued ships. */
+        LEAST_LOADED,
+        /** Less loaded of two random shards: O(1), close to least-loaded under load. */
+        TWO_CHOICES,
+        /** Refuels to the least loaded shard with enough fuel, deposits to the emptiest one with room. */
+        FUEL_AWARE;
+
+        static Routing parse(String name) {
+            switch (name.trim().toLowerCase()) {
+                case "least": return LEAST_LOADED;
+                case "two": return TWO_CHOICES;
+                case "fuel": return FUEL_AWARE;
+                default: throw new IllegalArgumentException("Unknown routing: " + name + " (expected least|two|fuel)");
+            }
+        }
+    }
+
+    private final SpaceFuelStation[] shards;
+    private final Routing routing;
+    private final AtomicInteger activeConsumers;
+    private final AtomicInteger activeProducers;
+    private final int rebalanceMs;
+    private Thread rebalancer; // set by start(), cleared by close()
+    private boolean closed;
+    // Resolved on first use: an empty Optional once -Dstation.dispatch turns out not to be set.
+    private final AtomicReference<Optional<SupplyDispatcher>> dispatcher = new AtomicReference<>();
+
+    /**
+     * v, n and q size each shard, as in SpaceFuelStation. rebalanceMs is the
+     * period of the fuel rebalancer, or 0 to disable it; the rebalancer only
+     * runs once start() is called.
+     */
+    public StationCluster(int shardCount, int v, int n, int q, int numCons, int numProd, Routing routing,
+            int rebalanceMs) {
+        this(shardCount, v, n, q, numCons, numProd, routing, rebalanceMs, SchedulingPolicy.FIRST_FIT);
+    }
+
+    /** As above, with every shard scheduling its queues by policy. */
+    public StationCluster(int shardCount, int v, int n, int q, int numCons, int numProd, Routing routing,
+            int rebalanceMs, SchedulingPolicy policy) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("A cluster needs at least one shard");
+        }
+        this.shards = new SpaceFuelStation[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new SpaceFuelStation(v, n, q, Math.min(numCons, 1), Math.min(numProd, 1), policy);
+        }
+        this.routing = routing;
+        this.activeConsumers = new AtomicInteger(numCons);
+        this.activeProducers = new AtomicInteger(numProd);
+        this.rebalanceMs = rebalanceMs;
+    }
+
+    /**
+     * Starts the rebalancer, if there is one. Kept out of the constructor so
+     * the thread never sees a half-built cluster. Returns this; a closed
+     * cluster cannot be started again.
+     */
+    public synchronized StationCluster start() {
+        if (closed) {
+            throw new IllegalStateException("Cluster is closed");
+        }
+        if (rebalancer == null && rebalanceMs > 0 && shards.length > 1) {
+            rebalancer = new Thread(() -> rebalanceLoop(rebalanceMs), "station-rebalancer");
+            rebalancer.setDaemon(true);
+            rebalancer.start();
+        }
+        return this;
+    }
+
+    public int size() {
+        return shards.length;
+    }
+
+    /** Shard i, e.g. for its metrics. */
+    public SpaceFuelStation shard(int i) {
+        return shards[i];
+    }
+
+    // --- FuelDepot ---
+
+    @Override
+    public boolean refuelVehicle(int id, String type, int reqN, int reqQ, int dockTimeMs) throws InterruptedException {
+        int shard = route(reqN, reqQ, false);
+        Logger.logTrace(id, type, "Routed to station {}.", shard);
+        return shards[shard].refuelVehicle(id, type, reqN, reqQ, dockTimeMs);
+    }
+
+    @Override
+    public boolean supplyStation(int id, int depN, int depQ, int retN, int retQ, int dockTimeMs)
+            throws InterruptedException {
+        int shard = route(depN, depQ, true);
+        Logger.logTrace(id, "Supply", "Routed to station {}.", shard);
+        return shards[shard].supplyStation(id, depN, depQ, retN, retQ, dockTimeMs);
+    }
+
+    @Override
+    public void unregisterConsumer() {
+        if (activeConsumers.decrementAndGet() == 0) {
+            for (SpaceFuelStation s : shards) s.unregisterConsumer();
+        }
+    }
+
+    @Override
+    public void unregisterProducer() {
+        if (activeProducers.decrementAndGet() == 0) {
+            for (SpaceFuelStation s : shards) s.unregisterProducer();
+        }
+    }
+
+    /** Plans supply runs against the cluster's combined tanks; routing then picks the shard. */
+    @Override
+    public SupplyDispatcher dispatcher() {
+        // Created here rather than in the constructor, which must not hand out this.
+        Optional<SupplyDispatcher> d = dispatcher.get();
+        if (d == null) {
+            dispatcher.compareAndSet(null, Optional.ofNullable(SupplyDispatcher.fromProperty(totalTanks())));
+            d = dispatcher.get();
+        }
+        return d.orElse(null);
+    }
+
+    /** Stops the rebalancer; idempotent. */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (rebalancer != null) {
+            rebalancer.interrupt();
+            rebalancer = null;
+        }
+    }
+
+    /** The shards' tank readings, summed. */
+    private SupplyDispatcher.Tanks totalTanks() {
+        SupplyDispatcher.Tanks[] parts = new SupplyDispatcher.Tanks[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            parts[i] = shards[i].tanks();
+        }
+        return new SupplyDispatcher.Tanks() {
+            @Override
+            public int capacityN() {
+                return (int) sum(parts, SupplyDispatcher.Tanks::capacityN);
+            }
+
+            @Override
+            public int capacityQ() {
+                return (int) sum(parts, SupplyDispatcher.Tanks::capacityQ);
+            }
+
+            @Override
+            public int levelN() {
+                return (int) sum(parts, SupplyDispatcher.Tanks::levelN);
+            }
+
+            @Override
+            public int levelQ() {
+                return (int) sum(parts, SupplyDispatcher.Tanks::levelQ);
+            }
+
+            @Override
+            public long drawnN() {
+                return sum(parts, SupplyDispatcher.Tanks::drawnN);
+            }
+
+            @Override
+            public long drawnQ() {
+                return sum(parts, SupplyDispatcher.Tanks::drawnQ);
+            }
+
+            @Override
+            public int queuedN() {
+                return (int) sum(parts, SupplyDispatcher.Tanks::queuedN);
+            }
+
+            @Override
+            public int queuedQ() {
+                return (int) sum(parts, SupplyDispatcher.Tanks::queuedQ);
+            }
+        };
+    }
+
+    private static long sum(SupplyDispatcher.Tanks[] parts, ToLongFunction<SupplyDispatcher.Tanks> reading) {
+        long sum = 0;
+        for (SupplyDispatcher.Tanks t : parts) sum += reading.applyAsLong(t);
+        return sum;
+    }
+
+    // --- ROUTING ---
+
+    private int route(int n, int q, boolean supply) {
+        if (shards.length == 1) return 0;
+        switch (routing) {
+            case TWO_CHOICES: {
+                ThreadLocalRandom rng = ThreadLocalRandom.current();
+                int a = rng.nextInt(shards.length);
+                int b = rng.nextInt(shards.length - 1);
+                if (b >= a) b++;
+                return shards[b].load() < shards[a].load() ? b : a;
+            }
+            case FUEL_AWARE: {
+                // Refuels go to the least loaded shard that has the fuel now;
+                // deposits go to the emptiest shard that has room for them.
+                int best = -1;
+                for (int i = 0; i < shards.length; i++) {
+                    SpaceFuelStation s = shards[i];
+                    if (supply) {
+                        if (s.spaceN() >= n && s.spaceQ() >= q && (best < 0 || fuel(s) < fuel(shards[best]))) best = i;
+                    } else {
+                        if (s.availableN() >= n && s.availableQ() >= q && (best < 0 || s.load() < shards[best].load())) best = i;
+                    }
+                }
+                return best >= 0 ? best : leastLoaded();
+            }
+            default:
+                return leastLoaded();
+        }
+    }
+
+    private int leastLoaded() {
+        // Start at a random shard so ties do not all land on shard 0.
+        int start = ThreadLocalRandom.current().nextInt(shards.length);
+        int best = start, bestLoad = shards[start].load();
+        for (int k = 1; k < shards.length && bestLoad > 0; k++) {
+            int i = (start + k) % shards.length;
+            int load = shards[i].load();
+            if (load < bestLoad) {
+                best = i;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    // --- REBALANCING ---
+
+    private void rebalanceLoop(int periodMs) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(periodMs);
+                rebalanceOnce();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Moves half the difference between the fullest and the emptiest shard.
+     * Space is reserved at the target before fuel leaves the source, so fuel
+     * in transit is never lost and never overfills a tank.
+     */
+    void rebalanceOnce() {
+        if (activeConsumers.get() == 0) return; // nobody left to use it
+        int rich = 0, poor = 0;
+        for (int i = 1; i < shards.length; i++) {
+            if (fuel(shards[i]) > fuel(shards[rich])) rich = i;
+            if (fuel(shards[i]) < fuel(shards[poor])) poor = i;
+        }
+        if (rich == poor) return;
+
+        SpaceFuelStation from = shards[rich], to = shards[poor];
+        int n = Math.min(Math.max(0, (from.availableN() - to.availableN()) / 2), to.spaceN());
+        int q = Math.min(Math.max(0, (from.availableQ() - to.availableQ()) / 2), to.spaceQ());
+        if (n == 0 && q == 0) return;
+
+        if (!to.reserveSpace(n, q)) return;
+        if (from.withdrawFuel(n, q)) {
+            to.depositReserved(n, q);
+            Logger.log(Logger.Level.INFO, "Cluster", "Moved {}N, {}Q from station {} to station {}.", n, q, rich, poor);
+        } else {
+            to.cancelReserved(n, q);
+        }
+    }
+
+    private static int fuel(SpaceFuelStation s) {
+        return Math.min(s.availableN(), s.availableQ());
+    }
+}
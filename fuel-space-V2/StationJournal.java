@@ -0,0 +1,468 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Write-ahead journal for a durable SpaceFuelStation.
+ *
+ * Every reservation, commit, release, queueing, abort and fuel transfer is
+ * appended as one fixed 32-byte record to memory-mapped segment files. An
+ * append is a getAndAdd on the end position plus a few stores into mapped
+ * memory, sealed by a checksum written last: no lock, no system call, so
+ * the station can append from inside its critical sections. Records are
+ * identified by their position, which only ever grows, also across
+ * restarts.
+ *
+ * A journal thread does everything slow:
+ * - group commit: every commitMs it forces what has been written so far to
+ *   disk in one go;
+ * - tailing: it folds the sealed records, in order, into a compact state
+ *   (tank levels, held reservations, queued requests);
+ * - snapshots: every snapshotMs it writes that state to snapshot.bin and
+ *   deletes the segments it no longer needs;
+ * - it maps and pre-loads the next segment before the writers get there.
+ *
+ * open() recovers whatever a previous run left behind: the last snapshot
+ * plus every sealed record after it. Records are deltas matched by id, so
+ * a record lost in a crash (never sealed) is simply skipped. Reservations
+ * still held at the crash come back as in doubt; the station re-holds them
+ * until they are settled. Queued requests are reported and dropped, since
+ * their vehicles are gone.
+ *
+ * Without a sync() the last commitMs of work can be lost on power failure;
+ * a crash of the JVM alone loses nothing that was sealed.
+ */
+public final class StationJournal implements AutoCloseable {
+
+    /** A reservation or queued request as the journal knows it; id is its record position. */
+    public record Entry(long id, boolean supply, int n, int q) {
+    }
+
+    /** What open() found: levels and reservations at the end of the previous run. */
+    public record Recovery(long position, int nLevel, int qLevel, List<Entry> inDoubt, List<Entry> queued) {
+    }
+
+    // --- RECORD FORMAT ---
+    // ref(8) n(4) q(4) dock(4) type(4) seal(8); ref points at an earlier record or is -1.
+    private static final int RECORD = 32;
+    private static final int PAGE = 4096;
+    private static final int RESERVE_REFUEL = 1, RESERVE_SUPPLY = 2, COMMIT_REFUEL = 3, COMMIT_SUPPLY = 4,
+            RELEASE_REFUEL = 5, RELEASE_SUPPLY = 6, QUEUE_REFUEL = 7, QUEUE_SUPPLY = 8, ABORT = 9, TRANSFER = 10;
+    private static final long MAGIC = 0x5354_4A52_4E4C_0001L;
+    private static final VarHandle SEAL = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final long SEGMENT_BYTES = (long) Integer.getInteger("station.journal.segmentMb", 64) << 20;
+    private static final String SNAPSHOT = "snapshot.bin";
+
+    private final Path dir;
+    private final Map<Long, MappedByteBuffer> segments = new ConcurrentHashMap<>();
+    private final AtomicLong end;
+    private final Recovery recovered;
+
+    // --- JOURNAL THREAD ---
+    private final int commitMs, snapshotMs;
+    private final Thread worker;
+    private volatile boolean closed;
+    private final State tail; // records folded so far, up to tail.position
+    private long forcedTo;    // every record below this is on disk; guarded by this
+
+    /** The compact form of the journal: what a snapshot holds. */
+    private static final class State {
+        long position;
+        long nLevel, qLevel;
+        final Map<Long, Entry> held = new LinkedHashMap<>();
+        final Map<Long, Entry> queued = new LinkedHashMap<>();
+
+        void fold(long id, int type, long ref, int n, int q) {
+            switch (type) {
+                case RESERVE_REFUEL, RESERVE_SUPPLY -> {
+                    held.put(id, new Entry(id, type == RESERVE_SUPPLY, n, q));
+                    queued.remove(ref);
+                }
+                case COMMIT_REFUEL -> {
+                    held.remove(ref);
+                    nLevel -= n;
+                    qLevel -= q;
+                }
+                case COMMIT_SUPPLY -> {
+                    held.remove(ref);
+                    nLevel += n;
+                    qLevel += q;
+                }
+                case RELEASE_REFUEL, RELEASE_SUPPLY -> held.remove(ref);
+                case QUEUE_REFUEL, QUEUE_SUPPLY -> queued.put(id, new Entry(id, type == QUEUE_SUPPLY, n, q));
+                case ABORT -> queued.remove(ref);
+                case TRANSFER -> {
+                    nLevel += n;
+                    qLevel += q;
+                }
+                default -> throw new IllegalStateException("Unknown journal record type " + type);
+            }
+        }
+    }
+
+    private StationJournal(Path dir, State state, long start, Recovery recovered, int commitMs, int snapshotMs) {
+        this.dir = dir;
+        this.tail = state;
+        this.end = new AtomicLong(start);
+        this.forcedTo = start;
+        this.recovered = recovered;
+        this.commitMs = commitMs;
+        this.snapshotMs = snapshotMs;
+        segment(start / SEGMENT_BYTES);
+        this.worker = Thread.ofPlatform().name("station-journal").daemon().start(this::work);
+    }
+
+    /**
+     * Opens the journal in dir, recovering a previous run if there is one.
+     * The journal continues at the next segment boundary after everything
+     * recovered, and the recovered state is snapshotted straight away.
+     * commitMs must be positive: it is how long the group-commit worker parks.
+     */
+    public static StationJournal open(Path dir, int commitMs, int snapshotMs) throws IOException {
+        if (commitMs <= 0) {
+            throw new IllegalArgumentException("Group commit interval must be positive: " + commitMs + " ms");
+        }
+        Files.createDirectories(dir);
+        State state = readSnapshot(dir.resolve(SNAPSHOT));
+        List<Path> old = listSegments(dir);
+        boolean fresh = state == null && old.isEmpty();
+        if (state == null) {
+            state = new State();
+            state.position = old.isEmpty() ? 0 : segmentStart(old.get(0));
+        }
+
+        long last = state.position;
+        for (Path file : old) {
+            long start = segmentStart(file);
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer seg = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                for (long pos = Math.max(state.position, start); pos + RECORD <= start + seg.capacity(); pos += RECORD) {
+                    readRecord(seg, (int) (pos - start), pos, state); // unsealed slots are skipped
+                }
+                last = Math.max(last, start + seg.capacity());
+            }
+        }
+
+        long start = (last + SEGMENT_BYTES - 1) / SEGMENT_BYTES * SEGMENT_BYTES;
+        Recovery recovery = fresh ? null : new Recovery(start, (int) state.nLevel, (int) state.qLevel,
+                List.copyOf(state.held.values()), List.copyOf(state.queued.values()));
+        state.queued.clear(); // their vehicles are gone
+        state.position = start;
+        writeSnapshot(dir, state);
+        for (Path file : old) {
+            Files.delete(file);
+        }
+        return new StationJournal(dir, state, start, recovery, commitMs, snapshotMs);
+    }
+
+    /** The state a previous run left behind, or null if the journal was new. */
+    public Recovery recovered() {
+        return recovered;
+    }
+
+    // --- APPENDS (any thread, lock-free) ---
+
+    long reserve(boolean supply, int n, int q, int dock, long queuedId) {
+        return append(supply ? RESERVE_SUPPLY : RESERVE_REFUEL, queuedId, n, q, dock);
+    }
+
+    void commit(long reserveId, boolean supply, int n, int q) {
+        append(supply ? COMMIT_SUPPLY : COMMIT_REFUEL, reserveId, n, q, -1);
+    }
+
+    void release(long reserveId, boolean supply, int n, int q) {
+        append(supply ? RELEASE_SUPPLY : RELEASE_REFUEL, reserveId, n, q, -1);
+    }
+
+    long queue(boolean supply, int n, int q) {
+        return append(supply ? QUEUE_SUPPLY : QUEUE_REFUEL, -1, n, q, -1);
+    }
+
+    void abort(long queuedId) {
+        append(ABORT, queuedId, 0, 0, -1);
+    }
+
+    /** Fuel in (positive) or out (negative) without a docked vehicle, e.g. the initial fill. */
+    void transfer(int n, int q) {
+        append(TRANSFER, -1, n, q, -1);
+    }
+
+    private long append(int type, long ref, int n, int q, int dock) {
+        long pos = end.getAndAdd(RECORD);
+        MappedByteBuffer seg = segment(pos / SEGMENT_BYTES);
+        int o = (int) (pos % SEGMENT_BYTES);
+        seg.putLong(o, ref);
+        seg.putInt(o + 8, n);
+        seg.putInt(o + 12, q);
+        seg.putInt(o + 16, dock);
+        seg.putInt(o + 20, type);
+        SEAL.setRelease(seg, o + 24, seal(pos, type, ref, n, q, dock));
+        return pos;
+    }
+
+    private static long seal(long pos, int type, long ref, int n, int q, int dock) {
+        long h = pos;
+        h = h * 31 + type;
+        h = h * 31 + ref;
+        h = h * 31 + n;
+        h = h * 31 + q;
+        h = h * 31 + dock;
+        return h ^ MAGIC;
+    }
+
+    /** Folds the record at offset o if it is sealed; false if it is not (yet) written. */
+    private static boolean readRecord(MappedByteBuffer seg, int o, long pos, State into) {
+        long seal = (long) SEAL.getAcquire(seg, o + 24);
+        long ref = seg.getLong(o);
+        int n = seg.getInt(o + 8);
+        int q = seg.getInt(o + 12);
+        int dock = seg.getInt(o + 16);
+        int type = seg.getInt(o + 20);
+        if (seal != seal(pos, type, ref, n, q, dock)) {
+            return false;
+        }
+        into.fold(pos, type, ref, n, q);
+        return true;
+    }
+
+    private MappedByteBuffer segment(long index) {
+        MappedByteBuffer seg = segments.get(index);
+        return seg != null ? seg : segments.computeIfAbsent(index, this::mapSegment);
+    }
+
+    private MappedByteBuffer mapSegment(long index) {
+        Path file = dir.resolve(String.format("%020d.seg", index * SEGMENT_BYTES));
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return ch.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map journal segment " + file, e);
+        }
+    }
+
+    // --- GROUP COMMIT AND SNAPSHOTS (journal thread) ---
+
+    /** Blocks until everything appended before the call is on disk. */
+    public void sync() throws InterruptedException {
+        long target = end.get();
+        synchronized (this) {
+            while (forcedTo < target) {
+                if (closed) {
+                    return;
+                }
+                wait();
+            }
+        }
+    }
+
+    private void work() {
+        long lastSnapshot = System.nanoTime();
+        while (!closed) {
+            // Parked, not interrupted, by close(): an interrupt would close the snapshot channel.
+            LockSupport.parkNanos(this, commitMs * 1_000_000L);
+            if (closed) {
+                break;
+            }
+            groupCommit();
+            foldTail();
+            prepareNext();
+            if (System.nanoTime() - lastSnapshot >= snapshotMs * 1_000_000L) {
+                snapshot();
+                lastSnapshot = System.nanoTime();
+            }
+        }
+        groupCommit();
+        foldTail();
+        snapshot();
+    }
+
+    private void groupCommit() {
+        long to = end.get();
+        long from;
+        synchronized (this) {
+            from = forcedTo;
+        }
+        for (long pos = from; pos < to; ) {
+            long index = pos / SEGMENT_BYTES;
+            long segEnd = Math.min(to, (index + 1) * SEGMENT_BYTES);
+            MappedByteBuffer seg = segments.get(index);
+            if (seg != null) {
+                int o = (int) (pos % SEGMENT_BYTES);
+                seg.force(o, (int) (segEnd - pos));
+            }
+            pos = segEnd;
+        }
+        synchronized (this) {
+            forcedTo = to;
+            notifyAll();
+        }
+    }
+
+    /** Folds sealed records in order; stops at one still being written. */
+    private void foldTail() {
+        long to = end.get();
+        while (tail.position < to) {
+            MappedByteBuffer seg = segments.get(tail.position / SEGMENT_BYTES);
+            if (seg == null || !readRecord(seg, (int) (tail.position % SEGMENT_BYTES), tail.position, tail)) {
+                return;
+            }
+            tail.position += RECORD;
+        }
+    }
+
+    /**
+     * Maps the next segment once writers are half way through the current one
+     * and write-faults every page, so appends never take a page fault. A
+     * CAS of 0 to 0 dirties the page without touching a record a writer may
+     * already have put there.
+     */
+    private void prepareNext() {
+        long pos = end.get();
+        if (pos % SEGMENT_BYTES >= SEGMENT_BYTES / 2) {
+            long next = pos / SEGMENT_BYTES + 1;
+            if (!segments.containsKey(next)) {
+                MappedByteBuffer seg = segment(next);
+                for (int o = 0; o < SEGMENT_BYTES; o += PAGE) {
+                    SEAL.compareAndSet(seg, o, 0L, 0L);
+                }
+            }
+        }
+    }
+
+    /** Snapshots the folded state and drops the segments entirely behind it. */
+    private void snapshot() {
+        try {
+            writeSnapshot(dir, tail);
+        } catch (IOException e) {
+            Logger.log(Logger.Level.WARN, "Journal", "Snapshot failed: " + e.getMessage());
+            return;
+        }
+        long done = tail.position / SEGMENT_BYTES;
+        for (Long index : List.copyOf(segments.keySet())) {
+            if (index < done) {
+                segments.remove(index);
+                try {
+                    Files.deleteIfExists(dir.resolve(String.format("%020d.seg", index * SEGMENT_BYTES)));
+                } catch (IOException e) {
+                    Logger.log(Logger.Level.WARN, "Journal", "Cannot delete old segment: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Final group commit and snapshot; appends after this are not journaled
+     * durably. Waits for them even if interrupted, then restores the interrupt.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(worker);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                worker.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    // --- FILES ---
+
+    private static List<Path> listSegments(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".seg")).sorted().toList();
+        }
+    }
+
+    private static long segmentStart(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - ".seg".length()));
+    }
+
+    private static void writeSnapshot(Path dir, State state) throws IOException {
+        Path tmp = dir.resolve(SNAPSHOT + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream raw = Channels.newOutputStream(ch);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(raw));
+            out.writeLong(MAGIC);
+            out.writeLong(state.position);
+            out.writeLong(state.nLevel);
+            out.writeLong(state.qLevel);
+            writeEntries(out, state.held);
+            writeEntries(out, state.queued);
+            out.flush();
+            ch.force(true);
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeEntries(DataOutputStream out, Map<Long, Entry> entries) throws IOException {
+        out.writeInt(entries.size());
+        for (Entry e : entries.values()) {
+            out.writeLong(e.id());
+            out.writeBoolean(e.supply());
+            out.writeInt(e.n());
+            out.writeInt(e.q());
+        }
+    }
+
+    private static State readSnapshot(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (InputStream raw = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw))) {
+            if (in.readLong() != MAGIC) {
+                throw new IOException("Not a station journal snapshot: " + file);
+            }
+            State state = new State();
+            state.position = in.readLong();
+            state.nLevel = in.readLong();
+            state.qLevel = in.readLong();
+            readEntries(in, state.held);
+            readEntries(in, state.queued);
+            return state;
+        }
+    }
+
+    private static void readEntries(DataInputStream in, Map<Long, Entry> into) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            Entry e = new Entry(in.readLong(), in.readBoolean(), in.readInt(), in.readInt());
+            into.put(e.id(), e);
+        }
+    }
+}
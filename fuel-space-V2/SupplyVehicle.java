@@ -1,4 +1,5 @@
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
 public class SupplyVehicle implements Runnable {
     private static final int MIN_TRAVEL_TIME = 800;
@@ -12,13 +13,15 @@ public class SupplyVehicle implements Runnable {
 
     private final int id;
     private final int trips;
-    private final SpaceFuelStation station;
-    private final Random rng = new Random();
+    private final FuelDepot station;
+    private final Random rng;
+    private int completedTrips;
 
-    public SupplyVehicle(int id, int trips, SpaceFuelStation station) {
+    public SupplyVehicle(int id, int trips, FuelDepot station) {
         this.id = id;
         this.trips = trips;
         this.station = station;
+        this.rng = WorkloadTrace.vehicleRandom(WorkloadTrace.SUPPLY, id);
     }
 
     @Override
@@ -28,10 +31,22 @@ public class SupplyVehicle implements Runnable {
                 int travelTime = MIN_TRAVEL_TIME + rng.nextInt(MAX_TRAVEL_TIME);
                 int dockTime = MIN_DOCK_TIME + rng.nextInt(MAX_DOCK_TIME);
 
-                Thread.sleep(travelTime);
-                boolean success = station.supplyStation(id, DEPOSIT_NITROGEN, DEPOSIT_QUANTUM,
-                                                        RETURN_NITROGEN, RETURN_QUANTUM, dockTime);
+                // With a dispatcher the ship waits for its slot and brings what the tanks will need.
+                SupplyDispatcher dispatcher = station.dispatcher();
+                SupplyDispatcher.Dispatch run = dispatcher == null ? null : awaitDispatch(dispatcher, travelTime);
+                int depN = run == null ? DEPOSIT_NITROGEN : run.nitrogen();
+                int depQ = run == null ? DEPOSIT_QUANTUM : run.quantum();
+                boolean success;
+                try {
+                    Thread.sleep(travelTime);
+                    WorkloadTrace.record(WorkloadTrace.SUPPLY, id, depN, depQ,
+                            RETURN_NITROGEN, RETURN_QUANTUM, dockTime, dockTime);
+                    success = station.supplyStation(id, depN, depQ, RETURN_NITROGEN, RETURN_QUANTUM, dockTime);
+                } finally {
+                    if (run != null) dispatcher.landed(run);
+                }
                 if (!success) break;
+                completedTrips++;
             }
             Logger.logTrace(id, "Supply", "Completed operations. Shutting down.");
         } catch (InterruptedException e) {
@@ -40,4 +55,70 @@ public class SupplyVehicle implements Runnable {
             station.unregisterProducer();
         }
     }
+
+    private SupplyDispatcher.Dispatch awaitDispatch(SupplyDispatcher dispatcher, int travelTime)
+            throws InterruptedException {
+        long held = 0;
+        SupplyDispatcher.Dispatch run;
+        while ((run = dispatcher.plan(travelTime, DEPOSIT_NITROGEN, DEPOSIT_QUANTUM, held)).waitMs() > 0) {
+            Thread.sleep(run.waitMs());
+            held += run.waitMs();
+        }
+        return run;
+    }
+
+    /**
+     * The same trips without a thread of its own: travel and docking run on
+     * the station's scheduler. Completes once the vehicle is grounded.
+     */
+    public CompletableFuture<Void> runAsync(SpaceFuelStation station) {
+        return tripAsync(station, 0).whenComplete((v, ex) -> {
+            Logger.logTrace(id, "Supply", "Completed operations. Shutting down.");
+            station.unregisterProducer();
+        });
+    }
+
+    private CompletableFuture<Void> tripAsync(SpaceFuelStation station, int i) {
+        if (i == trips) {
+            return CompletableFuture.completedFuture(null);
+        }
+        int travelTime = MIN_TRAVEL_TIME + rng.nextInt(MAX_TRAVEL_TIME);
+        int dockTime = MIN_DOCK_TIME + rng.nextInt(MAX_DOCK_TIME);
+        SupplyDispatcher dispatcher = station.dispatcher();
+        CompletableFuture<SupplyDispatcher.Dispatch> planned = dispatcher == null
+                ? CompletableFuture.completedFuture(null)
+                : dispatchAsync(dispatcher, travelTime, 0);
+        return planned
+                .thenCompose(run -> SpaceFuelStation.delay(travelTime).thenCompose(x -> {
+                    int depN = run == null ? DEPOSIT_NITROGEN : run.nitrogen();
+                    int depQ = run == null ? DEPOSIT_QUANTUM : run.quantum();
+                    WorkloadTrace.record(WorkloadTrace.SUPPLY, id, depN, depQ,
+                            RETURN_NITROGEN, RETURN_QUANTUM, dockTime, dockTime);
+                    return station.supplyAsync(id, depN, depQ, RETURN_NITROGEN, RETURN_QUANTUM, dockTime).departed
+                            .whenComplete((ok, ex) -> {
+                                if (run != null) dispatcher.landed(run);
+                            });
+                }))
+                .thenCompose(success -> {
+                    if (!success) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    completedTrips++;
+                    return tripAsync(station, i + 1);
+                });
+    }
+
+    private CompletableFuture<SupplyDispatcher.Dispatch> dispatchAsync(SupplyDispatcher dispatcher, int travelTime,
+            long held) {
+        SupplyDispatcher.Dispatch run = dispatcher.plan(travelTime, DEPOSIT_NITROGEN, DEPOSIT_QUANTUM, held);
+        if (run.waitMs() == 0) {
+            return CompletableFuture.completedFuture(run);
+        }
+        return SpaceFuelStation.delay(run.waitMs())
+                .thenCompose(x -> dispatchAsync(dispatcher, travelTime, held + run.waitMs()));
+    }
+
+    public int getCompletedTrips() {
+        return completedTrips;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,265 @@
+import java.util.Comparator;
+import java.util.TreeSet;
+
+/**
+ * One of SpaceFuelStation's waiting lines, in arrival order.
+ *
+ * A ring of parallel arrays instead of a list of nodes: the demand (the
+ * least a waiter will take), queue time and deadline of every waiter sit in
+ * primitive arrays, so a scheduling pass that only checks what fits walks a
+ * few contiguous int arrays and touches a Request only when it admits or
+ * aborts one. Positions are increasing longs (slot = position & mask) that
+ * stay valid until the waiter leaves or the next add or first().
+ *
+ * Removal leaves a tombstone (a null handle) and is O(1) through the position
+ * kept in the Request; tombstones at the head are skipped at once, the rest
+ * are squeezed out in place when the ring wraps onto them or outnumber the
+ * waiters. The arrays only grow, and only when every slot holds a live
+ * waiter, so a station with a steady queue allocates nothing per request.
+ *
+ * A queue built for an ordering policy (SchedulingPolicy.orderKey) also keeps
+ * its waiters in a tree by order key, arrival breaking ties, so a policy
+ * that wants the smallest (or the largest) request that fits starts its walk
+ * there instead of comparing every waiter. The tree holds the Requests, not
+ * positions, so compaction does not disturb it.
+ * Lock held for everything.
+ */
+final class WaitQueue {
+    final boolean supply;
+
+    private int[] needN, needQ;
+    private long[] since, deadline;
+    private SpaceFuelStation.Request[] handle; // null: tombstone
+    private int mask;
+    private long head, tail; // live entries lie in [head, tail); head is never a tombstone
+    private int live;
+    private int timed; // live waiters with a deadline
+    private long demandN, demandQ; // everything the live waiters asked for
+
+    private static final Comparator<SpaceFuelStation.Request> BY_KEY =
+            Comparator.<SpaceFuelStation.Request>comparingDouble(r -> r.orderKey).thenComparingLong(r -> r.queueSeq);
+    private final TreeSet<SpaceFuelStation.Request> ordered; // null unless built ordered
+    private final SpaceFuelStation.Request probe; // search key for ceilingOrdered
+    private long seq; // arrival count, the tie-break in ordered
+
+    /** ordered: also index the waiters by Request.orderKey, set by the caller before add. */
+    WaitQueue(boolean supply, int capacity, boolean ordered) {
+        this.supply = supply;
+        this.ordered = ordered ? new TreeSet<>(BY_KEY) : null;
+        this.probe = ordered ? new SpaceFuelStation.Request(0, 0, null) : null;
+        int cap = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        needN = new int[cap];
+        needQ = new int[cap];
+        since = new long[cap];
+        deadline = new long[cap];
+        handle = new SpaceFuelStation.Request[cap];
+        mask = cap - 1;
+    }
+
+    int size() {
+        return live;
+    }
+
+    boolean isEmpty() {
+        return live == 0;
+    }
+
+    /** What the live waiters asked for in all, partial or not. */
+    long demandN() {
+        return demandN;
+    }
+
+    long demandQ() {
+        return demandQ;
+    }
+
+    /** Live waiters that will give up at a deadline. */
+    int timed() {
+        return timed;
+    }
+
+    /** Appends a waiter; its position is kept in req.queuePos until it leaves. */
+    void add(SpaceFuelStation.Request req, long now) {
+        if (tail - head == handle.length) {
+            if (live == handle.length) {
+                grow();
+            } else {
+                compact();
+            }
+        }
+        int slot = (int) tail & mask;
+        needN[slot] = req.minN;
+        needQ[slot] = req.minQ;
+        since[slot] = now;
+        deadline[slot] = req.deadline;
+        if (req.deadline != SpaceFuelStation.NO_DEADLINE) timed++;
+        handle[slot] = req;
+        req.queuePos = tail++;
+        req.queueSeq = seq++;
+        if (ordered != null) ordered.add(req);
+        live++;
+        demandN += req.reqN;
+        demandQ += req.reqQ;
+    }
+
+    /** O(1); false if req is not waiting here. */
+    boolean remove(SpaceFuelStation.Request req) {
+        long pos = req.queuePos;
+        if (pos < head || pos >= tail || handle[(int) pos & mask] != req) {
+            return false;
+        }
+        removeAt(pos);
+        return true;
+    }
+
+    /** Takes the waiter at a live position off the queue. */
+    void removeAt(long pos) {
+        int slot = (int) pos & mask;
+        SpaceFuelStation.Request req = handle[slot];
+        req.queuePos = -1;
+        if (ordered != null) ordered.remove(req);
+        demandN -= req.reqN;
+        demandQ -= req.reqQ;
+        handle[slot] = null;
+        if (deadline[slot] != SpaceFuelStation.NO_DEADLINE) timed--;
+        live--;
+        while (head < tail && handle[(int) head & mask] == null) {
+            head++;
+        }
+    }
+
+    /** Drops every waiter; each Request's queuePos is reset. */
+    void clear() {
+        for (long p = head; p < tail; p++) {
+            int slot = (int) p & mask;
+            if (handle[slot] != null) {
+                handle[slot].queuePos = -1;
+                handle[slot] = null;
+            }
+        }
+        head = tail;
+        if (ordered != null) ordered.clear();
+        live = 0;
+        timed = 0;
+        demandN = demandQ = 0;
+    }
+
+    // --- CURSOR ---
+    // for (long p = q.first(); p >= 0; p = q.next(p)); removing the waiter at
+    // p (removeAt) does not disturb the walk. first() may squeeze out
+    // tombstones, so positions from an earlier walk are not reused after it.
+
+    /** Position of the oldest waiter, or -1. */
+    long first() {
+        if (tail - head > 2L * live + 16) {
+            compact(); // keep walks proportional to the waiters, not to past removals
+        }
+        return head < tail ? head : -1;
+    }
+
+    /** Next live position after pos, or -1. */
+    long next(long pos) {
+        for (long p = Math.max(pos + 1, head); p < tail; p++) {
+            if (handle[(int) p & mask] != null) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    // --- ORDERED CURSOR (ordered queues only) ---
+    // for (long p = q.firstOrdered(); p >= 0; p = next) { long next = q.nextOrdered(p); ... }
+    // O(log n) a step; take the next position before admitting the one at p.
+
+    /** Position of the waiter with the least order key (the oldest among equals), or -1. */
+    long firstOrdered() {
+        return ordered.isEmpty() ? -1 : ordered.first().queuePos;
+    }
+
+    /** Position of the first waiter in key order whose key is at least key, or -1. */
+    long ceilingOrdered(double key) {
+        probe.orderKey = key;
+        probe.queueSeq = Long.MIN_VALUE;
+        SpaceFuelStation.Request req = ordered.ceiling(probe);
+        return req == null ? -1 : req.queuePos;
+    }
+
+    /** Position of the waiter after the live one at pos in key order, or -1. */
+    long nextOrdered(long pos) {
+        SpaceFuelStation.Request req = ordered.higher(handle[(int) pos & mask]);
+        return req == null ? -1 : req.queuePos;
+    }
+
+    /** The least the waiter will take: its whole demand unless it accepts a partial fill. */
+    int needN(long pos) {
+        return needN[(int) pos & mask];
+    }
+
+    int needQ(long pos) {
+        return needQ[(int) pos & mask];
+    }
+
+    long since(long pos) {
+        return since[(int) pos & mask];
+    }
+
+    /** System.nanoTime() by which the waiter gives up, or SpaceFuelStation.NO_DEADLINE. */
+    long deadline(long pos) {
+        return deadline[(int) pos & mask];
+    }
+
+    SpaceFuelStation.Request request(long pos) {
+        return handle[(int) pos & mask];
+    }
+
+    // --- MAINTENANCE ---
+
+    /** Slides live waiters down over the tombstones, keeping their order. */
+    private void compact() {
+        long w = head;
+        for (long p = head; p < tail; p++) {
+            int from = (int) p & mask;
+            SpaceFuelStation.Request req = handle[from];
+            if (req == null) {
+                continue;
+            }
+            if (p != w) {
+                int to = (int) w & mask;
+                needN[to] = needN[from];
+                needQ[to] = needQ[from];
+                since[to] = since[from];
+                deadline[to] = deadline[from];
+                handle[to] = req;
+                handle[from] = null;
+                req.queuePos = w;
+            }
+            w++;
+        }
+        tail = w;
+    }
+
+    /** Doubles the ring; every slot is live, so positions are only re-based. */
+    private void grow() {
+        int cap = handle.length, newCap = cap << 1;
+        int[] n = new int[newCap], q = new int[newCap];
+        long[] s = new long[newCap], d = new long[newCap];
+        SpaceFuelStation.Request[] h = new SpaceFuelStation.Request[newCap];
+        for (int i = 0; i < cap; i++) {
+            int from = (int) (head + i) & mask;
+            n[i] = needN[from];
+            q[i] = needQ[from];
+            s[i] = since[from];
+            d[i] = deadline[from];
+            h[i] = handle[from];
+            h[i].queuePos = i;
+        }
+        needN = n;
+        needQ = q;
+        since = s;
+        deadline = d;
+        handle = h;
+        mask = newCap - 1;
+        head = 0;
+        tail = cap;
+    }
+}
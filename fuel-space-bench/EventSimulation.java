@@ -0,0 +1,328 @@
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Discrete-event version of the two simulations.
+ *
+ * Vehicles are state machines driven by a single-threaded agenda ordered by
+ * virtual time, so travel and dock times cost nothing. Admission still goes
+ * through the real stations: SpaceFuelStation's submit/complete API (same
+ * canRefuel/canSupply checks and wakeUpNext order as refuelVehicle) and
+ * FuelStation's HANDOFF-mode submit (same scannable FIFO queue). A station
+ * wakeup is turned into an event at the current virtual time.
+ *
+ * Usage: java EventSimulation [key=value]...
+ * Keys: station (space|fuel), trips, docks, tank, consumers, producers, seed
+ */
+public class EventSimulation {
+
+    // --- SIMULATION PARAMETERS ---
+    static String station = "space";
+    static int trips = 3;
+    static int docks = 3;
+    static int tank = -1; // station default: 2000 for space, 1000 for fuel
+    static int consumers = 5;
+    static int producers = 2;
+    static long seed = 42;
+
+    // --- ENGINE ---
+    private static final class Event implements Comparable<Event> {
+        final long time;
+        final long seq;
+        final Runnable action;
+
+        Event(long time, long seq, Runnable action) {
+            this.time = time;
+            this.seq = seq;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event o) {
+            if (time != o.time) return Long.compare(time, o.time);
+            return Long.compare(seq, o.seq);
+        }
+    }
+
+    private final PriorityQueue<Event> agenda = new PriorityQueue<>();
+    private final Random rng;
+    private long now = 0; // virtual ms
+    private long seq = 0;
+    private long events = 0;
+
+    // --- STATISTICS ---
+    private long visits = 0;
+    private long aborted = 0;
+    private int retired = 0;
+    private int docked = 0;
+    private double dockBusyMs = 0;
+    private long lastDockChange = 0;
+    private long[] waits = new long[1024];
+    private int waitCount = 0;
+
+    EventSimulation(long seed) {
+        this.rng = new Random(seed);
+    }
+
+    private void after(long delay, Runnable action) {
+        agenda.add(new Event(now + delay, seq++, action));
+    }
+
+    private void run() {
+        Event e;
+        while ((e = agenda.poll()) != null) {
+            now = e.time;
+            e.action.run();
+            events++;
+        }
+    }
+
+    private void dockChange(int delta) {
+        dockBusyMs += (double) docked * (now - lastDockChange);
+        lastDockChange = now;
+        docked += delta;
+    }
+
+    private void recordWait(long waitedMs) {
+        if (waitCount == waits.length) waits = Arrays.copyOf(waits, waitCount * 2);
+        waits[waitCount++] = waitedMs;
+    }
+
+    // --- SpaceFuelStation MODEL (same ranges as fuel-space-V2 vehicles) ---
+
+    private void ordinaryTrip(SpaceFuelStation st, int id, int tripsLeft) {
+        if (tripsLeft == 0) {
+            retired++;
+            st.unregisterConsumer();
+            return;
+        }
+        int travel = 400 + rng.nextInt(600);
+        int dock = 50 + rng.nextInt(150);
+        int fuel = 50 + rng.nextInt(150);
+        after(travel, () -> spaceRefuel(st, fuel, fuel, dock, now, () -> ordinaryTrip(st, id, tripsLeft - 1),
+                () -> ordinaryTrip(st, id, 0)));
+    }
+
+    private void supplyTrip(SpaceFuelStation st, int id, int tripsLeft) {
+        if (tripsLeft == 0) {
+            retired++;
+            st.unregisterProducer();
+            return;
+        }
+        int travel = 800 + rng.nextInt(700);
+        int dock = 100 + rng.nextInt(200);
+        after(travel, () -> {
+            long arrived = now;
+            SpaceFuelStation.Request[] req = new SpaceFuelStation.Request[1];
+            Runnable onDock = () -> {
+                if (req[0].isAborted) {
+                    aborted++;
+                    supplyTrip(st, id, 0);
+                    return;
+                }
+                recordWait(now - arrived);
+                dockChange(+1);
+                after(dock, () -> {
+                    st.completeSupply(req[0]);
+                    dockChange(-1);
+                    spaceRefuel(st, 50, 50, dock, now, () -> supplyTrip(st, id, tripsLeft - 1),
+                            () -> supplyTrip(st, id, 0));
+                });
+            };
+            req[0] = st.submitSupply(600, 600, () -> after(0, onDock));
+            if (req[0].isAllocated || req[0].isAborted) onDock.run();
+        });
+    }
+
+    /** One refuelVehicle call: wait for a dock, pump, commit. */
+    private void spaceRefuel(SpaceFuelStation st, int reqN, int reqQ, int dock, long arrived, Runnable next,
+            Runnable quit) {
+        SpaceFuelStation.Request[] req = new SpaceFuelStation.Request[1];
+        Runnable onDock = () -> {
+            if (req[0].isAborted) {
+                aborted++;
+                quit.run();
+                return;
+            }
+            recordWait(now - arrived);
+            dockChange(+1);
+            after(dock, () -> {
+                st.completeRefuel(req[0]);
+                dockChange(-1);
+                visits++;
+                next.run();
+            });
+        };
+        req[0] = st.submitRefuel(reqN, reqQ, () -> after(0, onDock));
+        if (req[0].isAllocated || req[0].isAborted) onDock.run();
+    }
+
+    // --- FuelStation MODEL (same sizing and timings as FuelStationSimulation) ---
+
+    private void regularTrip(FuelStation st, String id, int n, int q, int tripsLeft) {
+        if (tripsLeft == 0) {
+            retired++;
+            return;
+        }
+        int travel = rng.nextInt(1000) + 100;
+        int service = rng.nextInt(300) + 50;
+        after(travel, () -> {
+            long arrived = now;
+            st.submit(new FuelRequest(id, n, q, FuelRequest.RequestType.FUEL_REQUEST), () -> after(0, () -> {
+                recordWait(now - arrived);
+                dockChange(+1);
+                after(service, () -> {
+                    st.releaseDock(id);
+                    dockChange(-1);
+                    visits++;
+                    regularTrip(st, id, n, q, tripsLeft - 1);
+                });
+            }));
+        });
+    }
+
+    private void depositTrip(FuelStation st, String id, int n, int q, int retN, int retQ, int tripsLeft) {
+        if (tripsLeft == 0) {
+            retired++;
+            return;
+        }
+        int travel = rng.nextInt(1000) + 200;
+        int depositService = rng.nextInt(300) + 100;
+        int refuelService = rng.nextInt(300) + 50;
+        after(travel, () -> {
+            long arrived = now;
+            FuelRequest deposit = new FuelRequest(id, n, q, FuelRequest.RequestType.FUEL_DEPOSIT, retN, retQ);
+            st.submit(deposit, () -> after(0, () -> {
+                recordWait(now - arrived);
+                dockChange(+1);
+                // Pump, turn around at the dock, then take return fuel without undocking.
+                after(depositService + 50, () -> {
+                    long askedReturn = now;
+                    st.submit(new FuelRequest(id, retN, retQ, FuelRequest.RequestType.FUEL_REQUEST),
+                            () -> after(0, () -> {
+                                recordWait(now - askedReturn);
+                                after(refuelService, () -> {
+                                    st.releaseDock(id);
+                                    dockChange(-1);
+                                    visits++;
+                                    depositTrip(st, id, n, q, retN, retQ, tripsLeft - 1);
+                                });
+                            }));
+                });
+            }));
+        });
+    }
+
+    private void startFuel(int tankSize) {
+        // Mirrors the sizing rules in FuelStationSimulation.
+        int regular = Math.max(1, tankSize / 20);
+        int supplyReturn = Math.max(1, regular / 2);
+        int supply = Math.max(1, tankSize / 3);
+        int totalDepositEvents = producers * trips;
+        int initial = tankSize;
+        if (totalDepositEvents > 0) {
+            supply = Math.min(supply, Math.max(1, consumers * trips * regular / totalDepositEvents));
+            initial = Math.max(0, tankSize - supply);
+        }
+
+        FuelStation st = new FuelStation(docks, tankSize, tankSize, initial, initial, FuelStation.WakeupMode.HANDOFF);
+        for (int i = 1; i <= consumers; i++) {
+            regularTrip(st, "Vehicle-" + i, regular, regular, trips);
+        }
+        for (int i = 1; i <= producers; i++) {
+            depositTrip(st, "SupplyVehicle-" + i, supply, supply, supplyReturn, supplyReturn, trips);
+        }
+    }
+
+    private void startSpace(int tankSize) {
+        SpaceFuelStation st = new SpaceFuelStation(docks, tankSize, tankSize, consumers, producers);
+        for (int i = 1; i <= consumers; i++) {
+            ordinaryTrip(st, i, trips);
+        }
+        for (int i = 1; i <= producers; i++) {
+            supplyTrip(st, i, trips);
+        }
+    }
+
+    public static void main(String[] args) {
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                usage("Malformed argument: " + arg);
+                return;
+            }
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            try {
+                switch (key) {
+                    case "station" -> station = value;
+                    case "trips" -> trips = Integer.parseInt(value);
+                    case "docks" -> docks = Integer.parseInt(value);
+                    case "tank" -> tank = Integer.parseInt(value);
+                    case "consumers" -> consumers = Integer.parseInt(value);
+                    case "producers" -> producers = Integer.parseInt(value);
+                    case "seed" -> seed = Long.parseLong(value);
+                    default -> {
+                        usage("Unknown parameter: " + key);
+                        return;
+                    }
+                }
+            } catch (NumberFormatException e) {
+                usage("Invalid numeric value for " + key + ": " + value);
+                return;
+            }
+        }
+
+        // Station log lines carry wall-clock stamps, which mean nothing here.
+        Logger.setLevel(Logger.Level.OFF);
+
+        EventSimulation sim = new EventSimulation(seed);
+        long wallStart = System.nanoTime();
+        switch (station) {
+            case "space" -> sim.startSpace(tank > 0 ? tank : 2000);
+            case "fuel" -> sim.startFuel(tank > 0 ? tank : 1000);
+            default -> {
+                usage("Unknown station: " + station);
+                return;
+            }
+        }
+        sim.run();
+        double wallMs = (System.nanoTime() - wallStart) / 1_000_000.0;
+        sim.dockChange(0);
+        sim.report(wallMs);
+    }
+
+    private void report(double wallMs) {
+        long[] sorted = Arrays.copyOf(waits, waitCount);
+        Arrays.sort(sorted);
+        long simulatedMs = Math.max(1, now);
+        int vehicles = consumers + producers;
+
+        System.out.printf("Station: %s, %d docks, tank %d, %d consumers, %d producers, %d trips, seed %d%n",
+                station, docks, tank > 0 ? tank : (station.equals("space") ? 2000 : 1000),
+                consumers, producers, trips, seed);
+        System.out.printf("Simulated time:   %d ms (virtual)%n", now);
+        System.out.printf("Visits:           %d (%.1f per simulated second)%n", visits, visits * 1000.0 / simulatedMs);
+        System.out.printf("Aborted:          %d%n", aborted);
+        System.out.printf("Stranded:         %d vehicles still waiting when nothing else could happen%n",
+                vehicles - retired);
+        System.out.printf("Wait p50/p99/max: %d / %d / %d ms%n",
+                percentile(sorted, 0.50), percentile(sorted, 0.99), sorted.length > 0 ? sorted[sorted.length - 1] : 0);
+        System.out.printf("Dock utilization: %.1f%%%n", 100.0 * dockBusyMs / ((double) docks * simulatedMs));
+        System.out.printf("Wall time:        %.1f ms (%d events, %.0fx faster than real time)%n",
+                wallMs, events, now / Math.max(wallMs, 0.001));
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int idx = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, idx)];
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("Usage: java EventSimulation [station=space|fuel] [trips=3] [docks=3] [tank=2000]"
+                + " [consumers=5] [producers=2] [seed=42]");
+    }
+}
@@ -0,0 +1,386 @@
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Open-loop load generator for either station.
+ *
+ * The simulations and StationBenchmark are closed loops: a vehicle only
+ * comes back once its previous visit is over, so a slow station slows its
+ * own arrivals down and is never overloaded. Here arrivals follow a seeded
+ * schedule that does not depend on the station at all; every arrival is a
+ * new vehicle on its own virtual thread, so queues grow without bound once
+ * the offered rate exceeds what the docks can serve.
+ *
+ * Arrival processes (rate is always the long-run mean, per second):
+ * poisson, exponential gaps; onoff, Poisson bursts during exponentially
+ * long on periods (mean on ms) separated by silent off periods (mean off
+ * ms); diurnal, a Poisson process whose rate swings as
+ * rate * (1 - swing * cos(2 pi t / period)), so a run starts at its trough
+ * and peaks halfway through each period (thinning at the peak rate).
+ *
+ * Latency is measured from each arrival's scheduled time, not from when the
+ * generator got round to issuing it: a generator held up by the machine
+ * would otherwise leave out exactly the waits it failed to see
+ * (coordinated omission). The uncorrected figure, from the actual issue,
+ * is printed next to it, along with the generator's own lag. Vehicles
+ * that never dock by the end of the drain are cut off and counted in the
+ * corrected histogram with their time so far, a lower bound.
+ *
+ * Demands and dock times are SimulationRunner's for both stations; a
+ * share of the arrivals are supply ships (600N/600Q, 50N/50Q back).
+ *
+ * Usage: java LoadGen [key=value]...
+ * Keys: station (fuel|fuel-handoff|space), docks, tank, process
+ * (poisson|onoff|diurnal), rate, duration, supply, on, off, swing, period,
+ * drain, report, policy, seed
+ */
+public class LoadGen {
+
+    // --- PARAMETERS ---
+    static String station = "space";
+    static int docks = 3;
+    static int tank = 2000;
+    static String process = "poisson";
+    static double rate = 15; // mean arrivals per second
+    static long durationMs = 10_000;
+    static double supplyShare = 0.2;
+    static long onMs = 1000, offMs = 1000; // onoff
+    static double swing = 0.8; // diurnal
+    static long periodMs = 0; // diurnal; 0 means the duration
+    static long drainMs = 10_000;
+    static long reportMs = 1000; // 0 turns the timeline off
+    static SchedulingPolicy policy = SchedulingPolicy.FIRST_FIT;
+    static long seed = 42;
+
+    private static final int DEPOSIT = 600, RETURN = 50;
+
+    private record Arrival(long dueNanos, int kind, int id, int n, int q, int dockMs) {
+    }
+
+    /** One visit; calls docked as the vehicle docks. False if the station turned the vehicle away. */
+    interface Visit {
+        boolean run(Arrival a, Runnable docked) throws InterruptedException;
+    }
+
+    private static final LongAdder docked = new LongAdder();
+    private static final LongAdder aborted = new LongAdder();
+    private static final LongAdder departed = new LongAdder();
+    private static final LongAdder cutWaiting = new LongAdder();
+    private static final AtomicLong inFlight = new AtomicLong();
+    private static final Set<Thread> live = ConcurrentHashMap.newKeySet();
+
+    private static final LatencyHistogram corrected = new LatencyHistogram();
+    private static final LatencyHistogram uncorrected = new LatencyHistogram();
+    private static final LatencyHistogram generatorLag = new LatencyHistogram();
+    // The timeline's current interval; swapped by the reporter.
+    private static volatile LatencyHistogram interval = new LatencyHistogram();
+    private static final LongAdder intervalArrivals = new LongAdder();
+    private static final LongAdder intervalDocked = new LongAdder();
+
+    public static void main(String[] args) throws InterruptedException {
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                usage("Malformed argument: " + arg);
+                return;
+            }
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            try {
+                switch (key) {
+                    case "station" -> station = value;
+                    case "docks" -> docks = Integer.parseInt(value);
+                    case "tank" -> tank = Integer.parseInt(value);
+                    case "process" -> process = value;
+                    case "rate" -> rate = Double.parseDouble(value);
+                    case "duration" -> durationMs = Long.parseLong(value);
+                    case "supply" -> supplyShare = Double.parseDouble(value);
+                    case "on" -> onMs = Long.parseLong(value);
+                    case "off" -> offMs = Long.parseLong(value);
+                    case "swing" -> swing = Double.parseDouble(value);
+                    case "period" -> periodMs = Long.parseLong(value);
+                    case "drain" -> drainMs = Long.parseLong(value);
+                    case "report" -> reportMs = Long.parseLong(value);
+                    case "policy" -> policy = SchedulingPolicy.parse(value);
+                    case "seed" -> seed = Long.parseLong(value);
+                    default -> {
+                        usage("Unknown parameter: " + key);
+                        return;
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                usage("Invalid value for " + key + ": " + value);
+                return;
+            }
+        }
+        if (docks <= 0 || tank < DEPOSIT || !(rate > 0) || durationMs <= 0 || supplyShare < 0 || supplyShare > 1
+                || onMs <= 0 || offMs < 0 || swing < 0 || swing > 1 || periodMs < 0 || drainMs < 0 || reportMs < 0) {
+            usage("Invalid configuration: need positive docks, rate, duration and on, a tank of at least " + DEPOSIT
+                    + ", and supply and swing within 0..1.");
+            return;
+        }
+        Schedule schedule = switch (process) {
+            case "poisson", "onoff", "diurnal" -> new Schedule(new Random(seed));
+            default -> null;
+        };
+        if (schedule == null) {
+            usage("Unknown process: " + process);
+            return;
+        }
+
+        Logger.setLevel(Logger.Level.OFF);
+
+        StationMetrics metrics;
+        Visit visit;
+        switch (station) {
+            case "fuel", "fuel-handoff" -> {
+                int initial = tank - DEPOSIT;
+                FuelStation fs = new FuelStation(docks, tank, tank, initial, initial,
+                        station.equals("fuel") ? FuelStation.WakeupMode.BROADCAST : FuelStation.WakeupMode.HANDOFF);
+                metrics = fs.metrics();
+                visit = (a, onDocked) -> {
+                    if (a.kind == WorkloadTrace.REFUEL) {
+                        String vid = "Vehicle-" + a.id;
+                        if (!fs.requestFuel(a.n, a.q, vid)) return false;
+                        onDocked.run();
+                        try {
+                            Thread.sleep(a.dockMs);
+                        } finally {
+                            fs.releaseDock(vid);
+                        }
+                        return true;
+                    }
+                    String vid = "SupplyVehicle-" + a.id;
+                    if (!fs.depositFuel(a.n, a.q, vid, RETURN, RETURN)) return false;
+                    onDocked.run();
+                    try {
+                        Thread.sleep(a.dockMs + 50);
+                        if (!fs.requestFuel(RETURN, RETURN, vid)) return true;
+                        Thread.sleep(a.dockMs);
+                    } finally {
+                        fs.releaseDock(vid);
+                    }
+                    return true;
+                };
+            }
+            case "space" -> {
+                // One consumer and one producer stand for the whole open fleet, which never leaves.
+                SpaceFuelStation ss = new SpaceFuelStation(docks, tank, tank, 1, 1, policy);
+                metrics = ss.metrics();
+                visit = (a, onDocked) -> {
+                    SpaceFuelStation.Visit v = a.kind == WorkloadTrace.REFUEL
+                            ? ss.refuelAsync(a.id, "Ordinary", a.n, a.q, a.dockMs)
+                            : ss.supplyAsync(a.id, a.n, a.q, RETURN, RETURN, a.dockMs);
+                    try {
+                        if (!v.docked.get()) return false;
+                        onDocked.run();
+                        v.departed.get();
+                        return true;
+                    } catch (InterruptedException e) {
+                        v.docked.cancel(false); // withdraws the request if it is still queued
+                        throw e;
+                    } catch (ExecutionException e) {
+                        return false;
+                    }
+                };
+            }
+            default -> {
+                usage("Unknown station: " + station);
+                return;
+            }
+        }
+
+        Random demand = new Random(seed + 1);
+        long start = System.nanoTime();
+        long end = start + durationMs * 1_000_000;
+        Thread reporter = reportMs == 0 ? null : Thread.ofPlatform().daemon().start(() -> timeline(start));
+
+        // --- GENERATE ---
+        long arrivals = 0, supplies = 0;
+        for (double at = schedule.next(0); at < durationMs * 1e6; at = schedule.next(at)) {
+            long due = start + (long) at;
+            long ahead = due - System.nanoTime();
+            if (ahead > 0) {
+                Thread.sleep(Duration.ofNanos(ahead));
+            }
+            Arrival a = draw(due, (int) ++arrivals, demand);
+            if (a.kind == WorkloadTrace.SUPPLY) supplies++;
+            generatorLag.record(System.nanoTime() - due);
+            intervalArrivals.increment();
+            inFlight.incrementAndGet();
+            Thread vehicle = Thread.ofVirtual().unstarted(() -> serve(visit, a));
+            live.add(vehicle);
+            vehicle.start();
+        }
+
+        // --- DRAIN, THEN CUT OFF WHOEVER IS LEFT ---
+        long drainEnd = Math.max(end, System.nanoTime()) + drainMs * 1_000_000;
+        while (inFlight.get() > 0 && System.nanoTime() < drainEnd) {
+            Thread.sleep(10);
+        }
+        long cutOff = System.nanoTime();
+        long stranded = inFlight.get();
+        for (Thread t : live) t.interrupt();
+        for (Thread t : live) t.join(1000);
+        if (reporter != null) reporter.interrupt();
+
+        double wallS = (cutOff - start) / 1e9;
+        System.out.printf(Locale.ROOT, "Load:              %s, %.1f arrivals/s for %d ms (seed %d)%s%n", process, rate,
+                durationMs, seed, describeProcess());
+        System.out.printf(Locale.ROOT, "Station:           %s, %d docks, tank %d%n", station, docks, tank);
+        System.out.printf(Locale.ROOT, "Arrivals:          %d (%.1f per second offered), %d supply%n", arrivals,
+                arrivals * 1000.0 / durationMs, supplies);
+        System.out.printf(Locale.ROOT, "Docked:            %d (%.1f per second until cut-off), %d departed%n",
+                docked.sum(), docked.sum() / wallS, departed.sum());
+        System.out.printf(Locale.ROOT, "Turned away:       %d%n", aborted.sum());
+        System.out.printf(Locale.ROOT, "Cut off:           %d vehicles %d ms after the last arrival, %d never docked%n",
+                stranded, drainMs, cutWaiting.sum());
+        row("Generator lag", generatorLag);
+        row("Wait (corrected)", corrected);
+        row("Wait (issued)", uncorrected);
+        System.out.printf(Locale.ROOT, "Dock utilization:  %.1f%%%n", 100 * metrics.dockUtilization(docks));
+    }
+
+    private static void serve(Visit visit, Arrival a) {
+        Thread self = Thread.currentThread();
+        long issued = System.nanoTime();
+        boolean[] isDocked = new boolean[1];
+        try {
+            boolean served = visit.run(a, () -> {
+                long at = System.nanoTime();
+                isDocked[0] = true;
+                docked.increment();
+                intervalDocked.increment();
+                corrected.record(at - a.dueNanos);
+                uncorrected.record(at - issued);
+                interval.record(at - a.dueNanos);
+            });
+            if (self.isInterrupted()) {
+                throw new InterruptedException();
+            }
+            if (served) {
+                departed.increment();
+            } else {
+                aborted.increment();
+            }
+        } catch (InterruptedException e) {
+            if (!isDocked[0]) {
+                // Cut off in the queue: its wait so far is a lower bound, but leaving it out would flatter the tail.
+                cutWaiting.increment();
+                corrected.record(System.nanoTime() - a.dueNanos);
+            }
+        } finally {
+            inFlight.decrementAndGet();
+            live.remove(self);
+        }
+    }
+
+    /** One line of timeline per report interval: offered, docked, in flight and the interval's corrected waits. */
+    private static void timeline(long start) {
+        System.out.printf(Locale.ROOT, "%8s %8s %8s %10s %12s %12s%n", "t s", "offered", "docked", "in flight",
+                "wait p50 ms", "wait p99 ms");
+        long next = start;
+        try {
+            while (true) {
+                next += reportMs * 1_000_000;
+                Thread.sleep(Duration.ofNanos(Math.max(0, next - System.nanoTime())));
+                LatencyHistogram h = interval;
+                interval = new LatencyHistogram();
+                long[] p = h.percentiles(0.50, 0.99);
+                System.out.printf(Locale.ROOT, "%8.1f %8d %8d %10d %12.1f %12.1f%n", (next - start) / 1e9,
+                        intervalArrivals.sumThenReset(), intervalDocked.sumThenReset(), inFlight.get(),
+                        p[0] / 1e6, p[1] / 1e6);
+            }
+        } catch (InterruptedException e) {
+            // run over
+        }
+    }
+
+    /** SimulationRunner's ranges: ordinaries 50..199 of each fuel, supply ships a fixed load. */
+    private static Arrival draw(long due, int id, Random rng) {
+        if (rng.nextDouble() < supplyShare) {
+            return new Arrival(due, WorkloadTrace.SUPPLY, id, DEPOSIT, DEPOSIT, 100 + rng.nextInt(200));
+        }
+        int fuel = 50 + rng.nextInt(150);
+        return new Arrival(due, WorkloadTrace.REFUEL, id, fuel, fuel, 50 + rng.nextInt(150));
+    }
+
+    /**
+     * Arrival offsets in ns from the start for the chosen process; the
+     * same seed always gives the same offsets, whatever the station does.
+     */
+    private static final class Schedule {
+        private final Random rng;
+        private double onUntil; // onoff: end of the current on period
+
+        Schedule(Random rng) {
+            this.rng = rng;
+            this.onUntil = exp(onMs * 1e6);
+        }
+
+        /** The first arrival after t. */
+        double next(double t) {
+            switch (process) {
+                case "onoff": {
+                    // During on periods arrivals come faster, so the mean over on and off is still rate.
+                    double onGap = 1e9 / rate * onMs / (onMs + offMs);
+                    while (true) {
+                        double at = t + exp(onGap);
+                        if (at < onUntil) {
+                            return at;
+                        }
+                        // Memoryless: the next on period can start its own gap afresh.
+                        t = onUntil + exp(offMs * 1e6);
+                        onUntil = t + exp(onMs * 1e6);
+                    }
+                }
+                case "diurnal": {
+                    double period = (periodMs > 0 ? periodMs : durationMs) * 1e6;
+                    double peak = rate * (1 + swing);
+                    while (true) {
+                        t += exp(1e9 / peak);
+                        double now = rate * (1 - swing * Math.cos(2 * Math.PI * t / period));
+                        if (rng.nextDouble() * peak < now) {
+                            return t;
+                        }
+                    }
+                }
+                default:
+                    return t + exp(1e9 / rate);
+            }
+        }
+
+        private double exp(double mean) {
+            return -Math.log(1 - rng.nextDouble()) * mean;
+        }
+    }
+
+    private static String describeProcess() {
+        return switch (process) {
+            case "onoff" -> String.format(Locale.ROOT, ", on %d ms / off %d ms", onMs, offMs);
+            case "diurnal" -> String.format(Locale.ROOT, ", swing %.2f over %d ms", swing,
+                    periodMs > 0 ? periodMs : durationMs);
+            default -> "";
+        };
+    }
+
+    private static void row(String label, LatencyHistogram h) {
+        long[] p = h.percentiles(0.50, 0.90, 0.99, 0.999);
+        System.out.printf(Locale.ROOT, "%-18s p50 %.1f / p90 %.1f / p99 %.1f / p99.9 %.1f / max %.1f ms (%d)%n",
+                label + ":", p[0] / 1e6, p[1] / 1e6, p[2] / 1e6, p[3] / 1e6, h.max() / 1e6, h.count());
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("Usage: java LoadGen [station=fuel|fuel-handoff|space] [docks=3] [tank=2000]"
+                + " [process=poisson|onoff|diurnal] [rate=15] [duration=10000] [supply=0.2] [on=1000] [off=1000]"
+                + " [swing=0.8] [period=0] [drain=10000] [report=1000]"
+                + " [policy=first-fit|fifo|shortest|best-fit|balanced|aging[:ms]] [seed=42]");
+    }
+}
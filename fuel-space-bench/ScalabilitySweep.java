@@ -0,0 +1,199 @@
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scalability sweep over the threaded simulations, with CSV output.
+ *
+ * Every combination of the given ranges is one point; each point is run once
+ * per station by SweepPoint in a fresh JVM, whose virtual-thread carrier pool
+ * is limited to the point's thread count. Points are independent, so up to
+ * jobs of them run at the same time; keep jobs * threads at or below the core
+ * count if the throughput column is to mean anything.
+ *
+ * Ranges are comma lists, lo..hi (step 1), lo..hi+step or lo..hi*factor,
+ * e.g. docks=1..4 regulars=5..80*2 threads=1,2,4.
+ *
+ * Usage: java ScalabilitySweep [key=range]...
+ * Keys: station, docks, tank, regulars, supplies, trips, threads (ranges);
+ * scale, timeout, jobs, seed, out
+ */
+public class ScalabilitySweep {
+
+    // --- SWEEP PARAMETERS ---
+    static String[] stations = { "fuel", "space" };
+    static int[] docks = { 1, 2, 3 };
+    static int[] tanks = { 1000 };
+    static int[] regulars = { 5, 10, 20 };
+    static int[] supplies = { 2 };
+    static int[] trips = { 3 };
+    static int[] threads = { 1 };
+    static double scale = 0.01;
+    static long timeoutMs = 30_000;
+    static int jobs = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    static long seed = 42;
+    static String out = null;
+
+    /** Seconds a child gets past its own timeout before it is killed. */
+    private static final long KILL_GRACE_S = 10;
+
+    public static void main(String[] args) throws Exception {
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                usage("Malformed argument: " + arg);
+                return;
+            }
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            try {
+                switch (key) {
+                    case "station" -> stations = value.split(",");
+                    case "docks" -> docks = parseRange(value);
+                    case "tank" -> tanks = parseRange(value);
+                    case "regulars" -> regulars = parseRange(value);
+                    case "supplies" -> supplies = parseRange(value);
+                    case "trips" -> trips = parseRange(value);
+                    case "threads" -> threads = parseRange(value);
+                    case "scale" -> scale = Double.parseDouble(value);
+                    case "timeout" -> timeoutMs = Long.parseLong(value);
+                    case "jobs" -> jobs = Integer.parseInt(value);
+                    case "seed" -> seed = Long.parseLong(value);
+                    case "out" -> out = value;
+                    default -> {
+                        usage("Unknown parameter: " + key);
+                        return;
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                usage("Invalid range for " + key + ": " + value);
+                return;
+            }
+        }
+
+        List<List<String>> points = new ArrayList<>();
+        for (int d : docks)
+            for (int tank : tanks)
+                for (int r : regulars)
+                    for (int s : supplies)
+                        for (int tr : trips)
+                            for (int th : threads)
+                                for (String station : stations)
+                                    points.add(List.of("station=" + station, "docks=" + d, "tank=" + tank,
+                                            "regulars=" + r, "supplies=" + s, "trips=" + tr, "threads=" + th,
+                                            "scale=" + scale, "timeout=" + timeoutMs, "seed=" + seed));
+
+        PrintStream csv = System.out;
+        if (out != null) {
+            try {
+                csv = new PrintStream(out, StandardCharsets.UTF_8);
+            } catch (FileNotFoundException e) {
+                usage("Cannot write " + out);
+                return;
+            }
+        }
+        csv.println(SweepPoint.HEADER + ",status");
+
+        // Rows are printed in grid order, whatever order the points finish in.
+        try (ExecutorService pool = Executors.newFixedThreadPool(jobs)) {
+            List<Future<String>> rows = new ArrayList<>();
+            for (List<String> point : points) {
+                rows.add(pool.submit(() -> runPoint(point)));
+            }
+            for (int i = 0; i < rows.size(); i++) {
+                csv.println(rows.get(i).get());
+                csv.flush();
+                System.err.printf("[sweep] %d/%d %s%n", i + 1, rows.size(), String.join(" ", points.get(i)));
+            }
+        }
+        if (csv != System.out) {
+            csv.close();
+        }
+    }
+
+    /** Runs one point in a child JVM and returns its CSV row plus a status column. */
+    private static String runPoint(List<String> point) throws IOException, InterruptedException {
+        int carriers = Integer.parseInt(value(point, "threads"));
+        List<String> cmd = new ArrayList<>();
+        cmd.add(System.getProperty("java.home") + "/bin/java");
+        cmd.add("-Djdk.virtualThreadScheduler.parallelism=" + carriers);
+        cmd.add("-Djdk.virtualThreadScheduler.maxPoolSize=" + carriers);
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add("SweepPoint");
+        cmd.addAll(point);
+
+        Process child = new ProcessBuilder(cmd).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        // The child stops itself at its timeout and prints one short line, so the pipe never fills.
+        if (!child.waitFor(timeoutMs + KILL_GRACE_S * 1000, TimeUnit.MILLISECONDS)) {
+            child.destroyForcibly().waitFor();
+            return emptyRow(point, "killed");
+        }
+        String row;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(child.getInputStream(), StandardCharsets.UTF_8))) {
+            row = reader.readLine();
+        }
+        if (row != null && !row.isBlank()) {
+            return row + ",ok";
+        }
+        return emptyRow(point, "failed");
+    }
+
+    /** Parameters only, measurements left empty. */
+    private static String emptyRow(List<String> point, String status) {
+        StringBuilder sb = new StringBuilder();
+        for (String key : new String[] { "station", "docks", "tank", "regulars", "supplies", "trips", "threads" }) {
+            sb.append(value(point, key)).append(',');
+        }
+        return sb.append(",,,,,,,,").append(status).toString();
+    }
+
+    private static String value(List<String> point, String key) {
+        for (String kv : point) {
+            if (kv.startsWith(key + "=")) return kv.substring(key.length() + 1);
+        }
+        throw new IllegalArgumentException(key);
+    }
+
+    /** "1,2,4", "1..8", "1..9+2" or "1..64*2". */
+    static int[] parseRange(String spec) {
+        if (!spec.contains("..")) {
+            String[] parts = spec.split(",");
+            int[] values = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) values[i] = Integer.parseInt(parts[i].trim());
+            return values;
+        }
+        String[] bounds = spec.split("\\.\\.", 2);
+        int lo = Integer.parseInt(bounds[0].trim());
+        String rest = bounds[1].trim();
+        boolean geometric = rest.contains("*");
+        String[] hiStep = rest.split("[*+]", 2);
+        int hi = Integer.parseInt(hiStep[0].trim());
+        int step = hiStep.length > 1 ? Integer.parseInt(hiStep[1].trim()) : 1;
+        if (lo > hi || (geometric ? step < 2 || lo < 1 : step < 1)) {
+            throw new IllegalArgumentException(spec);
+        }
+        List<Integer> values = new ArrayList<>();
+        for (long v = lo; v <= hi; v = geometric ? v * step : v + step) {
+            values.add((int) v);
+        }
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("Usage: java ScalabilitySweep [station=fuel,fuel-handoff,space] [docks=1..3] [tank=1000]"
+                + " [regulars=5,10,20] [supplies=2] [trips=3] [threads=1] [scale=0.01] [timeout=30000] [jobs=N]"
+                + " [seed=42] [out=file.csv]");
+    }
+}
@@ -0,0 +1,419 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Contention benchmark for the two station monitors.
+ *
+ * Drives FuelStation (requestFuel/depositFuel/releaseDock; alone, or behind
+ * the flat-combining CombiningFuelStation in HANDOFF mode) and
+ * SpaceFuelStation (refuelVehicle/supplyStation, alone, behind a flat-combining
+ * CombiningStation, or as a StationCluster of shards) from a fixed pool of worker
+ * threads with all travel and dock times set to zero, so the only thing being
+ * measured is the station itself. Every point of the parameter grid runs a
+ * number of warmup iterations followed by measured iterations on a fresh
+ * station, and reports completed visits per second plus wait-time percentiles.
+ * An iteration in which no visit completes for its last quarter has stalled
+ * (every worker parked). It still counts towards ops/s, but its point is
+ * marked FAILED and the run exits with status 1.
+ *
+ * Usage: java StationBenchmark [key=v1,v2,...]...
+ * Keys: station, docks, threads, tank, producers, shards, warmup, iterations, time, policy
+ */
+public class StationBenchmark {
+
+    // --- BENCHMARK PARAMETERS ---
+    static String[] stations = { "fuel", "fuel-handoff", "space" };
+    static int[] docks = { 1, 3 };
+    static int[] threads = { 4, 16 };
+    static int[] tanks = { 1000 };
+    static double[] producerShares = { 0.25 };
+    static int[] shardCounts = { 4 }; // "cluster" only; docks and tank are per shard
+    static int warmupIterations = 2;
+    static int measureIterations = 5;
+    static int iterationMillis = 1000;
+    static SchedulingPolicy policy = SchedulingPolicy.FIRST_FIT; // space, combining and cluster
+
+    /** One closed-loop station driver; each call is a full visit. */
+    interface Workload {
+        boolean consume(int worker) throws InterruptedException;
+
+        boolean produce(int worker) throws InterruptedException;
+
+        void retire(boolean producer);
+    }
+
+    /** The FuelStation calls a fuel workload makes, so CombiningFuelStation can stand in for the station. */
+    interface FuelCalls {
+        boolean requestFuel(int n, int q, String id);
+
+        boolean depositFuel(int n, int q, String id, int retN, int retQ);
+
+        void releaseDock(String id);
+    }
+
+    /** Growable sample buffer, one per worker so recording never contends. */
+    static final class LatencyLog {
+        long[] samples = new long[1 << 12];
+        int size;
+        long lastNanos; // System.nanoTime() of the latest visit
+
+        void record(long nanos, long now) {
+            if (size == samples.length) {
+                samples = Arrays.copyOf(samples, size * 2);
+            }
+            samples[size++] = nanos;
+            lastNanos = now;
+        }
+    }
+
+    /** One timed iteration: its length and whether it stopped making progress. */
+    record Iteration(long elapsedNanos, boolean stalled) {
+    }
+
+    /** Aggregated numbers for one grid point and one station. */
+    static final class Result {
+        final double[] opsPerSec;
+        final long[] waits;
+        long aborted;
+        int stalled;
+
+        Result(double[] opsPerSec, long[] waits, long aborted, int stalled) {
+            this.opsPerSec = opsPerSec;
+            this.waits = waits;
+            this.aborted = aborted;
+            this.stalled = stalled;
+        }
+
+        double mean() {
+            if (opsPerSec.length == 0) return 0;
+            double sum = 0;
+            for (double v : opsPerSec) sum += v;
+            return sum / opsPerSec.length;
+        }
+
+        double stdev() {
+            double m = mean(), sum = 0;
+            for (double v : opsPerSec) sum += (v - m) * (v - m);
+            return opsPerSec.length > 1 ? Math.sqrt(sum / (opsPerSec.length - 1)) : 0;
+        }
+
+        double percentileMicros(double p) {
+            if (waits.length == 0) return 0;
+            int idx = (int) Math.min(waits.length - 1, Math.ceil(p * waits.length) - 1);
+            return waits[Math.max(0, idx)] / 1000.0;
+        }
+    }
+
+    public static void main(String[] args) {
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                usage("Malformed argument: " + arg);
+                return;
+            }
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            try {
+                switch (key) {
+                    case "station" -> stations = value.split(",");
+                    case "docks" -> docks = parseInts(value);
+                    case "threads" -> threads = parseInts(value);
+                    case "tank" -> tanks = parseInts(value);
+                    case "producers" -> producerShares = parseDoubles(value);
+                    case "shards" -> shardCounts = parseInts(value);
+                    case "warmup" -> warmupIterations = Integer.parseInt(value);
+                    case "iterations" -> measureIterations = Integer.parseInt(value);
+                    case "time" -> iterationMillis = Integer.parseInt(value);
+                    case "policy" -> policy = SchedulingPolicy.parse(value);
+                    default -> {
+                        usage("Unknown parameter: " + key);
+                        return;
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                usage("Invalid value for " + key + ": " + value);
+                return;
+            }
+        }
+
+        // Measure the stations, not the console: station logging is switched off.
+        Logger.setLevel(Logger.Level.OFF);
+        PrintStream console = System.out;
+
+        int failed = 0;
+        console.printf("%-14s %5s %7s %6s %5s | %12s %10s | %9s %9s %9s %9s | %7s %7s%n",
+                "impl", "docks", "threads", "tank", "prod", "ops/s", "+-", "p50 us", "p90 us", "p99 us",
+                "max us", "aborts", "stalled");
+
+        // "cluster" expands to one impl per shard count, e.g. cluster-4.
+        List<String> impls = new ArrayList<>();
+        for (String station : stations) {
+            if (station.equals("cluster")) {
+                for (int k : shardCounts) impls.add("cluster-" + k);
+            } else {
+                impls.add(station);
+            }
+        }
+
+        for (String station : impls) {
+            for (int d : docks) {
+                for (int t : threads) {
+                    for (int tank : tanks) {
+                        for (double share : producerShares) {
+                            int producers = Math.min(t - 1, (int) Math.round(t * share));
+                            if (t > 1 && share > 0) producers = Math.max(1, producers);
+
+                            Result r = runPoint(station, d, t, tank, producers);
+                            if (r == null) {
+                                console.println("Unknown station: " + station + " (expected fuel, fuel-handoff, fuel-combining, space, combining or cluster)");
+                                return;
+                            }
+                            console.printf("%-14s %5d %7d %6d %5d | %12.0f %10.0f | %9.1f %9.1f %9.1f %9.1f | %7d %7d%s%n",
+                                    station, d, t, tank, producers, r.mean(), r.stdev(),
+                                    r.percentileMicros(0.50), r.percentileMicros(0.90),
+                                    r.percentileMicros(0.99), r.percentileMicros(1.0), r.aborted, r.stalled,
+                                    r.stalled > 0 ? "  FAILED" : "");
+                            if (r.stalled > 0) failed++;
+                        }
+                    }
+                }
+            }
+        }
+        if (failed > 0) {
+            System.err.println(failed + " point(s) FAILED: the station stopped admitting anyone (stalled iterations)");
+            System.exit(1);
+        }
+    }
+
+    private static Result runPoint(String station, int numDocks, int numThreads, int tank, int producers) {
+        double[] opsPerSec = new double[measureIterations];
+        int measured = 0, stalled = 0;
+        List<long[]> waits = new ArrayList<>();
+        long aborted = 0;
+
+        for (int it = 0; it < warmupIterations + measureIterations; it++) {
+            Workload workload = newWorkload(station, numDocks, tank, numThreads - producers, producers);
+            if (workload == null) return null;
+
+            LatencyLog[] logs = new LatencyLog[numThreads];
+            long[] aborts = new long[numThreads];
+            Iteration run = runIteration(workload, numThreads, producers, logs, aborts);
+
+            if (it < warmupIterations) continue;
+            if (run.stalled()) stalled++;
+
+            long ops = 0;
+            for (int w = 0; w < numThreads; w++) {
+                ops += logs[w].size;
+                aborted += aborts[w];
+                waits.add(Arrays.copyOf(logs[w].samples, logs[w].size));
+            }
+            opsPerSec[measured++] = ops * 1_000_000_000.0 / run.elapsedNanos();
+        }
+
+        int total = 0;
+        for (long[] w : waits) total += w.length;
+        long[] merged = new long[total];
+        int pos = 0;
+        for (long[] w : waits) {
+            System.arraycopy(w, 0, merged, pos, w.length);
+            pos += w.length;
+        }
+        Arrays.sort(merged);
+        return new Result(Arrays.copyOf(opsPerSec, measured), merged, aborted, stalled);
+    }
+
+    /**
+     * Runs one timed iteration. Workers [0, producers) supply fuel, the rest
+     * consume it. At the end every worker is interrupted so that vehicles still
+     * parked in a station queue leave instead of holding up the next iteration.
+     * It has stalled if no worker finished a visit in its last quarter.
+     */
+    private static Iteration runIteration(Workload workload, int numThreads, int producers,
+            LatencyLog[] logs, long[] aborts) {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[numThreads];
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        for (int w = 0; w < numThreads; w++) {
+            final int worker = w;
+            final boolean producer = w < producers;
+            logs[w] = new LatencyLog();
+            workers[w] = new Thread(() -> {
+                LatencyLog log = logs[worker];
+                try {
+                    start.await();
+                    while (running.get()) {
+                        long t0 = System.nanoTime();
+                        boolean ok = producer ? workload.produce(worker) : workload.consume(worker);
+                        if (ok && running.get()) {
+                            long now = System.nanoTime();
+                            log.record(now - t0, now);
+                        } else if (Thread.currentThread().isInterrupted()) {
+                            break;
+                        } else if (!ok) {
+                            aborts[worker]++;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    workload.retire(producer);
+                }
+            }, "bench-" + w);
+            workers[w].start();
+        }
+
+        long t0 = System.nanoTime();
+        start.countDown();
+        try {
+            Thread.sleep(iterationMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        running.set(false);
+        long end = System.nanoTime();
+        long elapsed = end - t0;
+
+        for (Thread t : workers) t.interrupt();
+        for (Thread t : workers) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long last = t0;
+        for (LatencyLog log : logs) last = Math.max(last, log.lastNanos);
+        return new Iteration(elapsed, end - last > elapsed / 4);
+    }
+
+    private static Workload newWorkload(String station, int numDocks, int tank, int consumers, int producers) {
+        // Same demand shape as FuelStationSimulation: small refuels, deposits of a
+        // quarter tank, and supply ships taking half a refuel home.
+        int demand = Math.max(1, tank / 20);
+        int deposit = Math.max(1, tank / 4);
+        int ret = Math.max(1, demand / 2);
+
+        switch (station) {
+            case "fuel":
+            case "fuel-handoff": {
+                FuelStation.WakeupMode mode = station.equals("fuel-handoff")
+                        ? FuelStation.WakeupMode.HANDOFF
+                        : FuelStation.WakeupMode.BROADCAST;
+                FuelStation fs = new FuelStation(numDocks, tank, tank, tank / 2, tank / 2, mode);
+                return fuelWorkload(new FuelCalls() {
+                    public boolean requestFuel(int n, int q, String id) {
+                        return fs.requestFuel(n, q, id);
+                    }
+
+                    public boolean depositFuel(int n, int q, String id, int retN, int retQ) {
+                        return fs.depositFuel(n, q, id, retN, retQ);
+                    }
+
+                    public void releaseDock(String id) {
+                        fs.releaseDock(id);
+                    }
+                }, demand, deposit, ret);
+            }
+            case "fuel-combining": {
+                CombiningFuelStation cs = new CombiningFuelStation(
+                        new FuelStation(numDocks, tank, tank, tank / 2, tank / 2, FuelStation.WakeupMode.HANDOFF));
+                return fuelWorkload(new FuelCalls() {
+                    public boolean requestFuel(int n, int q, String id) {
+                        return cs.requestFuel(n, q, id);
+                    }
+
+                    public boolean depositFuel(int n, int q, String id, int retN, int retQ) {
+                        return cs.depositFuel(n, q, id, retN, retQ);
+                    }
+
+                    public void releaseDock(String id) {
+                        cs.releaseDock(id);
+                    }
+                }, demand, deposit, ret);
+            }
+            case "space":
+                return depotWorkload(new SpaceFuelStation(numDocks, tank, tank, consumers, producers, policy),
+                        demand, deposit, ret);
+            case "combining":
+                return depotWorkload(new CombiningStation(
+                        new SpaceFuelStation(numDocks, tank, tank, consumers, producers, policy)), demand, deposit, ret);
+            default:
+                if (station.startsWith("cluster-")) {
+                    int shards = Integer.parseInt(station.substring("cluster-".length()));
+                    return depotWorkload(new StationCluster(shards, numDocks, tank, tank, consumers, producers,
+                            StationCluster.Routing.FUEL_AWARE, 0, policy), demand, deposit, ret);
+                }
+                return null;
+        }
+    }
+
+    private static Workload fuelWorkload(FuelCalls fs, int demand, int deposit, int ret) {
+        return new Workload() {
+            public boolean consume(int worker) {
+                String id = "Vehicle-" + worker;
+                if (!fs.requestFuel(demand, demand, id)) return false;
+                fs.releaseDock(id);
+                return true;
+            }
+
+            public boolean produce(int worker) {
+                // The same visit as supplyStation: deposit, return refuel while docked, leave.
+                String id = "SupplyVehicle-" + worker;
+                if (!fs.depositFuel(deposit, deposit, id, ret, ret)) return false;
+                boolean ok = fs.requestFuel(ret, ret, id);
+                fs.releaseDock(id);
+                return ok;
+            }
+
+            public void retire(boolean producer) {
+            }
+        };
+    }
+
+    private static Workload depotWorkload(FuelDepot ss, int demand, int deposit, int ret) {
+        return new Workload() {
+            public boolean consume(int worker) throws InterruptedException {
+                return ss.refuelVehicle(worker, "Ordinary", demand, demand, 0);
+            }
+
+            public boolean produce(int worker) throws InterruptedException {
+                return ss.supplyStation(worker, deposit, deposit, ret, ret, 0);
+            }
+
+            public void retire(boolean producer) {
+                if (producer) {
+                    ss.unregisterProducer();
+                } else {
+                    ss.unregisterConsumer();
+                }
+            }
+        };
+    }
+
+    private static int[] parseInts(String csv) {
+        String[] parts = csv.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) values[i] = Integer.parseInt(parts[i].trim());
+        return values;
+    }
+
+    private static double[] parseDoubles(String csv) {
+        String[] parts = csv.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) values[i] = Double.parseDouble(parts[i].trim());
+        return values;
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("Usage: java StationBenchmark [station=fuel,fuel-handoff,fuel-combining,space,combining,cluster]"
+                + " [docks=1,3] [threads=4,16] [tank=1000] [producers=0.25] [shards=4] [warmup=2] [iterations=5] [time=1000]"
+                + " [policy=first-fit|fifo|shortest|best-fit|balanced|aging[:ms]]");
+    }
+}
@@ -0,0 +1,313 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Targeted checks for the parts of the stations that are easy to break and
+ * hard to see break in a simulation run:
+ * - SatisfiabilityQueue: the earliest satisfiable request wins, checked
+ *   against a plain scan in arrival order;
+ * - StationJournal: a record torn by a crash is skipped on recovery, and
+ *   the sealed records around it still count;
+ * - Dock: vacate racing retire/unretire always leaves the dock in the state
+ *   both sides were told;
+ * - deadline shedding: a waiter past its deadline leaves, and whoever it
+ *   held back is served (SpaceFuelStation and FuelStation).
+ *
+ * Prints one line per check and exits with status 1 if any failed.
+ *
+ * Usage: java StationChecks [seed=N] [rounds=N]
+ */
+public class StationChecks {
+
+    static long seed = 42;
+    static int rounds = 50_000; // vacate/retire races
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String key = eq < 0 ? arg : arg.substring(0, eq);
+            try {
+                switch (key) {
+                    case "seed" -> seed = Long.parseLong(arg.substring(eq + 1));
+                    case "rounds" -> rounds = Integer.parseInt(arg.substring(eq + 1));
+                    default -> {
+                        usage("Unknown parameter: " + key);
+                        return;
+                    }
+                }
+            } catch (RuntimeException e) {
+                usage("Invalid argument: " + arg);
+                return;
+            }
+        }
+        Logger.setLevel(Logger.Level.OFF);
+
+        queueFifoAmongSatisfiable();
+        journalTornRecord();
+        dockVacateRetireRace();
+        spaceDeadlineShedding();
+        fuelDeadlineShedding();
+
+        if (failures > 0) {
+            System.out.println(failures + " check(s) FAILED");
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+    }
+
+    private static void check(boolean ok, String what) {
+        System.out.println((ok ? "ok      " : "FAILED  ") + what);
+        if (!ok) failures++;
+    }
+
+    // --- SATISFIABILITY QUEUE ---
+
+    /** Random adds, removals and lookups for 1-3 fuels; every lookup must match a scan in arrival order. */
+    private static void queueFifoAmongSatisfiable() {
+        Random rnd = new Random(seed);
+        String mismatch = null;
+        for (int width = 1; width <= 3 && mismatch == null; width++) {
+            long[] capacity = new long[width];
+            Arrays.fill(capacity, 100);
+            for (int trial = 0; trial < 200 && mismatch == null; trial++) {
+                SatisfiabilityQueue queue = new SatisfiabilityQueue(capacity);
+                List<FuelRequest> waiting = new ArrayList<>();
+                List<Boolean> holdsDock = new ArrayList<>();
+                for (int step = 0; step < 300 && mismatch == null; step++) {
+                    int op = rnd.nextInt(10);
+                    if (op < 5 || waiting.isEmpty()) {
+                        boolean deposit = rnd.nextInt(3) == 0;
+                        long[] amount = new long[width], min = new long[width], ret = new long[width];
+                        for (int i = 0; i < width; i++) {
+                            amount[i] = rnd.nextInt(4) * 10 + rnd.nextInt(2) * 5; // few sizes: shared buckets
+                            min[i] = rnd.nextBoolean() ? amount[i] : amount[i] / 2;
+                            ret[i] = deposit ? rnd.nextInt(5) * 10 : 0;
+                        }
+                        FuelRequest request = new FuelRequest("v" + step, amount, min,
+                                deposit ? FuelRequest.RequestType.FUEL_DEPOSIT : FuelRequest.RequestType.FUEL_REQUEST,
+                                ret);
+                        boolean docked = !deposit && rnd.nextInt(4) == 0;
+                        queue.add(request, docked);
+                        waiting.add(request);
+                        holdsDock.add(docked);
+                    } else if (op < 8) {
+                        int i = rnd.nextInt(waiting.size());
+                        queue.remove(waiting.remove(i));
+                        holdsDock.remove(i);
+                    } else {
+                        long[] level = new long[width];
+                        for (int i = 0; i < width; i++) level[i] = rnd.nextInt(101);
+                        boolean dockFree = rnd.nextBoolean();
+                        FuelRequest expected = null;
+                        for (int i = 0; i < waiting.size() && expected == null; i++) {
+                            FuelRequest r = waiting.get(i);
+                            boolean fits = r.getType() == FuelRequest.RequestType.FUEL_DEPOSIT
+                                    ? dockFree && FuelVector.fits(level, r.getMin(), capacity)
+                                            && FuelVector.coversAfter(level, r.getMin(), r.getReturn())
+                                    : (dockFree || holdsDock.get(i)) && FuelVector.covers(level, r.getMin());
+                            if (fits) expected = r;
+                        }
+                        FuelRequest got = queue.firstSatisfiable(level, capacity, dockFree);
+                        if (got != expected) {
+                            mismatch = "width " + width + ", level " + Arrays.toString(level) + ": expected "
+                                    + (expected == null ? "none" : expected.getVehicleId()) + ", got "
+                                    + (got == null ? "none" : got.getVehicleId());
+                        }
+                    }
+                }
+            }
+        }
+        check(mismatch == null, "SatisfiabilityQueue: earliest satisfiable request first"
+                + (mismatch == null ? "" : " (" + mismatch + ")"));
+    }
+
+    // --- JOURNAL ---
+
+    /**
+     * Writes a journal, copies its segments as a crash would leave them with
+     * one record in the middle never sealed, and recovers the copy.
+     */
+    private static void journalTornRecord() throws IOException {
+        Path live = Files.createTempDirectory("journal-live");
+        Path crashed = Files.createTempDirectory("journal-crashed");
+        try {
+            long torn;
+            long heldBefore, heldAfter;
+            try (StationJournal journal = StationJournal.open(live, 1000, 60_000)) {
+                journal.transfer(500, 500);
+                long a = journal.reserve(false, 10, 10, 0, -1);
+                journal.commit(a, false, 10, 10);
+                heldBefore = journal.reserve(false, 20, 20, 0, -1);
+                torn = journal.reserve(false, 30, 30, 1, -1);
+                heldAfter = journal.reserve(true, 40, 40, 2, -1);
+                // The crash: copy the mapped segments while the journal is still open.
+                try (Stream<Path> files = Files.list(live)) {
+                    for (Path f : files.filter(p -> p.toString().endsWith(".seg")).toList()) {
+                        Files.copy(f, crashed.resolve(f.getFileName()));
+                    }
+                }
+            }
+            // Zero the seal of the torn record: its fields were written, the seal never was.
+            try (Stream<Path> files = Files.list(crashed);
+                    FileChannel ch = FileChannel.open(files.findFirst().orElseThrow(), StandardOpenOption.WRITE)) {
+                ch.write(ByteBuffer.allocate(8), torn + 24);
+            }
+
+            try (StationJournal recovered = StationJournal.open(crashed, 1000, 60_000)) {
+                StationJournal.Recovery r = recovered.recovered();
+                List<Long> inDoubt = r.inDoubt().stream().map(StationJournal.Entry::id).toList();
+                check(r.nLevel() == 490 && r.qLevel() == 490,
+                        "StationJournal: levels recovered past a torn record (" + r.nLevel() + "N, " + r.qLevel() + "Q)");
+                check(inDoubt.equals(List.of(heldBefore, heldAfter)),
+                        "StationJournal: torn reservation skipped, the sealed ones around it in doubt " + inDoubt);
+            }
+        } finally {
+            deleteTree(live);
+            deleteTree(crashed);
+        }
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    // --- DOCK ---
+
+    /**
+     * The occupant vacates while an admin keeps retiring the dock and
+     * changing its mind. If the admin's last word was "busy again", vacate
+     * must have freed the dock; if vacate took it offline, the admin's last
+     * retire must have stuck. The race needs more than one core to bite;
+     * the sequential outcomes are checked first either way.
+     */
+    private static void dockVacateRetireRace() throws Exception {
+        Dock retired = new Dock(0);
+        retired.tryClaim();
+        retired.tryRetire();
+        Dock unretired = new Dock(1);
+        unretired.tryClaim();
+        unretired.tryRetire();
+        unretired.tryUnretire();
+        check(!retired.vacate() && !retired.isOnline() && unretired.vacate() && unretired.isFree(),
+                "Dock: vacate after retire goes offline, after unretire frees the dock");
+
+        CyclicBarrier go = new CyclicBarrier(2);
+        Dock[] dock = new Dock[1];
+        AtomicBoolean vacated = new AtomicBoolean();
+        boolean[] stuck = new boolean[1]; // the admin's last retire was not undone
+        AtomicBoolean bad = new AtomicBoolean();
+        Thread admin = new Thread(() -> {
+            try {
+                for (int i = 0; i < rounds; i++) {
+                    go.await();
+                    boolean last = false;
+                    while (!vacated.get()) {
+                        if (dock[0].tryRetire()) {
+                            last = !dock[0].tryUnretire();
+                            if (last) break;
+                        }
+                    }
+                    stuck[0] = last;
+                    go.await();
+                }
+            } catch (Exception e) {
+                bad.set(true);
+            }
+        }, "dock-admin");
+        admin.start();
+        int broken = 0;
+        for (int i = 0; i < rounds; i++) {
+            dock[0] = new Dock(0);
+            dock[0].tryClaim();
+            vacated.set(false);
+            go.await();
+            boolean freed = dock[0].vacate();
+            vacated.set(true);
+            go.await();
+            boolean consistent = freed ? dock[0].isFree() : !dock[0].isOnline() && stuck[0];
+            if (!consistent) broken++;
+        }
+        admin.join();
+        check(broken == 0 && !bad.get(), "Dock: vacate racing retire/unretire, " + rounds + " rounds ("
+                + broken + " inconsistent)");
+    }
+
+    // --- DEADLINE SHEDDING ---
+
+    /**
+     * FIFO policy, one dock: a refuel the tank cannot cover heads the queue
+     * with a deadline and holds back a small one behind it. Once the
+     * deadline passes the big one must give up and the small one dock.
+     */
+    private static void spaceDeadlineShedding() throws Exception {
+        SpaceFuelStation station = new SpaceFuelStation(1, 1000, 1000, 2, 1, SchedulingPolicy.FIFO);
+        boolean[] big = new boolean[1], small = new boolean[1];
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        Thread head = Thread.ofPlatform().start(() -> {
+            try {
+                big[0] = station.refuelVehicle(1, "Ordinary", 900, 900, 900, 900, 0, deadline);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        while (station.snapshot().queuedRefuels() == 0 && head.isAlive()) Thread.sleep(1);
+        Thread behind = Thread.ofPlatform().start(() -> {
+            try {
+                small[0] = station.refuelVehicle(2, "Ordinary", 10, 10, 10, 10, 0, SpaceFuelStation.NO_DEADLINE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        behind.join(5_000);
+        head.join(5_000);
+        boolean prompt = System.nanoTime() - deadline < TimeUnit.SECONDS.toNanos(2);
+        check(!big[0] && small[0] && prompt && station.metrics().vehicle("Ordinary").timeouts.sum() == 1,
+                "SpaceFuelStation: a waiter past its deadline leaves and the one it held back docks");
+        behind.interrupt();
+        head.interrupt();
+    }
+
+    /**
+     * One dock, held: a refuel with a timeout must give up and leave the
+     * queue, and the next vehicle must get the dock once it is released.
+     */
+    private static void fuelDeadlineShedding() throws Exception {
+        for (FuelStation.WakeupMode mode : FuelStation.WakeupMode.values()) {
+            FuelStation station = new FuelStation(1, 1000, 1000, 500, 500, mode);
+            station.requestFuel(10, 10, "holder");
+            long t0 = System.nanoTime();
+            boolean timedOut = !station.requestFuel(10, 10, "late", 50, TimeUnit.MILLISECONDS);
+            long waited = System.nanoTime() - t0;
+            boolean left = station.snapshot().waiting() == 0;
+            station.releaseDock("holder");
+            boolean next = station.requestFuel(10, 10, "next", 1, TimeUnit.SECONDS);
+            check(timedOut && left && next && waited >= TimeUnit.MILLISECONDS.toNanos(50)
+                    && station.metrics().vehicle("Regular").timeouts.sum() == 1,
+                    "FuelStation (" + mode + "): a refuel past its timeout leaves the queue, the next one docks");
+        }
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("Usage: java StationChecks [seed=42] [rounds=50000]");
+    }
+}
@@ -0,0 +1,231 @@
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One point of a ScalabilitySweep.
+ *
+ * Runs the threaded simulation of one station with its own copy of the
+ * vehicle loops (same trips, fuel amounts and timing ranges as
+ * FuelStationSimulation and SimulationRunner; all times multiplied by scale)
+ * and prints one CSV row. Every vehicle is a virtual thread; the sweep starts
+ * each point in a fresh JVM with the carrier pool set to the point's thread
+ * count, which is how a whole fleet is squeezed onto a given number of threads.
+ *
+ * A point that is still running after timeout ms is cut off: every vehicle is
+ * interrupted and the ones that had not finished count as stalled.
+ *
+ * Usage: java SweepPoint [key=value]...
+ * Keys: station (fuel|fuel-handoff|space), docks, tank, regulars, supplies,
+ * trips, threads, scale, timeout, seed
+ */
+public class SweepPoint {
+
+    static final String HEADER = "station,docks,tank,regulars,supplies,trips,threads,visits,wall_ms,visits_per_s,"
+            + "wait_p50_us,wait_p99_us,dock_util,aborts,stalled";
+
+    // --- POINT PARAMETERS ---
+    static String station = "space";
+    static int docks = 3;
+    static int tank = 1000;
+    static int regulars = 5;
+    static int supplies = 2;
+    static int trips = 3;
+    static int threads = 1; // reported only; the carrier pool is set by the launching JVM flags
+    static double scale = 0.01;
+    static long timeoutMs = 30_000;
+    static long seed = 42;
+
+    private static final LongAdder visits = new LongAdder();
+    private static final LongAdder aborts = new LongAdder();
+
+    /** One vehicle's whole run; returns normally once it is done or turned away. */
+    interface Vehicle {
+        void run(int id, Random rng) throws InterruptedException;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                usage("Malformed argument: " + arg);
+                return;
+            }
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            try {
+                switch (key) {
+                    case "station" -> station = value;
+                    case "docks" -> docks = Integer.parseInt(value);
+                    case "tank" -> tank = Integer.parseInt(value);
+                    case "regulars" -> regulars = Integer.parseInt(value);
+                    case "supplies" -> supplies = Integer.parseInt(value);
+                    case "trips" -> trips = Integer.parseInt(value);
+                    case "threads" -> threads = Integer.parseInt(value);
+                    case "scale" -> scale = Double.parseDouble(value);
+                    case "timeout" -> timeoutMs = Long.parseLong(value);
+                    case "seed" -> seed = Long.parseLong(value);
+                    default -> {
+                        usage("Unknown parameter: " + key);
+                        return;
+                    }
+                }
+            } catch (NumberFormatException e) {
+                usage("Invalid numeric value for " + key + ": " + value);
+                return;
+            }
+        }
+
+        Logger.setLevel(Logger.Level.OFF);
+
+        StationMetrics metrics;
+        Vehicle regular, supply;
+        Runnable retireRegular = () -> { }, retireSupply = () -> { };
+        switch (station) {
+            case "fuel", "fuel-handoff" -> {
+                // Sizing rules from FuelStationSimulation.
+                int demand = Math.max(1, tank / 20);
+                int ret = Math.max(1, demand / 2);
+                int deposit = Math.max(1, tank / 3);
+                int initial = tank;
+                if (supplies * trips > 0) {
+                    deposit = Math.min(deposit, Math.max(1, regulars * trips * demand / (supplies * trips)));
+                    initial = Math.max(0, tank - deposit);
+                }
+                FuelStation fs = new FuelStation(docks, tank, tank, initial, initial,
+                        station.equals("fuel") ? FuelStation.WakeupMode.BROADCAST : FuelStation.WakeupMode.HANDOFF);
+                metrics = fs.metrics();
+                int dep = deposit;
+                regular = (id, rng) -> {
+                    String vid = "Vehicle-" + id;
+                    for (int t = 0; t < trips; t++) {
+                        sleep(rng.nextInt(1000) + 100);
+                        if (!fs.requestFuel(demand, demand, vid)) return;
+                        try {
+                            sleep(rng.nextInt(300) + 50);
+                        } finally {
+                            fs.releaseDock(vid);
+                        }
+                        visits.increment();
+                    }
+                };
+                supply = (id, rng) -> {
+                    String vid = "SupplyVehicle-" + id;
+                    for (int t = 0; t < trips; t++) {
+                        sleep(rng.nextInt(1000) + 200);
+                        if (!fs.depositFuel(dep, dep, vid, ret, ret)) return;
+                        try {
+                            sleep(rng.nextInt(300) + 100 + 50);
+                            if (!fs.requestFuel(ret, ret, vid)) return;
+                            sleep(rng.nextInt(300) + 50);
+                        } finally {
+                            fs.releaseDock(vid);
+                        }
+                        visits.increment();
+                    }
+                };
+            }
+            case "space" -> {
+                SpaceFuelStation ss = new SpaceFuelStation(docks, tank, tank, regulars, supplies);
+                metrics = ss.metrics();
+                regular = (id, rng) -> {
+                    for (int t = 0; t < trips; t++) {
+                        int travel = 400 + rng.nextInt(600);
+                        int dock = 50 + rng.nextInt(150);
+                        int fuel = 50 + rng.nextInt(150);
+                        sleep(travel);
+                        if (!ss.refuelVehicle(id, "Ordinary", fuel, fuel, scaled(dock))) {
+                            aborts.increment();
+                            return;
+                        }
+                        visits.increment();
+                    }
+                };
+                supply = (id, rng) -> {
+                    for (int t = 0; t < trips; t++) {
+                        int travel = 800 + rng.nextInt(700);
+                        int dock = 100 + rng.nextInt(200);
+                        sleep(travel);
+                        if (!ss.supplyStation(id, 600, 600, 50, 50, scaled(dock))) {
+                            aborts.increment();
+                            return;
+                        }
+                        visits.increment();
+                    }
+                };
+                retireRegular = ss::unregisterConsumer;
+                retireSupply = ss::unregisterProducer;
+            }
+            default -> {
+                usage("Unknown station: " + station);
+                return;
+            }
+        }
+
+        int vehicles = regulars + supplies;
+        Thread[] fleet = new Thread[vehicles];
+        boolean[] finished = new boolean[vehicles];
+        long start = System.nanoTime();
+        for (int i = 0; i < vehicles; i++) {
+            final int slot = i;
+            final boolean isSupply = i >= regulars;
+            final int id = isSupply ? i - regulars + 1 : i + 1;
+            final Vehicle body = isSupply ? supply : regular;
+            final Runnable retire = isSupply ? retireSupply : retireRegular;
+            fleet[i] = Thread.ofVirtual().unstarted(() -> {
+                try {
+                    body.run(id, new Random(seed * 31 + slot));
+                    finished[slot] = !Thread.currentThread().isInterrupted();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    retire.run();
+                }
+            });
+        }
+        for (Thread t : fleet) t.start();
+
+        long deadline = start + timeoutMs * 1_000_000;
+        for (Thread t : fleet) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0 || !t.join(Duration.ofNanos(left))) break;
+        }
+        long wallNs = System.nanoTime() - start;
+        for (Thread t : fleet) t.interrupt();
+        for (Thread t : fleet) t.join();
+
+        int stalled = 0;
+        for (boolean done : finished) {
+            if (!done) stalled++;
+        }
+        LatencyHistogram waits = new LatencyHistogram();
+        for (StationMetrics.VehicleStats stats : metrics.vehicles().values()) {
+            waits.add(stats.wait);
+        }
+        long[] p = waits.percentiles(0.50, 0.99);
+        double wallMs = wallNs / 1e6;
+        System.out.printf(Locale.ROOT, "%s,%d,%d,%d,%d,%d,%d,%d,%.1f,%.2f,%.1f,%.1f,%.4f,%d,%d%n",
+                station, docks, tank, regulars, supplies, trips, threads, visits.sum(), wallMs,
+                visits.sum() * 1000.0 / Math.max(wallMs, 0.001), p[0] / 1e3, p[1] / 1e3,
+                metrics.dockUtilization(docks), aborts.sum(), stalled);
+    }
+
+    /** Scaled simulation time in whole ms, for the stations' own dock sleeps. */
+    private static int scaled(int ms) {
+        return (int) Math.round(ms * scale);
+    }
+
+    private static void sleep(int ms) throws InterruptedException {
+        long nanos = Math.round(ms * scale * 1_000_000);
+        if (nanos > 0) {
+            Thread.sleep(Duration.ofNanos(nanos));
+        }
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("Usage: java SweepPoint [station=fuel|fuel-handoff|space] [docks=3] [tank=1000] [regulars=5]"
+                + " [supplies=2] [trips=3] [threads=1] [scale=0.01] [timeout=30000] [seed=42]");
+    }
+}
@@ -0,0 +1,195 @@
+import java.nio.file.Path;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Seeded synthetic workload traces for TraceReplay.
+ *
+ * fleet: closed loop, the simulations' vehicles as if the station never made
+ * anyone wait. Each vehicle alternates travel and docking with the timing and
+ * fuel ranges of SimulationRunner (profile=space) or FuelStationSimulation
+ * (profile=fuel), and the vehicles' arrivals are merged in time order.
+ *
+ * poisson: open loop, arrivals at a fixed mean rate for a fixed duration,
+ * each one a supply ship with probability supplies / (regulars + supplies)
+ * and otherwise a regular vehicle, drawn uniformly from the fleet. Demands
+ * and dock times come from the same profile.
+ *
+ * The same arguments and seed always write the same file.
+ *
+ * Usage: java TraceGen out=FILE [key=value]...
+ * Keys: mode (fleet|poisson), profile (space|fuel), regulars, supplies, trips,
+ * tank, rate, duration, seed
+ */
+public class TraceGen {
+
+    // --- PARAMETERS ---
+    static String out = null;
+    static String mode = "fleet";
+    static String profile = "space";
+    static int regulars = 5;
+    static int supplies = 2;
+    static int trips = 3;
+    static int tank = 1000;
+    static double rate = 20; // poisson: arrivals per second
+    static long durationMs = 10_000; // poisson
+    static long seed = 42;
+
+    /** One drawn visit; travel is the time spent getting to the station. */
+    private static final class Visit {
+        int travelMs, n, q, retN, retQ, dockMs, returnDockMs;
+
+        /** Dock time of the whole visit, including the FuelStation supply turnaround. */
+        int stayMs() {
+            return profile.equals("fuel") && returnDockMs > 0 ? dockMs + 50 + returnDockMs : dockMs;
+        }
+    }
+
+    /** A fleet vehicle waiting for its next arrival. */
+    private record Pending(long atNanos, int kind, int id, int tripsLeft, Random rng, Visit visit) {
+    }
+
+    public static void main(String[] args) {
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                usage("Malformed argument: " + arg);
+                return;
+            }
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            try {
+                switch (key) {
+                    case "out" -> out = value;
+                    case "mode" -> mode = value;
+                    case "profile" -> profile = value;
+                    case "regulars" -> regulars = Integer.parseInt(value);
+                    case "supplies" -> supplies = Integer.parseInt(value);
+                    case "trips" -> trips = Integer.parseInt(value);
+                    case "tank" -> tank = Integer.parseInt(value);
+                    case "rate" -> rate = Double.parseDouble(value);
+                    case "duration" -> durationMs = Long.parseLong(value);
+                    case "seed" -> seed = Long.parseLong(value);
+                    default -> {
+                        usage("Unknown parameter: " + key);
+                        return;
+                    }
+                }
+            } catch (NumberFormatException e) {
+                usage("Invalid numeric value for " + key + ": " + value);
+                return;
+            }
+        }
+        if (out == null) {
+            usage("Missing out=FILE");
+            return;
+        }
+        if (!profile.equals("space") && !profile.equals("fuel")) {
+            usage("Unknown profile: " + profile);
+            return;
+        }
+        if (regulars < 0 || supplies < 0 || regulars + supplies == 0 || trips < 0 || tank <= 0 || rate <= 0) {
+            usage("Invalid configuration: need at least one vehicle and positive tank and rate.");
+            return;
+        }
+
+        long written;
+        try (WorkloadTrace.Recorder trace = new WorkloadTrace.Recorder(Path.of(out))) {
+            written = switch (mode) {
+                case "fleet" -> fleet(trace);
+                case "poisson" -> poisson(trace);
+                default -> {
+                    usage("Unknown mode: " + mode);
+                    yield -1;
+                }
+            };
+        }
+        if (written >= 0) {
+            System.out.printf("Wrote %d arrivals to %s (%s, profile %s, seed %d)%n", written, out, mode, profile, seed);
+        }
+    }
+
+    private static long fleet(WorkloadTrace.Recorder trace) {
+        PriorityQueue<Pending> next = new PriorityQueue<>((a, b) -> Long.compare(a.atNanos, b.atNanos));
+        for (int slot = 0; slot < regulars + supplies; slot++) {
+            boolean isSupply = slot >= regulars;
+            int kind = isSupply ? WorkloadTrace.SUPPLY : WorkloadTrace.REFUEL;
+            int id = isSupply ? slot - regulars + 1 : slot + 1;
+            Random rng = new Random(seed * 31 + slot);
+            if (trips > 0) {
+                Visit v = draw(kind, rng);
+                next.add(new Pending(v.travelMs * 1_000_000L, kind, id, trips, rng, v));
+            }
+        }
+        long written = 0;
+        for (Pending p; (p = next.poll()) != null; written++) {
+            Visit v = p.visit;
+            trace.append(p.atNanos, p.kind, p.id, v.n, v.q, v.retN, v.retQ, v.dockMs, v.returnDockMs);
+            if (p.tripsLeft > 1) {
+                Visit following = draw(p.kind, p.rng);
+                long at = p.atNanos + (v.stayMs() + (long) following.travelMs) * 1_000_000L;
+                next.add(new Pending(at, p.kind, p.id, p.tripsLeft - 1, p.rng, following));
+            }
+        }
+        return written;
+    }
+
+    private static long poisson(WorkloadTrace.Recorder trace) {
+        Random rng = new Random(seed);
+        double meanGapNanos = 1e9 / rate;
+        double supplyShare = supplies / (double) (regulars + supplies);
+        long end = durationMs * 1_000_000L;
+        long written = 0;
+        for (double at = -Math.log(1 - rng.nextDouble()) * meanGapNanos; at < end;
+                at += -Math.log(1 - rng.nextDouble()) * meanGapNanos, written++) {
+            boolean isSupply = rng.nextDouble() < supplyShare;
+            int kind = isSupply ? WorkloadTrace.SUPPLY : WorkloadTrace.REFUEL;
+            int id = 1 + rng.nextInt(isSupply ? supplies : regulars);
+            Visit v = draw(kind, rng);
+            trace.append((long) at, kind, id, v.n, v.q, v.retN, v.retQ, v.dockMs, v.returnDockMs);
+        }
+        return written;
+    }
+
+    /** The simulations' ranges, drawn in the order the vehicles draw them. */
+    private static Visit draw(int kind, Random rng) {
+        Visit v = new Visit();
+        if (profile.equals("space")) {
+            if (kind == WorkloadTrace.REFUEL) {
+                v.travelMs = 400 + rng.nextInt(600);
+                v.dockMs = 50 + rng.nextInt(150);
+                v.n = v.q = 50 + rng.nextInt(150);
+            } else {
+                v.travelMs = 800 + rng.nextInt(700);
+                v.dockMs = v.returnDockMs = 100 + rng.nextInt(200);
+                v.n = v.q = 600;
+                v.retN = v.retQ = 50;
+            }
+            return v;
+        }
+        // Sizing rules from FuelStationSimulation.
+        int demand = Math.max(1, tank / 20);
+        if (kind == WorkloadTrace.REFUEL) {
+            v.travelMs = rng.nextInt(1000) + 100;
+            v.dockMs = rng.nextInt(300) + 50;
+            v.n = v.q = demand;
+        } else {
+            int deposit = Math.max(1, tank / 3);
+            if (supplies * trips > 0) {
+                deposit = Math.min(deposit, Math.max(1, regulars * trips * demand / (supplies * trips)));
+            }
+            v.travelMs = rng.nextInt(1000) + 200;
+            v.dockMs = rng.nextInt(300) + 100;
+            v.returnDockMs = rng.nextInt(300) + 50;
+            v.n = v.q = deposit;
+            v.retN = v.retQ = Math.max(1, demand / 2);
+        }
+        return v;
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("Usage: java TraceGen out=FILE [mode=fleet|poisson] [profile=space|fuel] [regulars=5]"
+                + " [supplies=2] [trips=3] [tank=1000] [rate=20] [duration=10000] [seed=42]");
+    }
+}
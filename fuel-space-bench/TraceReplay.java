@@ -0,0 +1,278 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replays a workload trace (WorkloadTrace; recorded with -Dstation.record or
+ * written by TraceGen) against either station.
+ *
+ * One thread reads the trace through its memory mapping and hands each
+ * arrival, at its recorded offset divided by speed, to the virtual thread of
+ * the vehicle that made it. A vehicle is never at the station twice at once:
+ * if its previous visit is still running when the next arrival is due, the
+ * arrival starts late and the delay is reported as start lag. Dock times are
+ * divided by speed too; speed=max drops every wait but the station's own.
+ *
+ * A first pass over the trace counts each vehicle's arrivals, so
+ * SpaceFuelStation knows its consumers and producers and each vehicle
+ * unregisters after its last visit, as it would in the simulation.
+ * FuelStation starts with room for the largest deposit, like
+ * FuelStationSimulation.
+ *
+ * A replay still running after timeout ms is cut off; vehicles that had not
+ * finished count as stalled.
+ *
+ * Usage: java TraceReplay trace=FILE [key=value]...
+ * Keys: station (fuel|fuel-handoff|space), docks, tank, speed, policy, timeout
+ */
+public class TraceReplay {
+
+    // --- PARAMETERS ---
+    static String trace = null;
+    static String station = "space";
+    static int docks = 3;
+    static int tank = 2000;
+    static double speed = 1;
+    static SchedulingPolicy policy = SchedulingPolicy.FIRST_FIT;
+    static long timeoutMs = 60_000;
+
+    /** Arrivals a vehicle may have pending before the reader waits for it. */
+    private static final int BACKLOG = 64;
+
+    private static final LongAdder visits = new LongAdder();
+    private static final LongAdder aborts = new LongAdder();
+    private static final LongAdder finished = new LongAdder();
+    private static final LatencyHistogram startLag = new LatencyHistogram();
+
+    private record Arrival(long dueNanos, int n, int q, int retN, int retQ, int dockMs, int returnDockMs) {
+    }
+
+    /** One visit at the chosen station; false if the station turned the vehicle away. */
+    interface Visit {
+        boolean run(int kind, int id, Arrival a) throws InterruptedException;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                usage("Malformed argument: " + arg);
+                return;
+            }
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            try {
+                switch (key) {
+                    case "trace" -> trace = value;
+                    case "station" -> station = value;
+                    case "docks" -> docks = Integer.parseInt(value);
+                    case "tank" -> tank = Integer.parseInt(value);
+                    case "speed" -> speed = value.equals("max") ? Double.POSITIVE_INFINITY : Double.parseDouble(value);
+                    case "policy" -> policy = SchedulingPolicy.parse(value);
+                    case "timeout" -> timeoutMs = Long.parseLong(value);
+                    default -> {
+                        usage("Unknown parameter: " + key);
+                        return;
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                usage("Invalid value for " + key + ": " + value);
+                return;
+            }
+        }
+        if (trace == null) {
+            usage("Missing trace=FILE");
+            return;
+        }
+        if (docks <= 0 || tank <= 0 || !(speed > 0)) {
+            usage("Invalid configuration: use positive docks, tank and speed.");
+            return;
+        }
+
+        // First pass: arrivals per vehicle, fleet size and the largest deposit.
+        Map<Long, int[]> arrivals = new HashMap<>();
+        int consumers = 0, producers = 0, maxDeposit = 0;
+        long records;
+        try (WorkloadTrace.Reader r = new WorkloadTrace.Reader(Path.of(trace))) {
+            records = r.records();
+            while (r.next()) {
+                if (r.kind() == WorkloadTrace.SUPPLY) {
+                    maxDeposit = Math.max(maxDeposit, Math.max(r.n(), r.q()));
+                }
+                int[] count = arrivals.computeIfAbsent(key(r.kind(), r.vehicle()), k -> new int[1]);
+                if (count[0]++ > 0) continue;
+                if (r.kind() == WorkloadTrace.SUPPLY) {
+                    producers++;
+                } else {
+                    consumers++;
+                }
+            }
+        }
+
+        Logger.setLevel(Logger.Level.OFF);
+
+        StationMetrics metrics;
+        Visit visit;
+        SpaceFuelStation space = null;
+        switch (station) {
+            case "fuel", "fuel-handoff" -> {
+                int initial = Math.max(0, tank - maxDeposit);
+                FuelStation fs = new FuelStation(docks, tank, tank, initial, initial,
+                        station.equals("fuel") ? FuelStation.WakeupMode.BROADCAST : FuelStation.WakeupMode.HANDOFF);
+                metrics = fs.metrics();
+                visit = (kind, id, a) -> {
+                    if (kind == WorkloadTrace.REFUEL) {
+                        String vid = "Vehicle-" + id;
+                        if (!fs.requestFuel(a.n, a.q, vid)) return false;
+                        try {
+                            sleep(a.dockMs);
+                        } finally {
+                            fs.releaseDock(vid);
+                        }
+                        return true;
+                    }
+                    String vid = "SupplyVehicle-" + id;
+                    if (!fs.depositFuel(a.n, a.q, vid, a.retN, a.retQ)) return false;
+                    try {
+                        sleep(a.dockMs + 50);
+                        if (!fs.requestFuel(a.retN, a.retQ, vid)) return false;
+                        sleep(a.returnDockMs);
+                    } finally {
+                        fs.releaseDock(vid);
+                    }
+                    return true;
+                };
+            }
+            case "space" -> {
+                SpaceFuelStation ss = new SpaceFuelStation(docks, tank, tank, consumers, producers, policy);
+                space = ss;
+                metrics = ss.metrics();
+                visit = (kind, id, a) -> kind == WorkloadTrace.REFUEL
+                        ? ss.refuelVehicle(id, "Ordinary", a.n, a.q, scaled(a.dockMs))
+                        : ss.supplyStation(id, a.n, a.q, a.retN, a.retQ, scaled(a.dockMs));
+            }
+            default -> {
+                usage("Unknown station: " + station);
+                return;
+            }
+        }
+
+        Map<Long, BlockingQueue<Arrival>> inboxes = new HashMap<>();
+        List<Thread> fleet = new ArrayList<>();
+        SpaceFuelStation ss = space;
+        for (Map.Entry<Long, int[]> e : arrivals.entrySet()) {
+            int kind = (int) (e.getKey() >>> 32), id = (int) (long) e.getKey(), count = e.getValue()[0];
+            BlockingQueue<Arrival> inbox = new ArrayBlockingQueue<>(BACKLOG);
+            inboxes.put(e.getKey(), inbox);
+            fleet.add(Thread.ofVirtual().start(() -> {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        Arrival a = inbox.take();
+                        startLag.record(Math.max(0, System.nanoTime() - a.dueNanos));
+                        boolean served = visit.run(kind, id, a);
+                        if (Thread.currentThread().isInterrupted()) return; // cut off by the timeout
+                        if (served) {
+                            visits.increment();
+                        } else {
+                            aborts.increment();
+                        }
+                    }
+                    finished.increment();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (ss != null) {
+                        if (kind == WorkloadTrace.SUPPLY) {
+                            ss.unregisterProducer();
+                        } else {
+                            ss.unregisterConsumer();
+                        }
+                    }
+                }
+            }));
+        }
+
+        // Second pass: hand out arrivals on time.
+        long start = System.nanoTime();
+        Thread reader = Thread.ofVirtual().start(() -> {
+            try (WorkloadTrace.Reader r = new WorkloadTrace.Reader(Path.of(trace))) {
+                while (r.next()) {
+                    long due = start + (long) (r.atNanos() / speed);
+                    long ahead = due - System.nanoTime();
+                    if (ahead > 0) {
+                        Thread.sleep(Duration.ofNanos(ahead));
+                    }
+                    inboxes.get(key(r.kind(), r.vehicle())).put(new Arrival(due, r.n(), r.q(),
+                            r.returnN(), r.returnQ(), r.dockMs(), r.returnDockMs()));
+                }
+            } catch (IOException e) {
+                System.err.println("Trace read failed: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // FuelStation never turns anyone away, so a trace it cannot serve would wait forever.
+        long deadline = start + timeoutMs * 1_000_000;
+        for (Thread t : fleet) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0 || !t.join(Duration.ofNanos(left))) break;
+        }
+        long wallNs = System.nanoTime() - start;
+        reader.interrupt();
+        for (Thread t : fleet) t.interrupt();
+        reader.join();
+        for (Thread t : fleet) t.join();
+
+        LatencyHistogram waits = new LatencyHistogram();
+        for (StationMetrics.VehicleStats stats : metrics.vehicles().values()) {
+            waits.add(stats.wait);
+        }
+        long[] w = waits.percentiles(0.50, 0.99);
+        long[] lag = startLag.percentiles(0.50, 0.99);
+        double wallMs = wallNs / 1e6;
+        System.out.printf(Locale.ROOT, "Trace:            %s (%d arrivals, %d consumers, %d producers)%n",
+                trace, records, consumers, producers);
+        System.out.printf(Locale.ROOT, "Station:          %s, %d docks, tank %d, speed %s%n",
+                station, docks, tank, Double.isInfinite(speed) ? "max" : speed + "x");
+        System.out.printf(Locale.ROOT, "Visits:           %d in %.1f ms (%.1f per second)%n",
+                visits.sum(), wallMs, visits.sum() * 1000.0 / Math.max(wallMs, 0.001));
+        System.out.printf(Locale.ROOT, "Aborted:          %d%n", aborts.sum());
+        System.out.printf(Locale.ROOT, "Stalled:          %d vehicles cut off by the %d ms timeout%n",
+                fleet.size() - finished.sum(), timeoutMs);
+        System.out.printf(Locale.ROOT, "Wait p50/p99:     %.1f / %.1f ms%n", w[0] / 1e6, w[1] / 1e6);
+        System.out.printf(Locale.ROOT, "Start lag p50/99: %.1f / %.1f ms (arrivals held up by the same vehicle)%n",
+                lag[0] / 1e6, lag[1] / 1e6);
+        System.out.printf(Locale.ROOT, "Dock utilization: %.1f%%%n", 100 * metrics.dockUtilization(docks));
+    }
+
+    private static long key(int kind, int vehicle) {
+        return (long) kind << 32 | (vehicle & 0xFFFF_FFFFL);
+    }
+
+    /** Trace time in whole ms at replay speed, for the stations' own dock sleeps. */
+    private static int scaled(int ms) {
+        return (int) Math.round(ms / speed);
+    }
+
+    private static void sleep(int ms) throws InterruptedException {
+        long nanos = Math.round(ms * 1_000_000 / speed);
+        if (nanos > 0) {
+            Thread.sleep(Duration.ofNanos(nanos));
+        }
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("Usage: java TraceReplay trace=FILE [station=fuel|fuel-handoff|space] [docks=3] [tank=2000]"
+                + " [speed=1|N|max] [policy=first-fit|fifo|shortest|best-fit|balanced|aging[:ms]] [timeout=60000]");
+    }
+}
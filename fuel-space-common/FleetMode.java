@@ -0,0 +1,34 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * How vehicle tasks are mapped onto threads.
+ * PLATFORM: one OS thread per vehicle (the original behaviour).
+ * VIRTUAL: one virtual thread per vehicle, so fleets of 100k+ vehicles only
+ * cost heap, not OS threads. The stations block on ReentrantLock conditions
+ * rather than monitors, so waiting vehicles unmount instead of pinning a
+ * carrier thread.
+ */
+public enum FleetMode {
+    PLATFORM,
+    VIRTUAL;
+
+    public ThreadFactory threadFactory() {
+        if (this == VIRTUAL) {
+            return Thread.ofVirtual().name("vehicle-", 1).factory();
+        }
+        return Thread.ofPlatform().name("vehicle-", 1).factory();
+    }
+
+    /**
+     * One thread per submitted vehicle; close() waits for the whole fleet.
+     */
+    public ExecutorService newExecutor() {
+        return Executors.newThreadPerTaskExecutor(threadFactory());
+    }
+
+    public static FleetMode parse(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,122 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets.
+ *
+ * Values below 128 ns get a bucket each; above that every power of two is
+ * split into 64 equal sub-buckets, so any recorded value is reported within
+ * 1/64 (about 1.6%) of its true value. Recording is a handful of atomic adds
+ * and never blocks, so it is safe to call from inside a station lock.
+ * Values are clamped to about 4.8 hours.
+ *
+ * Readers work on a copy of the buckets and may miss samples recorded while
+ * they copy; the numbers are exact once recording has stopped.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 7;
+    private static final int HALF = 1 << (SUB_BITS - 1);
+    private static final int MAX_BITS = 44;
+    private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(index(MAX_VALUE) + 1);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long v = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(index(v));
+        sum.add(v);
+        long m;
+        while (v > (m = max.get()) && !max.compareAndSet(m, v)) {
+            // lost a race with a bigger sample; re-check
+        }
+    }
+
+    /** Adds every sample of other, e.g. to combine per-type histograms. */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length(); i++) {
+            long n = other.counts.get(i);
+            if (n != 0) {
+                counts.addAndGet(i, n);
+            }
+        }
+        sum.add(other.sum.sum());
+        long v = other.max.get(), m;
+        while (v > (m = max.get()) && !max.compareAndSet(m, v)) {
+            // as in record
+        }
+    }
+
+    private static int index(long v) {
+        if (v < 2 * HALF) {
+            return (int) v;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS + 1;
+        return shift * HALF + (int) (v >>> shift);
+    }
+
+    /** Largest value that falls into bucket i. */
+    private static long highestIn(int i) {
+        if (i < 2 * HALF) {
+            return i;
+        }
+        int shift = i / HALF - 1;
+        long sub = i % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            n += counts.get(i);
+        }
+        return n;
+    }
+
+    /** Total of all recorded values, in nanoseconds. */
+    public long sum() {
+        return sum.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = count();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /** Value at each quantile (0..1), in nanoseconds; one bucket copy for all of them. */
+    public long[] percentiles(double... quantiles) {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        long top = max.get();
+        long[] out = new long[quantiles.length];
+        for (int q = 0; q < quantiles.length; q++) {
+            if (total == 0) {
+                continue;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantiles[q] * total));
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    out[q] = Math.min(highestIn(i), top);
+                    break;
+                }
+            }
+        }
+        return out;
+    }
+
+    public long percentile(double quantile) {
+        return percentiles(quantile)[0];
+    }
+}
@@ -0,0 +1,95 @@
+import java.io.PrintStream;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contention profile of one station lock, kept only with
+ * -Dstation.lockprofile=true (create returns null otherwise, and the station
+ * then measures nothing).
+ *
+ * Per critical section, named by the station: how long callers waited to
+ * acquire the lock, how many found it taken, and how long they held it.
+ * Time parked on a condition does not count as held. A section nested in
+ * another (such as a wakeup pass) records only its hold time, which is also
+ * part of its caller's. For the waiters it counts wakeups, futile ones (woken
+ * but not admitted, so parked again) and how many waiters each wakeup pass
+ * had to consider. Recording is lock-free, like StationMetrics.
+ */
+public final class LockProfile {
+
+    /** Acquisition and hold times of one critical section. */
+    public static final class Section {
+        public final LatencyHistogram acquire = new LatencyHistogram();
+        public final LatencyHistogram hold = new LatencyHistogram();
+        public final LongAdder contended = new LongAdder();
+    }
+
+    private static final double[] DUMP_QUANTILES = { 0.50, 0.99 };
+
+    private final String name;
+    private final long createdNanos = System.nanoTime();
+    private final Map<String, Section> sections = new ConcurrentHashMap<>();
+
+    public final LongAdder wakeups = new LongAdder();
+    public final LongAdder futileWakeups = new LongAdder();
+    /** Waiters considered per wakeup pass; a count, not nanoseconds. */
+    public final LatencyHistogram scanLength = new LatencyHistogram();
+
+    private LockProfile(String name) {
+        this.name = name;
+    }
+
+    /** A profile for the named station, or null unless -Dstation.lockprofile=true. */
+    public static LockProfile create(String name) {
+        return Boolean.getBoolean("station.lockprofile") ? new LockProfile(name) : null;
+    }
+
+    /** The section of that name, created on first use. */
+    public Section section(String sectionName) {
+        Section section = sections.get(sectionName);
+        return section != null ? section : sections.computeIfAbsent(sectionName, s -> new Section());
+    }
+
+    public Map<String, Section> sections() {
+        return Map.copyOf(sections);
+    }
+
+    /**
+     * One row per section, the longest total hold first: "held %" is the
+     * share of the station's lifetime that section kept the lock, so the
+     * top rows are the ones that limit how far the station scales.
+     */
+    public void dump(PrintStream out) {
+        long up = Math.max(1, System.nanoTime() - createdNanos);
+        out.printf("--- Lock profile: %s (up %.1f ms) ---%n", name, up / 1e6);
+        out.printf("  %-18s %8s %6s %11s %11s %11s %11s %11s %11s %7s%n", "section", "count", "cont%",
+                "acq p50 us", "acq p99 us", "acq max us", "hold p50 us", "hold p99 us", "hold max us", "held %");
+        List<Map.Entry<String, Section>> rows = sections.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, Section> e) -> e.getValue().hold.sum())
+                        .reversed())
+                .toList();
+        for (Map.Entry<String, Section> e : rows) {
+            Section s = e.getValue();
+            long[] h = s.hold.percentiles(DUMP_QUANTILES);
+            String acquired;
+            if (s.acquire.count() == 0) {
+                acquired = String.format("%6s %11s %11s %11s", "-", "-", "-", "-"); // nested: never takes the lock
+            } else {
+                long[] a = s.acquire.percentiles(DUMP_QUANTILES);
+                acquired = String.format("%6.1f %11.1f %11.1f %11.1f", 100.0 * s.contended.sum() / s.acquire.count(),
+                        a[0] / 1e3, a[1] / 1e3, s.acquire.max() / 1e3);
+            }
+            out.printf("  %-18s %8d %s %11.1f %11.1f %11.1f %7.2f%n", e.getKey(), s.hold.count(), acquired,
+                    h[0] / 1e3, h[1] / 1e3, s.hold.max() / 1e3, 100.0 * s.hold.sum() / up);
+        }
+        long woken = wakeups.sum();
+        out.printf("  wakeups %d, futile %d (%.1f%%)%n", woken, futileWakeups.sum(),
+                100.0 * futileWakeups.sum() / Math.max(1, woken));
+        long[] scan = scanLength.percentiles(DUMP_QUANTILES);
+        out.printf("  waiters per wakeup pass: %d passes, mean %.1f, p50 %d, p99 %d, max %d%n", scanLength.count(),
+                scanLength.mean(), scan[0], scan[1], scanLength.max());
+    }
+}
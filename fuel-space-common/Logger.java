@@ -0,0 +1,299 @@
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous station logger.
+ *
+ * Callers publish events into a bounded lock-free ring buffer and return
+ * immediately; a single background thread formats and prints them. Numeric
+ * arguments are copied into preallocated slots as primitives and only turned
+ * into text on the writer thread, so logging from inside a station lock costs
+ * a few stores and never touches the console. If the buffer is full the caller
+ * waits for the writer to free a slot, so no line is ever lost; with
+ * -Dstation.log.full=drop it drops the event instead and never blocks, and the
+ * drops are reported on stderr as they happen and once more at exit.
+ *
+ * Templates use {} for each numeric argument. The level comes from
+ * -Dstation.log=OFF|WARN|INFO|DEBUG (default INFO); disabled levels return
+ * before touching the buffer.
+ */
+public final class Logger {
+    public enum Level {
+        OFF, WARN, INFO, DEBUG
+    }
+
+    private static final int MAX_ARGS = 8;
+
+    /** One preallocated event; reused once the writer has consumed it. */
+    private static final class Slot {
+        Level level;
+        boolean stamped;
+        long timeMs;
+        int id;
+        String subject;
+        String template;
+        final long[] args = new long[MAX_ARGS];
+        int argCount;
+    }
+
+    private static final int capacity = Integer.highestOneBit(
+            Math.max(2, Integer.getInteger("station.log.buffer", 1 << 16)));
+    private static final int mask = capacity - 1;
+    private static final Slot[] slots = new Slot[capacity];
+    // Vyukov-style per-slot sequence: slot i is free for position p when seq == p,
+    // and holds a published event for position p when seq == p + 1.
+    private static final AtomicLongArray sequences = new AtomicLongArray(capacity);
+    private static final AtomicLong tail = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final boolean dropWhenFull = System.getProperty("station.log.full", "block")
+            .trim().equalsIgnoreCase("drop");
+    private static volatile long written = 0;
+    private static volatile Level level = parseLevel(System.getProperty("station.log", "INFO"));
+
+    static {
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+            sequences.set(i, i);
+        }
+        Thread writer = new Thread(Logger::drainLoop, "station-logger");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Logger::shutdown, "station-logger-flush"));
+    }
+
+    private Logger() {
+    }
+
+    public static boolean isEnabled(Level l) {
+        return l != Level.OFF && l.ordinal() <= level.ordinal();
+    }
+
+    public static void setLevel(Level l) {
+        level = l;
+    }
+
+    // --- VEHICLE TRACE ("[Type id] action") ---
+
+    public static void logTrace(int id, String type, String action) {
+        if (isEnabled(Level.INFO)) publish(Level.INFO, false, id, type, action, 0, 0, 0, 0, 0);
+    }
+
+    public static void logTrace(int id, String type, String template, long a) {
+        if (isEnabled(Level.INFO)) publish(Level.INFO, false, id, type, template, 1, a, 0, 0, 0);
+    }
+
+    public static void logTrace(int id, String type, String template, long a, long b) {
+        if (isEnabled(Level.INFO)) publish(Level.INFO, false, id, type, template, 2, a, b, 0, 0);
+    }
+
+    public static void logTrace(int id, String type, String template, long a, long b, long c) {
+        if (isEnabled(Level.INFO)) publish(Level.INFO, false, id, type, template, 3, a, b, c, 0);
+    }
+
+    // --- TIMESTAMPED EVENTS ("[ms ms] subject message") ---
+
+    public static void log(Level l, String subject, String template) {
+        if (isEnabled(l)) publish(l, true, 0, subject, template, 0, 0, 0, 0, 0);
+    }
+
+    public static void log(Level l, String subject, String template, long a) {
+        if (isEnabled(l)) publish(l, true, 0, subject, template, 1, a, 0, 0, 0);
+    }
+
+    public static void log(Level l, String subject, String template, long a, long b) {
+        if (isEnabled(l)) publish(l, true, 0, subject, template, 2, a, b, 0, 0);
+    }
+
+    public static void log(Level l, String subject, String template, long a, long b, long c) {
+        if (isEnabled(l)) publish(l, true, 0, subject, template, 3, a, b, c, 0);
+    }
+
+    public static void log(Level l, String subject, String template, long a, long b, long c, long d) {
+        if (isEnabled(l)) publish(l, true, 0, subject, template, 4, a, b, c, d);
+    }
+
+    /** Up to MAX_ARGS arguments; callers on hot paths should check isEnabled first. */
+    public static void log(Level l, String subject, String template, long... args) {
+        if (!isEnabled(l)) return;
+        long pos = claim();
+        if (pos < 0) return;
+        Slot slot = fill(pos, l, true, 0, subject, template);
+        int n = Math.min(args.length, MAX_ARGS);
+        System.arraycopy(args, 0, slot.args, 0, n);
+        slot.argCount = n;
+        commit(pos);
+    }
+
+    /** Events lost because the buffer was full (only with -Dstation.log.full=drop). */
+    public static long droppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Blocks until everything published so far has been printed.
+     */
+    public static void flush() {
+        long target = tail.get();
+        while (written < target) {
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    /** At exit: prints what is left, then the total of any dropped events. */
+    private static void shutdown() {
+        flush();
+        long drops = dropped.get();
+        if (drops > 0) {
+            System.err.println("[Logger] " + drops + " events dropped in total (buffer full)");
+            System.err.flush();
+        }
+    }
+
+    // --- RING BUFFER ---
+
+    private static void publish(Level l, boolean stamped, int id, String subject, String template, int argCount,
+            long a, long b, long c, long d) {
+        long pos = claim();
+        if (pos < 0) return;
+        Slot slot = fill(pos, l, stamped, id, subject, template);
+        long[] args = slot.args;
+        args[0] = a;
+        args[1] = b;
+        args[2] = c;
+        args[3] = d;
+        slot.argCount = argCount;
+        commit(pos);
+    }
+
+    /**
+     * Reserves the next position. If the buffer is full, waits for the writer,
+     * or with drop mode returns -1.
+     */
+    private static long claim() {
+        long pos = tail.get();
+        while (true) {
+            long seq = sequences.get((int) (pos & mask));
+            long diff = seq - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    return pos;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                if (dropWhenFull) {
+                    dropped.incrementAndGet();
+                    return -1;
+                }
+                // Back-pressure: the writer frees a slot per printed event.
+                LockSupport.parkNanos(50_000);
+                pos = tail.get();
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    private static Slot fill(long pos, Level l, boolean stamped, int id, String subject, String template) {
+        Slot slot = slots[(int) (pos & mask)];
+        slot.level = l;
+        slot.stamped = stamped;
+        slot.timeMs = stamped ? System.currentTimeMillis() : 0;
+        slot.id = id;
+        slot.subject = subject;
+        slot.template = template;
+        return slot;
+    }
+
+    private static void commit(long pos) {
+        sequences.set((int) (pos & mask), pos + 1);
+    }
+
+    // --- WRITER THREAD ---
+
+    private static void drainLoop() {
+        StringBuilder out = new StringBuilder(8192);
+        StringBuilder err = new StringBuilder(256);
+        long head = 0;
+        long reportedDrops = 0;
+        int idle = 0;
+
+        while (true) {
+            int idx = (int) (head & mask);
+            if (sequences.get(idx) == head + 1) {
+                Slot slot = slots[idx];
+                render(slot, slot.level == Level.WARN ? err : out);
+                slot.subject = null;
+                slot.template = null;
+                sequences.set(idx, head + capacity);
+                head++;
+                idle = 0;
+                if (out.length() < 8192 && err.length() < 8192) {
+                    continue;
+                }
+            }
+
+            long drops = dropped.get();
+            if (drops != reportedDrops) {
+                err.append("[Logger] dropped ").append(drops - reportedDrops).append(" events (buffer full)\n");
+                reportedDrops = drops;
+            }
+            if (out.length() > 0 || err.length() > 0) {
+                write(System.out, out);
+                write(System.err, err);
+            }
+            written = head;
+
+            if (sequences.get((int) (head & mask)) != head + 1) {
+                if (++idle < 64) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(200_000);
+                }
+            }
+        }
+    }
+
+    private static void write(PrintStream stream, StringBuilder text) {
+        if (text.length() == 0) return;
+        stream.print(text);
+        stream.flush();
+        text.setLength(0);
+    }
+
+    private static void render(Slot slot, StringBuilder sb) {
+        if (slot.stamped) {
+            sb.append('[').append(slot.timeMs).append(" ms] ");
+            if (slot.level == Level.WARN) sb.append("WARN: ");
+            if (slot.subject != null) sb.append(slot.subject).append(' ');
+        } else {
+            sb.append('[').append(slot.subject);
+            if (slot.id != 0) sb.append(' ').append(slot.id);
+            sb.append("] ");
+        }
+
+        String template = slot.template;
+        int arg = 0;
+        int from = 0;
+        int at;
+        while ((at = template.indexOf("{}", from)) >= 0) {
+            sb.append(template, from, at);
+            if (arg < slot.argCount) {
+                sb.append(slot.args[arg++]);
+            } else {
+                sb.append("{}");
+            }
+            from = at + 2;
+        }
+        sb.append(template, from, template.length()).append('\n');
+    }
+
+    private static Level parseLevel(String name) {
+        try {
+            return Level.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+}
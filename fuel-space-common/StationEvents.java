@@ -0,0 +1,264 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events for a station's visits, shared by FuelStation
+ * and SpaceFuelStation. Each visit shows up as Arrival, Queued (only if it
+ * had to wait), Admitted (the dock is handed over) and Departed, or Aborted
+ * if it never docked. A QueueWait spans each park of a waiting vehicle
+ * thread, so JDK Mission Control shows what a "parked" thread was waiting
+ * for, and a WakeupScan spans each pass over the queue after a state change.
+ *
+ * The helpers do nothing until Flight Recorder has been started (on the
+ * command line or later through jcmd), so an unrecorded run never loads the
+ * event classes, whose first use initializes JFR and takes a few hundred ms.
+ * After that they build an event only to ask whether its type is enabled,
+ * and the JIT drops disabled ones, so the stations call them
+ * unconditionally. Vehicles are named by vehicle, or as "type id" when
+ * vehicle is null.
+ */
+public final class StationEvents {
+
+    private StationEvents() {
+    }
+
+    @Category({ "Fuel Space", "Visit" })
+    @StackTrace(false)
+    abstract static class VisitEvent extends Event {
+        @Label("Station")
+        String station;
+
+        @Label("Vehicle")
+        String vehicle;
+
+        @Label("Vehicle Type")
+        String vehicleType;
+    }
+
+    @Name("fuelspace.Arrival")
+    @Label("Arrival")
+    @Description("A vehicle asked to refuel or to deposit")
+    static final class Arrival extends VisitEvent {
+        @Label("Deposit")
+        boolean deposit;
+
+        @Label("Nitrogen")
+        @DataAmount("litres")
+        long nitrogen;
+
+        @Label("Quantum")
+        @DataAmount("litres")
+        long quantum;
+    }
+
+    @Name("fuelspace.Queued")
+    @Label("Queued")
+    @Description("A vehicle could not be admitted at once and joined the queue")
+    static final class Queued extends VisitEvent {
+        @Label("Queue Position")
+        @Description("Waiters ahead of it in its queue when it joined")
+        int position;
+    }
+
+    @Name("fuelspace.Admitted")
+    @Label("Admitted")
+    @Description("A vehicle was handed a dock and its fuel (or tank space)")
+    static final class Admitted extends VisitEvent {
+        @Label("Waited")
+        @Timespan
+        long waited;
+
+        @Label("Granted Nitrogen")
+        @DataAmount("litres")
+        long nitrogen;
+
+        @Label("Granted Quantum")
+        @DataAmount("litres")
+        long quantum;
+
+        @Label("Dock")
+        @Description("Dock index, or -1 where docks are only counted")
+        int dock;
+    }
+
+    @Name("fuelspace.Departed")
+    @Label("Departed")
+    @Description("A docked vehicle left")
+    static final class Departed extends VisitEvent {
+        @Label("Docked For")
+        @Timespan
+        long held;
+
+        @Label("Visit")
+        @Description("Arrival to departure")
+        @Timespan
+        long visit;
+    }
+
+    @Name("fuelspace.Aborted")
+    @Label("Aborted")
+    @Description("A vehicle left without docking")
+    static final class Aborted extends VisitEvent {
+        @Label("Reason")
+        String reason;
+
+        @Label("Waited")
+        @Timespan
+        long waited;
+    }
+
+    @Name("fuelspace.QueueWait")
+    @Label("Queue Wait")
+    @Description("A queued vehicle's thread parked until the station wakes it")
+    static final class QueueWait extends VisitEvent {
+    }
+
+    @Name("fuelspace.WakeupScan")
+    @Label("Wakeup Scan")
+    @Description("One pass over the waiters after a state change")
+    @Category({ "Fuel Space", "Station" })
+    @StackTrace(false)
+    static final class WakeupScan extends Event {
+        @Label("Station")
+        String station;
+
+        @Label("Scan Length")
+        @Description("Waiters in the queue when the pass began")
+        int scanned;
+
+        @Label("Admitted")
+        int admitted;
+    }
+
+    public static void arrival(String station, String vehicle, int id, String type, boolean deposit, long nitrogen,
+            long quantum) {
+        if (!FlightRecorder.isInitialized()) {
+            return;
+        }
+        Arrival e = new Arrival();
+        if (e.isEnabled()) {
+            name(e, station, vehicle, id, type);
+            e.deposit = deposit;
+            e.nitrogen = nitrogen;
+            e.quantum = quantum;
+            e.commit();
+        }
+    }
+
+    public static void queued(String station, String vehicle, int id, String type, int position) {
+        if (!FlightRecorder.isInitialized()) {
+            return;
+        }
+        Queued e = new Queued();
+        if (e.isEnabled()) {
+            name(e, station, vehicle, id, type);
+            e.position = position;
+            e.commit();
+        }
+    }
+
+    public static void admitted(String station, String vehicle, int id, String type, long waitedNanos,
+            long nitrogen, long quantum, int dock) {
+        if (!FlightRecorder.isInitialized()) {
+            return;
+        }
+        Admitted e = new Admitted();
+        if (e.isEnabled()) {
+            name(e, station, vehicle, id, type);
+            e.waited = waitedNanos;
+            e.nitrogen = nitrogen;
+            e.quantum = quantum;
+            e.dock = dock;
+            e.commit();
+        }
+    }
+
+    public static void departed(String station, String vehicle, int id, String type, long heldNanos,
+            long visitNanos) {
+        if (!FlightRecorder.isInitialized()) {
+            return;
+        }
+        Departed e = new Departed();
+        if (e.isEnabled()) {
+            name(e, station, vehicle, id, type);
+            e.held = heldNanos;
+            e.visit = visitNanos;
+            e.commit();
+        }
+    }
+
+    public static void aborted(String station, String vehicle, int id, String type, String reason,
+            long waitedNanos) {
+        if (!FlightRecorder.isInitialized()) {
+            return;
+        }
+        Aborted e = new Aborted();
+        if (e.isEnabled()) {
+            name(e, station, vehicle, id, type);
+            e.reason = reason;
+            e.waited = waitedNanos;
+            e.commit();
+        }
+    }
+
+    /** Starts a QueueWait; pass it to endWait once the thread is back. Null when not recording. */
+    public static QueueWait beginWait() {
+        if (!FlightRecorder.isInitialized()) {
+            return null;
+        }
+        QueueWait e = new QueueWait();
+        if (!e.isEnabled()) {
+            return null;
+        }
+        e.begin();
+        return e;
+    }
+
+    public static void endWait(QueueWait e, String station, String vehicle, int id, String type) {
+        if (e != null) {
+            e.end();
+            if (e.shouldCommit()) {
+                name(e, station, vehicle, id, type);
+                e.commit();
+            }
+        }
+    }
+
+    /** Starts a WakeupScan over scanned waiters; null when not recording. */
+    public static WakeupScan beginScan(int scanned) {
+        if (!FlightRecorder.isInitialized()) {
+            return null;
+        }
+        WakeupScan e = new WakeupScan();
+        if (!e.isEnabled()) {
+            return null;
+        }
+        e.begin();
+        e.scanned = scanned;
+        return e;
+    }
+
+    public static void endScan(WakeupScan e, String station, int admitted) {
+        if (e != null) {
+            e.end();
+            if (e.shouldCommit()) {
+                e.station = station;
+                e.admitted = admitted;
+                e.commit();
+            }
+        }
+    }
+
+    private static void name(VisitEvent e, String station, String vehicle, int id, String type) {
+        e.station = station;
+        e.vehicle = vehicle != null ? vehicle : type + " " + id;
+        e.vehicleType = type;
+    }
+}
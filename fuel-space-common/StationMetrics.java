@@ -0,0 +1,107 @@
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Metrics registry owned by one station.
+ *
+ * Per vehicle type it keeps three latency histograms (queue wait, dock hold
+ * time, whole visit), an abort counter, a counter of visits given up at
+ * their deadline and one of dockings served only in part; on top of that the
+ * station registers gauges such as queue depth, docks in use and tank levels. All
+ * recording is lock-free and gauges read volatile or atomic state, so
+ * querying a running station never touches its lock. Gauge values are
+ * snapshots and may be slightly stale.
+ */
+public final class StationMetrics {
+
+    /** The histograms and counters for one vehicle type. */
+    public static final class VehicleStats {
+        public final LatencyHistogram wait = new LatencyHistogram();
+        public final LatencyHistogram hold = new LatencyHistogram();
+        public final LatencyHistogram visit = new LatencyHistogram();
+        public final LongAdder aborts = new LongAdder();
+        public final LongAdder timeouts = new LongAdder();
+        public final LongAdder partials = new LongAdder();
+    }
+
+    private static final double[] DUMP_QUANTILES = { 0.50, 0.90, 0.99, 0.999 };
+
+    private final String name;
+    private final long createdNanos = System.nanoTime();
+    private final Map<String, VehicleStats> byType = new ConcurrentHashMap<>();
+    private final Map<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+
+    public StationMetrics(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /** Stats for a vehicle type, created on first use. */
+    public VehicleStats vehicle(String type) {
+        VehicleStats stats = byType.get(type);
+        return stats != null ? stats : byType.computeIfAbsent(type, t -> new VehicleStats());
+    }
+
+    public Map<String, VehicleStats> vehicles() {
+        return byType;
+    }
+
+    public void gauge(String gaugeName, DoubleSupplier reader) {
+        gauges.put(gaugeName, reader);
+    }
+
+    /** Current value of a gauge, or NaN if there is none by that name. */
+    public double gauge(String gaugeName) {
+        DoubleSupplier reader = gauges.get(gaugeName);
+        return reader != null ? reader.getAsDouble() : Double.NaN;
+    }
+
+    /** Nanoseconds since the station was built. */
+    public long uptimeNanos() {
+        return System.nanoTime() - createdNanos;
+    }
+
+    /**
+     * Share of dock time in use since the station was built, from the hold
+     * histograms, so only completed dockings count.
+     */
+    public double dockUtilization(int docks) {
+        double busy = 0;
+        for (VehicleStats stats : byType.values()) {
+            busy += stats.hold.sum();
+        }
+        return busy / ((double) docks * Math.max(1, uptimeNanos()));
+    }
+
+    public void dump(PrintStream out) {
+        out.printf("--- Metrics: %s (up %.1f ms) ---%n", name, uptimeNanos() / 1e6);
+        gauges.entrySet().stream().sorted(Map.Entry.comparingByKey())
+                .forEach(e -> out.printf("  %-18s %.3f%n", e.getKey(), e.getValue().getAsDouble()));
+        out.printf("  %-10s %-6s %8s %10s %10s %10s %10s %10s %10s%n",
+                "type", "metric", "count", "mean us", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+        List<Map.Entry<String, VehicleStats>> types = byType.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey()).toList();
+        for (Map.Entry<String, VehicleStats> e : types) {
+            VehicleStats stats = e.getValue();
+            row(out, e.getKey(), "wait", stats.wait);
+            row(out, e.getKey(), "hold", stats.hold);
+            row(out, e.getKey(), "visit", stats.visit);
+            out.printf("  %-10s %-6s %8d%n", e.getKey(), "aborts", stats.aborts.sum());
+            out.printf("  %-10s %-6s %8d%n", e.getKey(), "late", stats.timeouts.sum());
+            out.printf("  %-10s %-6s %8d%n", e.getKey(), "part", stats.partials.sum());
+        }
+    }
+
+    private static void row(PrintStream out, String type, String metric, LatencyHistogram h) {
+        long[] p = h.percentiles(DUMP_QUANTILES);
+        out.printf("  %-10s %-6s %8d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n", type, metric, h.count(),
+                h.mean() / 1e3, p[0] / 1e3, p[1] / 1e3, p[2] / 1e3, p[3] / 1e3, h.max() / 1e3);
+    }
+}
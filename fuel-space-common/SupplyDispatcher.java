@@ -0,0 +1,177 @@
+/**
+ * Decides when supply ships set off and how much they bring, so the tanks
+ * stay inside a target band instead of swinging between empty (refuels
+ * starve) and full (deposits block).
+ *
+ * The dispatcher samples the station it serves: tank levels, the fuel pumped
+ * out so far and the demand of refuels already waiting. From the pumped
+ * counters it keeps an exponentially weighted drawdown rate per fuel (time
+ * constant TAU_MS). A ship asks plan() before it leaves. Its arrival is
+ * forecast one travel time ahead as
+ *
+ *   level - queued demand + deposits already on their way - rate * travel
+ *
+ * (an order-up-to policy): the ship leaves as soon as its whole hold would
+ * fit under the high edge of the band on arrival, or at once if either fuel
+ * is forecast below the low edge, and then brings what lifts each fuel back
+ * to the high edge, at most its hold. Otherwise it is held, in slices of at
+ * most RECHECK_MS so it re-plans against fresh rates, and never longer than
+ * MAX_HOLD_MS in all; a ship held that long brings its full hold and lets
+ * the station decide (e.g. turn it away once no consumers remain). Until
+ * anything has been pumped there is no rate to forecast with, so ships are
+ * never held then.
+ *
+ * With -Dstation.dispatch=LOW:HIGH (percent of capacity; "on" for 25:75) the
+ * simulations' supply ships follow the dispatcher; otherwise they keep their
+ * fixed random timers. Thread-safe; plan() is synchronized.
+ */
+public final class SupplyDispatcher {
+
+    /** What the dispatcher reads from its station; lock-free snapshots are fine. */
+    public interface Tanks {
+        int capacityN();
+
+        int capacityQ();
+
+        int levelN();
+
+        int levelQ();
+
+        /** Fuel pumped into vehicles so far, cumulative. */
+        long drawnN();
+
+        long drawnQ();
+
+        /** Demand of refuels waiting in the queue. */
+        int queuedN();
+
+        int queuedQ();
+    }
+
+    /** Hold the ship waitMs and ask again, or (waitMs == 0) leave now and deposit nitrogen, quantum. */
+    public record Dispatch(long waitMs, int nitrogen, int quantum) {
+    }
+
+    static final long RISE_MS = 100;
+    static final long TAU_MS = 2_000;
+    static final long RECHECK_MS = 200;
+    static final long MAX_HOLD_MS = 5_000;
+
+    private final Tanks tanks;
+    private final double low, high;
+
+    // Guarded by this.
+    private long sampledNanos;
+    private long sampledN, sampledQ;
+    private double rateN, rateQ; // units per ms
+    private long inboundN, inboundQ;
+
+    /** low and high are shares of capacity, 0 <= low < high <= 1. */
+    public SupplyDispatcher(Tanks tanks, double low, double high) {
+        if (!(0 <= low && low < high && high <= 1)) {
+            throw new IllegalArgumentException("Need 0 <= low < high <= 1, got " + low + ", " + high);
+        }
+        this.tanks = tanks;
+        this.low = low;
+        this.high = high;
+        this.sampledNanos = System.nanoTime();
+        this.sampledN = tanks.drawnN();
+        this.sampledQ = tanks.drawnQ();
+    }
+
+    /** A dispatcher for tanks as configured by -Dstation.dispatch, or null if it is not set. */
+    public static SupplyDispatcher fromProperty(Tanks tanks) {
+        String band = System.getProperty("station.dispatch");
+        if (band == null || band.isBlank() || band.equalsIgnoreCase("off")) {
+            return null;
+        }
+        if (band.equalsIgnoreCase("on") || band.equalsIgnoreCase("true")) {
+            return new SupplyDispatcher(tanks, 0.25, 0.75);
+        }
+        int colon = band.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("station.dispatch must be on, off or LOW:HIGH, got " + band);
+        }
+        return new SupplyDispatcher(tanks, Integer.parseInt(band.substring(0, colon).trim()) / 100.0,
+                Integer.parseInt(band.substring(colon + 1).trim()) / 100.0);
+    }
+
+    /**
+     * Plans one supply run: travelMs to reach the station, at most maxN, maxQ
+     * aboard, heldMs already spent waiting for this run. A Dispatch that
+     * leaves now counts as inbound until landed() is called with it.
+     */
+    public synchronized Dispatch plan(long travelMs, int maxN, int maxQ, long heldMs) {
+        sample();
+        double atArrivalN = forecast(tanks.levelN(), tanks.queuedN(), inboundN, rateN, travelMs);
+        double atArrivalQ = forecast(tanks.levelQ(), tanks.queuedQ(), inboundQ, rateQ, travelMs);
+        double lowN = low * tanks.capacityN(), lowQ = low * tanks.capacityQ();
+        double highN = high * tanks.capacityN(), highQ = high * tanks.capacityQ();
+
+        boolean fits = atArrivalN + maxN <= highN && atArrivalQ + maxQ <= highQ;
+        boolean runningLow = atArrivalN <= lowN || atArrivalQ <= lowQ;
+        // Nothing drawn yet means no rate to forecast with; hold nobody on a guess.
+        boolean warmingUp = sampledN == 0 && sampledQ == 0;
+        if (!fits && !runningLow && !warmingUp && heldMs < MAX_HOLD_MS) {
+            double untilGo = Math.min(until(atArrivalN, Math.max(highN - maxN, lowN), rateN),
+                    until(atArrivalQ, Math.max(highQ - maxQ, lowQ), rateQ));
+            return new Dispatch(Math.max(1, (long) Math.min(untilGo, Math.min(RECHECK_MS, MAX_HOLD_MS - heldMs))),
+                    0, 0);
+        }
+        // Held as long as allowed: bring the full hold and let the station decide.
+        boolean full = !fits && !runningLow && !warmingUp;
+        int n = full ? maxN : topUp(atArrivalN, highN, maxN);
+        int q = full ? maxQ : topUp(atArrivalQ, highQ, maxQ);
+        inboundN += n;
+        inboundQ += q;
+        return new Dispatch(0, n, q);
+    }
+
+    /** The run planned as d has delivered (or given up); it no longer counts as inbound. */
+    public synchronized void landed(Dispatch d) {
+        inboundN -= d.nitrogen();
+        inboundQ -= d.quantum();
+    }
+
+    /** Current drawdown estimates, units per second; for logs and tuning. */
+    public synchronized double[] ratesPerSecond() {
+        sample();
+        return new double[] { rateN * 1000, rateQ * 1000 };
+    }
+
+    private void sample() {
+        long now = System.nanoTime();
+        double dtMs = (now - sampledNanos) / 1e6;
+        if (dtMs < 1) {
+            return;
+        }
+        long drawnN = tanks.drawnN(), drawnQ = tanks.drawnQ();
+        rateN = smooth(rateN, (drawnN - sampledN) / dtMs, dtMs);
+        rateQ = smooth(rateQ, (drawnQ - sampledQ) / dtMs, dtMs);
+        sampledNanos = now;
+        sampledN = drawnN;
+        sampledQ = drawnQ;
+    }
+
+    /** Rises within RISE_MS of a burst, decays over TAU_MS, so a lull does not hide the next wave. */
+    private static double smooth(double rate, double observed, double dtMs) {
+        double tau = observed > rate ? RISE_MS : TAU_MS;
+        return rate + (1 - Math.exp(-dtMs / tau)) * (observed - rate);
+    }
+
+    private static double forecast(int level, int queued, long inbound, double rate, long travelMs) {
+        return level - queued + inbound - rate * travelMs;
+    }
+
+    /** Ms until a forecast level falls to mark; infinite while nothing is drawn. */
+    private static double until(double atArrival, double mark, double rate) {
+        if (atArrival <= mark) {
+            return 0;
+        }
+        return rate > 0 ? (atArrival - mark) / rate : Double.POSITIVE_INFINITY;
+    }
+
+    private static int topUp(double atArrival, double highMark, int max) {
+        return (int) Math.max(0, Math.min(max, Math.round(highMark - atArrival)));
+    }
+}
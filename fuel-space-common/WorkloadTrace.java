@@ -0,0 +1,233 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Binary arrival traces: when each vehicle reached the station and what it
+ * asked for, so a run can be replayed against either station (TraceReplay in
+ * fuel-space-bench) and regressions reproduced.
+ *
+ * With -Dstation.record=FILE every vehicle reports its arrivals through
+ * record(); the trace is flushed at exit like the Logger. With
+ * -Dstation.seed=N vehicles draw travel times, dock times and demands from
+ * vehicleRandom, seeded per vehicle, so the same arguments give the same
+ * workload (arrival times still shift with how long vehicles wait).
+ *
+ * Layout: a 16-byte header (magic, version, record size), then fixed 40-byte
+ * little-endian records: arrival offset in ns (long), kind, vehicle id, N, Q,
+ * return N, return Q, dock ms and return dock ms (ints). Supply ships fill
+ * the return fields; Reader maps the file a window at a time, so traces of
+ * any size stream without landing on the heap.
+ */
+public final class WorkloadTrace {
+    public static final int REFUEL = 0, SUPPLY = 1;
+
+    static final long MAGIC = 0x5452_4143_4546_534CL;
+    static final int VERSION = 1;
+    static final int HEADER = 16;
+    static final int RECORD = 40;
+
+    private static final Recorder recorder = openRecorder(System.getProperty("station.record"));
+    private static final String seed = System.getProperty("station.seed");
+
+    private WorkloadTrace() {
+    }
+
+    // --- VEHICLE HOOKS ---
+
+    /** Notes one arrival if -Dstation.record is set; otherwise returns at once. */
+    public static void record(int kind, int vehicle, int n, int q, int retN, int retQ, int dockMs, int returnDockMs) {
+        if (recorder != null) {
+            recorder.arrive(kind, vehicle, n, q, retN, retQ, dockMs, returnDockMs);
+        }
+    }
+
+    /** Seeded from -Dstation.seed, the vehicle kind and id when set; unseeded otherwise. */
+    public static Random vehicleRandom(int kind, int vehicle) {
+        if (seed == null) {
+            return new Random();
+        }
+        return new Random(Long.parseLong(seed) * 31 + ((long) kind << 32 | vehicle));
+    }
+
+    private static Recorder openRecorder(String file) {
+        if (file == null) {
+            return null;
+        }
+        Recorder r = new Recorder(Path.of(file));
+        Runtime.getRuntime().addShutdownHook(new Thread(r::close, "trace-recorder-close"));
+        return r;
+    }
+
+    // --- WRITING ---
+
+    /** Appends records through a small buffer; safe to share between vehicles. */
+    public static final class Recorder implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(RECORD * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        private final long start = System.nanoTime();
+        private long last;
+        private boolean closed;
+
+        public Recorder(Path file) {
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+                buf.putLong(MAGIC).putInt(VERSION).putInt(RECORD);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /** Stamped now, relative to when the recorder was opened. */
+        public synchronized void arrive(int kind, int vehicle, int n, int q, int retN, int retQ,
+                int dockMs, int returnDockMs) {
+            append(System.nanoTime() - start, kind, vehicle, n, q, retN, retQ, dockMs, returnDockMs);
+        }
+
+        /** Explicit offset, for generators; offsets must not go backwards. */
+        public synchronized void append(long atNanos, int kind, int vehicle, int n, int q, int retN, int retQ,
+                int dockMs, int returnDockMs) {
+            if (closed) {
+                return;
+            }
+            if (atNanos < last) {
+                throw new IllegalArgumentException("Arrival at " + atNanos + " ns is before " + last + " ns");
+            }
+            last = atNanos;
+            if (buf.remaining() < RECORD) {
+                drain();
+            }
+            buf.putLong(atNanos).putInt(kind).putInt(vehicle).putInt(n).putInt(q)
+                    .putInt(retN).putInt(retQ).putInt(dockMs).putInt(returnDockMs);
+        }
+
+        private void drain() {
+            buf.flip();
+            try {
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buf.clear();
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try (channel) {
+                drain();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // --- READING ---
+
+    /**
+     * Cursor over a trace: next() moves to the following record and the
+     * getters read it straight from the mapping. Not thread-safe.
+     */
+    public static final class Reader implements AutoCloseable {
+        /** Records mapped at a time (160 MB). */
+        private static final long WINDOW = RECORD * (1L << 22);
+
+        private final FileChannel channel;
+        private final long records;
+        private MappedByteBuffer window;
+        private long windowStart; // file offset of window[0]
+        private long index = -1;
+        private int pos;
+
+        public Reader(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER || header.getLong() != MAGIC) {
+                channel.close();
+                throw new IOException(file + " is not a workload trace");
+            }
+            int version = header.getInt(), size = header.getInt();
+            if (version != VERSION || size != RECORD) {
+                channel.close();
+                throw new IOException(file + ": unsupported trace version " + version);
+            }
+            records = (channel.size() - HEADER) / RECORD; // a torn last record is ignored
+        }
+
+        public long records() {
+            return records;
+        }
+
+        public boolean next() throws IOException {
+            if (index + 1 >= records) {
+                return false;
+            }
+            index++;
+            long offset = HEADER + index * RECORD;
+            if (window == null || offset - windowStart >= window.capacity()) {
+                windowStart = offset;
+                long length = Math.min(WINDOW, (records - index) * RECORD);
+                window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                window.order(ByteOrder.LITTLE_ENDIAN);
+            }
+            pos = (int) (offset - windowStart);
+            return true;
+        }
+
+        public long atNanos() {
+            return window.getLong(pos);
+        }
+
+        public int kind() {
+            return window.getInt(pos + 8);
+        }
+
+        public int vehicle() {
+            return window.getInt(pos + 12);
+        }
+
+        public int n() {
+            return window.getInt(pos + 16);
+        }
+
+        public int q() {
+            return window.getInt(pos + 20);
+        }
+
+        public int returnN() {
+            return window.getInt(pos + 24);
+        }
+
+        public int returnQ() {
+            return window.getInt(pos + 28);
+        }
+
+        public int dockMs() {
+            return window.getInt(pos + 32);
+        }
+
+        public int returnDockMs() {
+            return window.getInt(pos + 36);
+        }
+
+        @Override
+        public void close() throws IOException {
+            window = null;
+            channel.close();
+        }
+    }
+}
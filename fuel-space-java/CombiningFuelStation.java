@@ -0,0 +1,187 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Flat-combining front-end for a FuelStation, the counterpart of
+ * fuel-space-V2's CombiningStation.
+ *
+ * Vehicles do not take the station lock themselves. Each arrival or
+ * departure is published as an Op; whichever caller wins the combiner flag
+ * drains every published op into one submitBatch call, a single critical
+ * section with a single dispatch, then wakes the owners. A vehicle that
+ * has to wait parks until the station admits its request on its behalf.
+ *
+ * That admission on the vehicle's behalf is HANDOFF mode, so the station
+ * must be in it (the constructor rejects BROADCAST). The station itself
+ * records the metrics and StationEvents of every visit, since submitBatch
+ * goes through the same admission and undocking as the blocking calls;
+ * the combiner only adds a QueueWait around each park.
+ */
+public class CombiningFuelStation {
+
+    private static final int MAX_BATCH = 256;
+    private static final long IDLE_PARK_NS = 20_000;
+
+    /** One published call: an arrival (request) or a departure (vehicleId only). */
+    private static final class Op {
+        final FuelRequest request;
+        final String vehicleId;
+        final String type; // for the QueueWait event, as the station names it
+        final Thread owner = Thread.currentThread();
+        volatile boolean applied; // taken into a batch
+        volatile boolean ready;   // admitted, or departed
+
+        Op(FuelRequest request, String type) {
+            this.request = request;
+            this.vehicleId = request.getVehicleId();
+            this.type = type;
+            request.setAdmissionCallback(this::finish);
+        }
+
+        Op(String vehicleId) {
+            this.request = null;
+            this.vehicleId = vehicleId;
+            this.type = null;
+        }
+
+        void finish() {
+            ready = true;
+            if (owner != Thread.currentThread()) {
+                LockSupport.unpark(owner);
+            }
+        }
+    }
+
+    private final FuelStation station;
+    private final ConcurrentLinkedQueue<Op> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean combining = new AtomicBoolean(false);
+    // Supply vehicles between deposit and releaseDock: their return refuel still counts as Supply.
+    private final Set<String> dockedSupplies = ConcurrentHashMap.newKeySet();
+
+    // Only touched by the thread holding the combiner flag.
+    private final List<String> departures = new ArrayList<>(MAX_BATCH);
+    private final List<FuelRequest> arrivals = new ArrayList<>(MAX_BATCH);
+    private final List<Op> taken = new ArrayList<>(MAX_BATCH);
+
+    public CombiningFuelStation(FuelStation station) {
+        if (station.wakeupMode() != FuelStation.WakeupMode.HANDOFF) {
+            throw new IllegalArgumentException("CombiningFuelStation needs a HANDOFF-mode FuelStation");
+        }
+        this.station = station;
+    }
+
+    public FuelStation station() {
+        return station;
+    }
+
+    /** As FuelStation.requestFuel: true once docked, false if interrupted while waiting. */
+    public boolean requestFuel(int nitrogen, int quantum, String vehicleId) {
+        return arrive(new FuelRequest(vehicleId, nitrogen, quantum, FuelRequest.RequestType.FUEL_REQUEST),
+                dockedSupplies.contains(vehicleId) ? "Supply" : "Regular");
+    }
+
+    /** As FuelStation.depositFuel: true once docked, false if interrupted while waiting. */
+    public boolean depositFuel(int nitrogen, int quantum, String vehicleId, int returnNitrogen,
+            int returnQuantum) {
+        if (!arrive(new FuelRequest(vehicleId, nitrogen, quantum, FuelRequest.RequestType.FUEL_DEPOSIT,
+                returnNitrogen, returnQuantum), "Supply")) {
+            return false;
+        }
+        dockedSupplies.add(vehicleId);
+        return true;
+    }
+
+    /** As FuelStation.releaseDock; returns once the dock is free. */
+    public void releaseDock(String vehicleId) {
+        await(new Op(vehicleId), false);
+        dockedSupplies.remove(vehicleId);
+    }
+
+    // --- COMBINING ---
+
+    private boolean arrive(FuelRequest request, String type) {
+        station.validate(request); // here, not in another caller's batch
+        return await(new Op(request, type), true);
+    }
+
+    /**
+     * Publishes op, combining if nobody else is, and waits until it is ready.
+     * If interruptible, an interrupt withdraws the op (from the pending list
+     * or the station queue) and returns false with the interrupt re-raised;
+     * an op admitted first wins. Departures are never withdrawn.
+     */
+    private boolean await(Op op, boolean interruptible) {
+        pending.add(op);
+        boolean interrupted = false;
+        while (!op.ready) {
+            if (!op.applied && combining.compareAndSet(false, true)) {
+                try {
+                    combine();
+                } finally {
+                    combining.set(false);
+                }
+                continue;
+            }
+            if (interrupted && interruptible) {
+                if (op.applied ? station.cancel(op.request) : pending.remove(op)) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                // Too late to withdraw. Re-check before parking: cancel may have
+                // blocked on the station lock and eaten finish()'s unpark.
+                if (op.ready) {
+                    break;
+                }
+            }
+            // Timed while unapplied: the combiner may have drained just before we published.
+            if (op.applied) {
+                StationEvents.QueueWait wait = op.request != null ? StationEvents.beginWait() : null;
+                LockSupport.park(this);
+                StationEvents.endWait(wait, station.metrics().name(), op.vehicleId, 0, op.type);
+            } else {
+                LockSupport.parkNanos(this, IDLE_PARK_NS);
+            }
+            interrupted |= Thread.interrupted();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+
+    /** Combiner flag held: applies everything published so far as one batch. */
+    private void combine() {
+        Op op;
+        while (taken.size() < MAX_BATCH && (op = pending.poll()) != null) {
+            if (op.request != null) {
+                arrivals.add(op.request);
+            } else {
+                departures.add(op.vehicleId);
+            }
+            taken.add(op);
+        }
+        if (taken.isEmpty()) {
+            return;
+        }
+
+        // Arrivals are finished by their admission callback, inside or after this call.
+        try {
+            station.submitBatch(departures, arrivals);
+        } finally {
+            for (Op o : taken) {
+                o.applied = true;
+                if (o.request == null) {
+                    o.finish();
+                }
+            }
+            departures.clear();
+            arrivals.clear();
+            taken.clear();
+        }
+    }
+}
@@ -1,3 +1,5 @@
+import java.util.concurrent.locks.Condition;
+
 /**
  * Represents a fuel request or deposit in the FIFO queue.
  * Used to ensure fair ordering of service.
@@ -9,12 +11,17 @@ public class FuelRequest {
     }
 
     private final String vehicleId;
-    private final int nitrogenAmount;
-    private final int quantumAmount;
+    // One entry per fuel type (see FuelVector); never modified once queued.
+    private final long[] amount;
+    private final long[] min;
+    private long[] granted;
     private final RequestType type;
     private boolean served;
-    private final int returnNitrogen;
-    private final int returnQuantum;
+    private final long[] returnFuel;
+    private long sequence;
+    private Condition condition;
+    private Runnable admissionCallback;
+    private final long arrivalNanos = System.nanoTime();
 
     public FuelRequest(String vehicleId, int nitrogen, int quantum, RequestType type) {
         this(vehicleId, nitrogen, quantum, type, 0, 0);
@@ -22,25 +29,84 @@ public class FuelRequest {
 
     public FuelRequest(String vehicleId, int nitrogen, int quantum, RequestType type, int returnNitrogen,
             int returnQuantum) {
+        this(vehicleId, nitrogen, quantum, nitrogen, quantum, type, returnNitrogen, returnQuantum);
+    }
+
+    /**
+     * A request that accepts a partial fill (or, for a deposit, a partial
+     * unload) of at least minNitrogen and minQuantum.
+     */
+    public FuelRequest(String vehicleId, int nitrogen, int quantum, int minNitrogen, int minQuantum,
+            RequestType type, int returnNitrogen, int returnQuantum) {
+        this(vehicleId, FuelVector.of(nitrogen, quantum), FuelVector.of(minNitrogen, minQuantum), type,
+                FuelVector.of(returnNitrogen, returnQuantum));
+    }
+
+    /**
+     * A request over any number of fuel types: amount, its accepted minimum
+     * and (for a deposit) the return fuel, one entry per fuel. The station
+     * checks that every vector matches its width. The arrays are kept, not
+     * copied; do not modify them afterwards.
+     */
+    public FuelRequest(String vehicleId, long[] amount, long[] min, RequestType type, long[] returnFuel) {
         this.vehicleId = vehicleId;
-        this.nitrogenAmount = nitrogen;
-        this.quantumAmount = quantum;
+        this.amount = amount;
+        this.min = min;
         this.type = type;
         this.served = false;
-        this.returnNitrogen = returnNitrogen;
-        this.returnQuantum = returnQuantum;
+        this.returnFuel = returnFuel;
     }
 
     public String getVehicleId() {
         return vehicleId;
     }
 
+    /** Demand per fuel type; shared, do not modify. */
+    public long[] getAmount() {
+        return amount;
+    }
+
+    /** The least the vehicle will take (or unload) per fuel; the full amount unless it accepts a partial fill. */
+    public long[] getMin() {
+        return min;
+    }
+
+    /** What the station actually pumped (or took in) per fuel; set on admission, null before. */
+    public long[] getGranted() {
+        return granted;
+    }
+
+    public void setGranted(long[] granted) {
+        this.granted = granted;
+    }
+
+    /** Fuel a depositing vehicle needs for its return trip, per fuel. */
+    public long[] getReturn() {
+        return returnFuel;
+    }
+
     public int getNitrogenAmount() {
-        return nitrogenAmount;
+        return (int) FuelVector.get(amount, 0);
     }
 
     public int getQuantumAmount() {
-        return quantumAmount;
+        return (int) FuelVector.get(amount, 1);
+    }
+
+    public int getMinNitrogen() {
+        return (int) FuelVector.get(min, 0);
+    }
+
+    public int getMinQuantum() {
+        return (int) FuelVector.get(min, 1);
+    }
+
+    public int getGrantedNitrogen() {
+        return granted == null ? 0 : (int) FuelVector.get(granted, 0);
+    }
+
+    public int getGrantedQuantum() {
+        return granted == null ? 0 : (int) FuelVector.get(granted, 1);
     }
 
     public RequestType getType() {
@@ -56,10 +122,41 @@ public class FuelRequest {
     }
 
     public int getReturnNitrogen() {
-        return returnNitrogen;
+        return (int) FuelVector.get(returnFuel, 0);
     }
 
     public int getReturnQuantum() {
-        return returnQuantum;
+        return (int) FuelVector.get(returnFuel, 1);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /** Per-request wakeup used by the station's HANDOFF mode; null otherwise. */
+    public Condition getCondition() {
+        return condition;
+    }
+
+    public void setCondition(Condition condition) {
+        this.condition = condition;
+    }
+
+    /** Called instead of a Condition signal for requests submitted without blocking. */
+    public Runnable getAdmissionCallback() {
+        return admissionCallback;
+    }
+
+    public void setAdmissionCallback(Runnable admissionCallback) {
+        this.admissionCallback = admissionCallback;
+    }
+
+    /** System.nanoTime() when the request was made; queue waits are measured from here. */
+    public long getArrivalNanos() {
+        return arrivalNanos;
     }
 }
@@ -1,249 +1,934 @@
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Monitor representing the fuel space station.
- * Controls access to fuel resources and docking spots using synchronized
- * methods.
+ * Controls access to fuel resources and docking spots with a single lock.
  * Implements a scannable FIFO queue for practical fairness + progress.
  */
 public class FuelStation {
-    private int nitrogenLevel;
-    private int quantumLevel;
-    private int occupiedDocks;
+    /**
+     * How waiting vehicles are woken after a state change.
+     * BROADCAST: every waiter wakes and re-checks its own request (notifyAll style).
+     * HANDOFF: the station admits the requests that became serviceable on their
+     * behalf and signals exactly those waiters.
+     */
+    public enum WakeupMode {
+        BROADCAST,
+        HANDOFF
+    }
+
+    /** What a partial-fill visit actually got: fuel pumped, or fuel unloaded for a deposit. */
+    public record Fill(int nitrogen, int quantum) {
+    }
 
-    private final int MAX_NITROGEN;
-    private final int MAX_QUANTUM;
+    // Written under the lock; volatile so the metrics gauges can read them without it.
+    // The level vector is replaced, never mutated, so a reader always sees a whole one.
+    private volatile long[] level;
+    private volatile int occupiedDocks;
+
+    private final long[] capacity; // one entry per fuel type, see FuelVector
+    // Return fuel of the docked supply vehicles, still in the tanks but no longer
+    // on offer (lock held); reservations counts the vehicles it belongs to.
+    private long[] reserved;
+    private int reservations;
+    private final long[] none; // all zero: the return fuel of a plain refuel
     private final int MAX_DOCKS;
 
-    private final Queue<FuelRequest> waitingQueue;
+    private final SatisfiabilityQueue waitingQueue;
+
+    private final WakeupMode wakeupMode;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition stateCv = lock.newCondition();
+    // Whoever holds the station lock also holds the write side of stamps, so
+    // snapshot() can read the station optimistically (see lockStation).
+    private final StampedLock stamps = new StampedLock();
+    private long writeStamp; // lock held
+
+    /**
+     * Type and timestamps of a docked vehicle's current visit, for the metrics
+     * and events, and the return fuel held back for a supply vehicle (null if
+     * none).
+     */
+    private record DockedVisit(String type, StationMetrics.VehicleStats stats, long arrivedNanos, long dockedNanos,
+            long[] reserve) {
+        DockedVisit withoutReserve() {
+            return new DockedVisit(type, stats, arrivedNanos, dockedNanos, null);
+        }
+    }
+
+    private final StationMetrics metrics = new StationMetrics("FuelStation");
+    private final LockProfile lockProfile = LockProfile.create("FuelStation"); // null unless profiling
+    // Profiling only, lock held: the holder's section, and its hold time so far.
+    private LockProfile.Section heldSection;
+    private long heldSince, heldNanos;
+
+    // Fuel pumped into vehicles so far; replaced under the lock, read by the dispatcher.
+    private volatile long[] drawn;
+    // Resolved on first use: an empty Optional once -Dstation.dispatch turns out not to be set.
+    private final AtomicReference<Optional<SupplyDispatcher>> dispatcher = new AtomicReference<>();
+
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    // -Dstation.partial=P: the simulation's vehicles settle for a fill (or an
+    // unload) of at least P% of what they came for; 100 is all-or-nothing.
+    private static final int PARTIAL_PERCENT = Math.clamp(Integer.getInteger("station.partial", 100), 1, 100);
 
     public FuelStation(int maxDocks, int maxNitrogen, int maxQuantum) {
         this(maxDocks, maxNitrogen, maxQuantum, maxNitrogen, maxQuantum);
     }
 
     public FuelStation(int maxDocks, int maxNitrogen, int maxQuantum, int initialNitrogen, int initialQuantum) {
+        this(maxDocks, maxNitrogen, maxQuantum, initialNitrogen, initialQuantum, WakeupMode.BROADCAST);
+    }
+
+    public FuelStation(int maxDocks, int maxNitrogen, int maxQuantum, int initialNitrogen, int initialQuantum,
+            WakeupMode wakeupMode) {
+        this(maxDocks, FuelVector.of(maxNitrogen, maxQuantum), FuelVector.of(initialNitrogen, initialQuantum),
+                wakeupMode);
+    }
+
+    /**
+     * A station for any number of fuel types: capacity and initialLevel hold
+     * one entry per fuel. The two-fuel methods address fuels 0 (nitrogen) and
+     * 1 (quantum) and so need a station exactly two fuels wide.
+     */
+    public FuelStation(int maxDocks, long[] capacity, long[] initialLevel, WakeupMode wakeupMode) {
+        this.wakeupMode = wakeupMode;
         this.MAX_DOCKS = maxDocks;
-        this.MAX_NITROGEN = maxNitrogen;
-        this.MAX_QUANTUM = maxQuantum;
 
-        if (initialNitrogen < 0 || initialNitrogen > maxNitrogen
-                || initialQuantum < 0 || initialQuantum > maxQuantum) {
+        if (capacity.length == 0 || initialLevel.length != capacity.length) {
+            throw new IllegalArgumentException("Need one capacity and one initial level per fuel type");
+        }
+        if (!FuelVector.nonNegative(initialLevel) || !FuelVector.covers(capacity, initialLevel)) {
             throw new IllegalArgumentException("Initial fuel levels must be within station capacity");
         }
 
-        this.nitrogenLevel = initialNitrogen;
-        this.quantumLevel = initialQuantum;
+        this.capacity = capacity.clone();
+        this.level = initialLevel.clone();
+        this.drawn = new long[capacity.length];
+        this.reserved = new long[capacity.length];
+        this.none = new long[capacity.length];
         this.occupiedDocks = 0;
 
-        this.waitingQueue = new LinkedList<>();
-        this.dockedVehicles = new HashSet<>();
+        this.waitingQueue = new SatisfiabilityQueue(capacity);
+        this.dockedVehicles = new HashMap<>();
+
+        metrics.gauge("queueDepth", waitingQueue::depth);
+        metrics.gauge("docksInUse", () -> occupiedDocks);
+        metrics.gauge("dockUtilization", () -> metrics.dockUtilization(MAX_DOCKS));
+        for (int i = 0; i < capacity.length; i++) {
+            int fuel = i;
+            metrics.gauge(i == 0 ? "nitrogen" : i == 1 ? "quantum" : "fuel" + i, () -> level[fuel]);
+        }
     }
 
-    private final Set<String> dockedVehicles;
+    private final Map<String, DockedVisit> dockedVehicles;
+
+    public WakeupMode wakeupMode() {
+        return wakeupMode;
+    }
+
+    /** Wait, dock and visit histograms per vehicle type, gauges and abort counts. */
+    public StationMetrics metrics() {
+        return metrics;
+    }
+
+    /** Lock acquisition and hold times per critical section; null unless -Dstation.lockprofile=true. */
+    public LockProfile lockProfile() {
+        return lockProfile;
+    }
+
+    /** The station at one instant: fuel per type, docks, waiters and what the waiting refuels want. */
+    public record Snapshot(long[] level, int docksInUse, int freeDocks, int waiting, long[] queuedDemand) {
+    }
+
+    /**
+     * A consistent Snapshot without the station lock, so a dashboard polling
+     * every few ms neither blocks vehicles nor delays admissions: an
+     * optimistic read, retried (yielding now and then) until no critical
+     * section ran in between.
+     */
+    public Snapshot snapshot() {
+        for (int attempt = 0;; attempt++) {
+            long stamp = stamps.tryOptimisticRead();
+            long[] fuel = level, demand = waitingQueue.refuelDemand();
+            int docksInUse = occupiedDocks, waiting = waitingQueue.depth();
+            if (stamps.validate(stamp)) {
+                return new Snapshot(fuel.clone(), docksInUse, MAX_DOCKS - docksInUse, waiting, demand.clone());
+            }
+            if (attempt % 16 == 15) {
+                Thread.yield();
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /** Number of fuel types this station stocks. */
+    public int fuelTypes() {
+        return capacity.length;
+    }
+
+    /** Plans supply runs for this station, or null unless -Dstation.dispatch is set. */
+    public SupplyDispatcher dispatcher() {
+        // Created here rather than in the constructor, which must not hand out this.
+        Optional<SupplyDispatcher> d = dispatcher.get();
+        if (d == null) {
+            dispatcher.compareAndSet(null, Optional.ofNullable(SupplyDispatcher.fromProperty(tanks())));
+            d = dispatcher.get();
+        }
+        return d.orElse(null);
+    }
+
+    /** Lock-free view of fuels 0 and 1 for the (two-fuel) supply dispatcher. */
+    SupplyDispatcher.Tanks tanks() {
+        return new SupplyDispatcher.Tanks() {
+            @Override
+            public int capacityN() {
+                return (int) capacity[0];
+            }
+
+            @Override
+            public int capacityQ() {
+                return (int) FuelVector.get(capacity, 1);
+            }
+
+            @Override
+            public int levelN() {
+                return (int) level[0];
+            }
+
+            @Override
+            public int levelQ() {
+                return (int) FuelVector.get(level, 1);
+            }
+
+            @Override
+            public long drawnN() {
+                return drawn[0];
+            }
+
+            @Override
+            public long drawnQ() {
+                return FuelVector.get(drawn, 1);
+            }
+
+            @Override
+            public int queuedN() {
+                return (int) waitingQueue.refuelDemand()[0];
+            }
+
+            @Override
+            public int queuedQ() {
+                return (int) FuelVector.get(waitingQueue.refuelDemand(), 1);
+            }
+        };
+    }
 
     /**
      * Supply vehicle deposits fuel.
      * Returns true if docking/deposit succeeded, false if interrupted while
-     * waiting.
+     * waiting. The return fuel is held back from the moment it docks, so its
+     * requestFuel for it (up to that amount) is served at once, before
+     * releaseDock; a vehicle that leaves without it gives it back.
      */
-    public synchronized boolean depositFuel(int nitrogen, int quantum, String vehicleId, int returnNitrogen,
+    public boolean depositFuel(int nitrogen, int quantum, String vehicleId, int returnNitrogen,
             int returnQuantum) {
-        validateAmounts(nitrogen, quantum);
-        if (nitrogen > MAX_NITROGEN || quantum > MAX_QUANTUM) {
-            throw new IllegalArgumentException("Deposit exceeds station capacity: " + vehicleId);
+        long[] amount = FuelVector.of(nitrogen, quantum);
+        return deposit(amount, amount, vehicleId, FuelVector.of(returnNitrogen, returnQuantum), NO_DEADLINE) != null;
+    }
+
+    /**
+     * As depositFuel, but gives up (false) if not admitted within the timeout;
+     * the request leaves the queue and whoever it held back is re-evaluated.
+     */
+    public boolean depositFuel(int nitrogen, int quantum, String vehicleId, int returnNitrogen,
+            int returnQuantum, long timeout, TimeUnit unit) {
+        long[] amount = FuelVector.of(nitrogen, quantum);
+        return deposit(amount, amount, vehicleId,
+                FuelVector.of(returnNitrogen, returnQuantum), deadlineAfter(timeout, unit)) != null;
+    }
+
+    /**
+     * Partial unload: docks as soon as at least minNitrogen, minQuantum fit
+     * (and the return fuel is still guaranteed) and unloads as much of the
+     * delivery as fits. Returns what was unloaded, or null if interrupted;
+     * the vehicle comes back with the rest after releaseDock.
+     */
+    public Fill depositFuel(int nitrogen, int quantum, int minNitrogen, int minQuantum, String vehicleId,
+            int returnNitrogen, int returnQuantum) {
+        return fill(deposit(FuelVector.of(nitrogen, quantum), FuelVector.of(minNitrogen, minQuantum), vehicleId,
+                FuelVector.of(returnNitrogen, returnQuantum), NO_DEADLINE));
+    }
+
+    /**
+     * Partial unload over every fuel type: amount, min and returnFuel hold one
+     * entry per fuel. Returns what was unloaded per fuel, or null if
+     * interrupted.
+     */
+    public long[] depositFuel(long[] amount, long[] min, String vehicleId, long[] returnFuel) {
+        return deposit(amount.clone(), min.clone(), vehicleId, returnFuel.clone(), NO_DEADLINE);
+    }
+
+    private long[] deposit(long[] amount, long[] min, String vehicleId, long[] returnFuel, long deadline) {
+        validate(amount, min, vehicleId, "Deposit");
+        if (returnFuel.length != capacity.length || !FuelVector.nonNegative(returnFuel)) {
+            throw new IllegalArgumentException("Return fuel needs one non-negative amount per fuel type");
         }
 
-        long startTime = System.currentTimeMillis();
-        FuelRequest request = new FuelRequest(vehicleId, nitrogen, quantum, FuelRequest.RequestType.FUEL_DEPOSIT,
-                returnNitrogen, returnQuantum);
-        waitingQueue.add(request);
+        lockStation("deposit");
+        try {
+            FuelRequest request = new FuelRequest(vehicleId, amount, min, FuelRequest.RequestType.FUEL_DEPOSIT,
+                    returnFuel);
+            enqueue(request);
 
-        System.out.printf("[%d ms] %s arrives to DEPOSIT %dL N2, %dL QF (waiting in queue)\n",
-                System.currentTimeMillis(), vehicleId, nitrogen, quantum);
+            Logger.log(Logger.Level.INFO, vehicleId, "arrives to DEPOSIT {}L N2, {}L QF (waiting in queue)",
+                    request.getNitrogenAmount(), request.getQuantumAmount());
 
-        // Wait until dock is free, full deposit fits, AND return fuel is guaranteed.
-        while (!canSatisfyDeposit(nitrogen, quantum, returnNitrogen, returnQuantum) || !isFirstSatisfiable(request)) {
-            try {
-                wait();
-            } catch (InterruptedException e) {
-                waitingQueue.remove(request);
-                notifyAll();
-                Thread.currentThread().interrupt();
+            // Wait until dock is free, the deposit (or its minimum) fits, AND return fuel is guaranteed.
+            if (!awaitAdmission(request, deadline)) {
+                return null;
+            }
+
+            if (Logger.isEnabled(Logger.Level.INFO)) {
+                long waitTime = (System.nanoTime() - request.getArrivalNanos()) / 1_000_000;
+                Logger.log(Logger.Level.INFO, vehicleId,
+                        "DEPOSITING (waited {} ms) | N2: {}/{}, QF: {}/{}, Docks: {}/{}", waitTime,
+                        levelOf(0), capacityOf(0), levelOf(1), capacityOf(1), occupiedDocks, MAX_DOCKS);
+            }
+
+            stateChanged();
+            printDebugState(vehicleId, "DEPOSIT COMPLETE | N2={}/{}, QF={}/{}, Docks={}/{}, Waiting={}");
+            return request.getGranted();
+        } finally {
+            unlockStation();
+        }
+    }
+
+    /**
+     * Vehicle requests fuel.
+     * Returns true if docking/refuel succeeded, false if interrupted while waiting.
+     */
+    public boolean requestFuel(int nitrogen, int quantum, String vehicleId) {
+        long[] amount = FuelVector.of(nitrogen, quantum);
+        return refuel(amount, amount, vehicleId, NO_DEADLINE) != null;
+    }
+
+    /**
+     * As requestFuel, but gives up (false) if not admitted within the timeout.
+     * A docked supply vehicle that gives up on its return fuel keeps its dock
+     * until it calls releaseDock.
+     */
+    public boolean requestFuel(int nitrogen, int quantum, String vehicleId, long timeout, TimeUnit unit) {
+        long[] amount = FuelVector.of(nitrogen, quantum);
+        return refuel(amount, amount, vehicleId, deadlineAfter(timeout, unit)) != null;
+    }
+
+    /**
+     * Partial fill: docks as soon as at least minNitrogen, minQuantum are in
+     * the tanks and takes as much of the request as there is. Returns what
+     * was pumped, or null if interrupted.
+     */
+    public Fill requestFuel(int nitrogen, int quantum, int minNitrogen, int minQuantum, String vehicleId) {
+        return fill(refuel(FuelVector.of(nitrogen, quantum), FuelVector.of(minNitrogen, minQuantum), vehicleId,
+                NO_DEADLINE));
+    }
+
+    /**
+     * Partial fill over every fuel type: amount and min hold one entry per
+     * fuel. Returns what was pumped per fuel, or null if interrupted.
+     */
+    public long[] requestFuel(long[] amount, long[] min, String vehicleId) {
+        return refuel(amount.clone(), min.clone(), vehicleId, NO_DEADLINE);
+    }
+
+    private long[] refuel(long[] amount, long[] min, String vehicleId, long deadline) {
+        validate(amount, min, vehicleId, "Request");
+
+        lockStation("refuel");
+        try {
+            FuelRequest request = new FuelRequest(vehicleId, amount, min, FuelRequest.RequestType.FUEL_REQUEST,
+                    none);
+            enqueue(request);
+
+            Logger.log(Logger.Level.INFO, vehicleId, "arrives to REQUEST {}L N2, {}L QF (waiting in queue)",
+                    request.getNitrogenAmount(), request.getQuantumAmount());
+
+            if (!awaitAdmission(request, deadline)) {
+                return null;
+            }
+
+            if (Logger.isEnabled(Logger.Level.INFO)) {
+                long waitTime = (System.nanoTime() - request.getArrivalNanos()) / 1_000_000;
+                Logger.log(Logger.Level.INFO, vehicleId,
+                        "REFUELING (waited {} ms) | N2: {}/{}, QF: {}/{}, Docks: {}/{}", waitTime,
+                        levelOf(0), capacityOf(0), levelOf(1), capacityOf(1), occupiedDocks, MAX_DOCKS);
+            }
+
+            stateChanged();
+            printDebugState(vehicleId, "REFUEL COMPLETE | N2={}/{}, QF={}/{}, Docks={}/{}, Waiting={}");
+            return request.getGranted();
+        } finally {
+            unlockStation();
+        }
+    }
+
+    /**
+     * Vehicle releases docking spot and departs.
+     */
+    public void releaseDock(String vehicleId) {
+        lockStation("release dock");
+        try {
+            undock(vehicleId);
+            stateChanged();
+        } finally {
+            unlockStation();
+        }
+    }
+
+    private void undock(String vehicleId) {
+        if (occupiedDocks <= 0) {
+            Logger.log(Logger.Level.WARN, vehicleId, "attempted to release with no occupied docks");
+            return;
+        }
+
+        occupiedDocks--;
+        DockedVisit visit = dockedVehicles.remove(vehicleId);
+        if (visit != null && visit.reserve() != null) {
+            reserved = FuelVector.minus(reserved, visit.reserve()); // left without its return fuel
+            reservations--;
+        }
+        if (visit != null) {
+            long now = System.nanoTime();
+            visit.stats().hold.record(now - visit.dockedNanos());
+            visit.stats().visit.record(now - visit.arrivedNanos());
+            StationEvents.departed(metrics.name(), vehicleId, 0, visit.type(), now - visit.dockedNanos(),
+                    now - visit.arrivedNanos());
+        }
+        if (Logger.isEnabled(Logger.Level.INFO)) {
+            Logger.log(Logger.Level.INFO, vehicleId, "DEPARTED | N2: {}/{}, QF: {}/{}, Docks: {}/{}",
+                    levelOf(0), capacityOf(0), levelOf(1), capacityOf(1), occupiedDocks, MAX_DOCKS);
+        }
+    }
+
+    /**
+     * Non-blocking variant of depositFuel/requestFuel for drivers that do their
+     * own waiting. The request is queued and onAdmitted runs under the station
+     * lock as soon as the station admits it, which may be before this method
+     * returns. The vehicle still calls releaseDock when done.
+     *
+     * HANDOFF mode only: only there does the station admit waiters on their
+     * behalf. In BROADCAST mode every waiter admits itself after signalAll,
+     * so a request with no thread parked on it would never be admitted; the
+     * call throws IllegalStateException instead.
+     */
+    void submit(FuelRequest request, Runnable onAdmitted) {
+        requireHandoff("submit");
+        validate(request);
+
+        lockStation("submit");
+        try {
+            request.setAdmissionCallback(onAdmitted);
+            arrived(request);
+            dispatch();
+        } finally {
+            unlockStation();
+        }
+    }
+
+    /**
+     * Batch form of releaseDock and submit (HANDOFF mode only, as submit):
+     * undocks every vehicle in departures, queues every arrival in list
+     * order, then dispatches once, all in a single critical section. Each
+     * arrival must carry its admission callback (setAdmissionCallback), which
+     * runs under the station lock once it is admitted, possibly inside this
+     * call. CombiningFuelStation drives it.
+     */
+    void submitBatch(List<String> departures, List<FuelRequest> arrivals) {
+        requireHandoff("submitBatch");
+        for (FuelRequest request : arrivals) {
+            validate(request);
+        }
+
+        lockStation("batch");
+        try {
+            for (String vehicleId : departures) {
+                undock(vehicleId);
+            }
+            for (FuelRequest request : arrivals) {
+                arrived(request);
+            }
+            dispatch();
+        } finally {
+            unlockStation();
+        }
+    }
+
+    /**
+     * Withdraws a request queued by submit or submitBatch; false if it has
+     * already been admitted (the caller then owns a dock).
+     */
+    boolean cancel(FuelRequest request) {
+        lockStation("cancel");
+        try {
+            if (request.isServed()) {
                 return false;
             }
+            withdraw(request);
+            statsFor(request).aborts.increment();
+            aborted(request, "interrupted");
+            return true;
+        } finally {
+            unlockStation();
         }
+    }
 
-        // Full deposit only (assignment requirement).
-        nitrogenLevel += nitrogen;
-        quantumLevel += quantum;
-        occupiedDocks++;
-        dockedVehicles.add(vehicleId);
-        request.setServed(true);
-        waitingQueue.remove(request);
+    /** Throws IllegalArgumentException if the station could never serve request; see submit. */
+    void validate(FuelRequest request) {
+        validate(request.getAmount(), request.getMin(), request.getVehicleId(),
+                request.getType() == FuelRequest.RequestType.FUEL_DEPOSIT ? "Deposit" : "Request");
+    }
 
-        long waitTime = System.currentTimeMillis() - startTime;
-        System.out.printf("[%d ms] %s DEPOSITING (waited %d ms) | N2: %d/%d, QF: %d/%d, Docks: %d/%d\n",
-                System.currentTimeMillis(), vehicleId, waitTime,
-                nitrogenLevel, MAX_NITROGEN, quantumLevel, MAX_QUANTUM,
-                occupiedDocks, MAX_DOCKS);
+    private void requireHandoff(String call) {
+        if (wakeupMode != WakeupMode.HANDOFF) {
+            throw new IllegalStateException(call + " needs a HANDOFF-mode station: in BROADCAST mode only a"
+                    + " parked waiter admits itself, so a submitted request would never be admitted");
+        }
+    }
 
-        notifyAll();
-        printDebugState("DEPOSIT COMPLETE: " + vehicleId);
-        return true;
+    private void enqueue(FuelRequest request) {
+        if (wakeupMode == WakeupMode.HANDOFF) {
+            request.setCondition(lock.newCondition());
+        }
+        arrived(request);
     }
 
     /**
-     * Vehicle requests fuel.
-     * Returns true if docking/refuel succeeded, false if interrupted while waiting.
+     * Every arrival comes through here. A docked supply vehicle's return
+     * refuel that its reserve covers is admitted at once (its admission
+     * callback, if any, runs before this returns); one that wants more gives
+     * the reserve back and queues like any other request. Everything else
+     * queues, with Arrival and Queued going together; its position is the
+     * queue length.
      */
-    public synchronized boolean requestFuel(int nitrogen, int quantum, String vehicleId) {
-        validateAmounts(nitrogen, quantum);
-        if (nitrogen > MAX_NITROGEN || quantum > MAX_QUANTUM) {
-            throw new IllegalArgumentException("Request exceeds station capacity: " + vehicleId);
+    private void arrived(FuelRequest request) {
+        String type = typeOf(request);
+        StationEvents.arrival(metrics.name(), request.getVehicleId(), 0, type,
+                request.getType() == FuelRequest.RequestType.FUEL_DEPOSIT,
+                FuelVector.get(request.getAmount(), 0), FuelVector.get(request.getAmount(), 1));
+        DockedVisit visit = dockedVehicles.get(request.getVehicleId());
+        boolean refuel = request.getType() == FuelRequest.RequestType.FUEL_REQUEST;
+        if (visit != null && visit.reserve() != null && refuel) {
+            if (FuelVector.covers(visit.reserve(), request.getMin())) {
+                admit(request);
+                if (request.getAdmissionCallback() != null) {
+                    request.getAdmissionCallback().run();
+                }
+                return;
+            }
+            release(request.getVehicleId(), visit);
         }
+        StationEvents.queued(metrics.name(), request.getVehicleId(), 0, type, waitingQueue.size());
+        waitingQueue.add(request, visit != null && refuel);
+    }
 
-        long startTime = System.currentTimeMillis();
-        FuelRequest request = new FuelRequest(vehicleId, nitrogen, quantum, FuelRequest.RequestType.FUEL_REQUEST);
-        waitingQueue.add(request);
+    /** Lock held: puts a docked supply vehicle's reserve back on offer. */
+    private void release(String vehicleId, DockedVisit visit) {
+        reserved = FuelVector.minus(reserved, visit.reserve());
+        reservations--;
+        dockedVehicles.put(vehicleId, visit.withoutReserve());
+    }
 
-        System.out.printf("[%d ms] %s arrives to REQUEST %dL N2, %dL QF (waiting in queue)\n",
-                System.currentTimeMillis(), vehicleId, nitrogen, quantum);
+    /** What the tanks hold that is on offer: the level less the reserved return fuel. */
+    private long[] available() {
+        return reservations == 0 ? level : FuelVector.minus(level, reserved);
+    }
 
-        while (!canSatisfyFuelRequest(nitrogen, quantum, vehicleId) || !isFirstSatisfiable(request)) {
+    /**
+     * Blocks until the request has been admitted. Returns false (with the
+     * interrupt flag set) if the vehicle was interrupted before admission, or
+     * false once the deadline (System.nanoTime(), or NO_DEADLINE) has passed.
+     */
+    private boolean awaitAdmission(FuelRequest request, long deadline) {
+        if (request.isServed()) {
+            return true; // a return refuel its reserve covered, see arrived
+        }
+        if (wakeupMode == WakeupMode.HANDOFF) {
+            // The arrival itself may be serviceable straight away.
+            dispatch();
+            boolean woken = false;
+            while (!request.isServed()) {
+                try {
+                    if (!await(request.getCondition(), deadline, request, woken)) {
+                        withdraw(request);
+                        statsFor(request).timeouts.increment();
+                        aborted(request, "timeout");
+                        return false;
+                    }
+                } catch (InterruptedException e) {
+                    if (request.isServed()) {
+                        // Admitted while the interrupt was being delivered: keep the dock.
+                        Thread.currentThread().interrupt();
+                        return true;
+                    }
+                    withdraw(request);
+                    statsFor(request).aborts.increment();
+                    aborted(request, "interrupted");
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                woken = true;
+            }
+            return true;
+        }
+
+        boolean woken = false;
+        while (!canSatisfy(request) || !isFirstSatisfiable(request)) {
             try {
-                wait();
+                if (!await(stateCv, deadline, request, woken)) {
+                    withdraw(request);
+                    statsFor(request).timeouts.increment();
+                    aborted(request, "timeout");
+                    return false;
+                }
             } catch (InterruptedException e) {
-                waitingQueue.remove(request);
-                notifyAll();
+                withdraw(request);
+                statsFor(request).aborts.increment();
+                aborted(request, "interrupted");
                 Thread.currentThread().interrupt();
                 return false;
             }
+            woken = true;
         }
+        admit(request);
+        return true;
+    }
 
-        nitrogenLevel -= nitrogen;
-        quantumLevel -= quantum;
+    /**
+     * One wait on cv for request, recorded as a QueueWait event; false if the
+     * deadline had already passed. stamps is let go while waiting, and so is
+     * a profiled hold (other holders overwrite the held fields meanwhile).
+     * again: the request was woken before and still not admitted, which the
+     * profile counts as a futile wakeup.
+     */
+    private boolean await(Condition cv, long deadline, FuelRequest request, boolean again)
+            throws InterruptedException {
+        long left = deadline == NO_DEADLINE ? Long.MAX_VALUE : deadline - System.nanoTime();
+        if (left <= 0) {
+            return false;
+        }
+        LockProfile.Section section = heldSection;
+        long held = 0;
+        if (section != null) {
+            held = heldNanos + System.nanoTime() - heldSince;
+            if (again) {
+                lockProfile.futileWakeups.increment();
+            }
+        }
+        StationEvents.QueueWait parked = StationEvents.beginWait();
+        stamps.unlockWrite(writeStamp);
+        try {
+            if (deadline == NO_DEADLINE) {
+                cv.await();
+            } else {
+                cv.awaitNanos(left);
+            }
+        } finally {
+            writeStamp = stamps.writeLock();
+            if (parked != null) {
+                StationEvents.endWait(parked, metrics.name(), request.getVehicleId(), 0, typeOf(request));
+            }
+            if (section != null) {
+                heldSection = section;
+                heldNanos = held;
+                heldSince = System.nanoTime();
+                lockProfile.wakeups.increment();
+            }
+        }
+        return true;
+    }
 
-        // Only increment dock count if we didn't already have one
-        if (!dockedVehicles.contains(vehicleId)) {
-            occupiedDocks++;
-            dockedVehicles.add(vehicleId);
+    /**
+     * Takes the station lock and, outermost, the write side of stamps. When
+     * profiling, the outermost acquisition is timed and charged to section.
+     */
+    private void lockStation(String section) {
+        if (lockProfile != null) {
+            profiledLock(section);
+            return;
+        }
+        lock.lock();
+        if (lock.getHoldCount() == 1) {
+            writeStamp = stamps.writeLock();
         }
+    }
 
-        request.setServed(true);
+    private void profiledLock(String section) {
+        long start = System.nanoTime();
+        boolean contended = !lock.tryLock();
+        if (contended) {
+            lock.lock();
+        }
+        if (lock.getHoldCount() == 1) {
+            writeStamp = stamps.writeLock();
+            heldSince = System.nanoTime();
+            heldNanos = 0;
+            heldSection = lockProfile.section(section);
+            heldSection.acquire.record(heldSince - start);
+            if (contended) {
+                heldSection.contended.increment();
+            }
+        }
+    }
+
+    private void unlockStation() {
+        if (lock.getHoldCount() == 1) {
+            if (heldSection != null) {
+                heldSection.hold.record(heldNanos + System.nanoTime() - heldSince);
+                heldSection = null;
+            }
+            stamps.unlockWrite(writeStamp);
+        }
+        lock.unlock();
+    }
+
+    /**
+     * A waiting request gives up: it leaves the queue and the requests it may
+     * have held back (scannable FIFO) are re-evaluated straight away.
+     */
+    private void withdraw(FuelRequest request) {
         waitingQueue.remove(request);
+        stateChanged();
+    }
 
-        long waitTime = System.currentTimeMillis() - startTime;
-        System.out.printf("[%d ms] %s REFUELING (waited %d ms) | N2: %d/%d, QF: %d/%d, Docks: %d/%d\n",
-                System.currentTimeMillis(), vehicleId, waitTime,
-                nitrogenLevel, MAX_NITROGEN, quantumLevel, MAX_QUANTUM,
-                occupiedDocks, MAX_DOCKS);
+    private void aborted(FuelRequest request, String reason) {
+        StationEvents.aborted(metrics.name(), request.getVehicleId(), 0, typeOf(request), reason,
+                System.nanoTime() - request.getArrivalNanos());
+    }
 
-        notifyAll();
-        printDebugState("REFUEL COMPLETE: " + vehicleId);
-        return true;
+    /** The -Dstation.partial share of amount, rounded up: the minimum a simulated vehicle accepts. */
+    static int acceptable(int amount) {
+        return (int) ((amount * (long) PARTIAL_PERCENT + 99) / 100);
+    }
+
+    private static long deadlineAfter(long timeout, TimeUnit unit) {
+        long nanos = unit.toNanos(timeout);
+        return nanos >= NO_DEADLINE / 2 ? NO_DEADLINE : System.nanoTime() + nanos;
     }
 
     /**
-     * Vehicle releases docking spot and departs.
+     * Applies a request to the station state and takes it off the queue.
      */
-    public synchronized void releaseDock(String vehicleId) {
-        if (occupiedDocks <= 0) {
-            System.err.printf("[%d ms] WARN: %s attempted to release with no occupied docks\n",
-                    System.currentTimeMillis(), vehicleId);
-            notifyAll();
-            return;
+    private void admit(FuelRequest request) {
+        String vehicleId = request.getVehicleId();
+        long now = System.nanoTime();
+        String type = typeOf(request);
+        StationMetrics.VehicleStats stats = metrics.vehicle(type);
+        if (request.getType() == FuelRequest.RequestType.FUEL_DEPOSIT) {
+            // Full deposit unless the vehicle accepts a partial unload; then as much as fits.
+            long[] granted = FuelVector.min(request.getAmount(), FuelVector.minus(capacity, level));
+            request.setGranted(granted);
+            level = FuelVector.plus(level, granted);
+            occupiedDocks++;
+            // Admission checked that the return fuel is there; hold it back until the vehicle takes it.
+            long[] reserve = FuelVector.covers(none, request.getReturn()) ? null : request.getReturn();
+            if (reserve != null) {
+                reserved = FuelVector.plus(reserved, reserve);
+                reservations++;
+            }
+            dockedVehicles.put(vehicleId, new DockedVisit(type, stats, request.getArrivalNanos(), now, reserve));
+        } else {
+            DockedVisit visit = dockedVehicles.get(vehicleId);
+            long[] granted;
+            if (visit != null && visit.reserve() != null) {
+                granted = FuelVector.min(request.getAmount(), visit.reserve()); // its own, see arrived
+                release(vehicleId, visit);
+            } else {
+                granted = FuelVector.min(request.getAmount(), available());
+            }
+            request.setGranted(granted);
+            level = FuelVector.minus(level, granted);
+            drawn = FuelVector.plus(drawn, granted);
+
+            // Only increment dock count if we didn't already have one
+            if (!dockedVehicles.containsKey(vehicleId)) {
+                occupiedDocks++;
+                dockedVehicles.put(vehicleId, new DockedVisit(type, stats, request.getArrivalNanos(), now, null));
+            }
+        }
+        stats.wait.record(now - request.getArrivalNanos());
+        if (!Arrays.equals(request.getGranted(), request.getAmount())) {
+            stats.partials.increment();
+        }
+        StationEvents.admitted(metrics.name(), vehicleId, 0, type, now - request.getArrivalNanos(),
+                FuelVector.get(request.getGranted(), 0), FuelVector.get(request.getGranted(), 1), -1);
+        request.setServed(true);
+        waitingQueue.remove(request);
+    }
+
+    /**
+     * Vehicle type of a request, for metrics and events: a docked vehicle's
+     * return refuel counts towards the type it docked as (Supply), otherwise
+     * the request type decides.
+     */
+    private String typeOf(FuelRequest request) {
+        DockedVisit visit = dockedVehicles.get(request.getVehicleId());
+        if (visit != null) {
+            return visit.type();
         }
+        return request.getType() == FuelRequest.RequestType.FUEL_DEPOSIT ? "Supply" : "Regular";
+    }
 
-        occupiedDocks--;
-        dockedVehicles.remove(vehicleId);
-        System.out.printf("[%d ms] %s DEPARTED | N2: %d/%d, QF: %d/%d, Docks: %d/%d\n",
-                System.currentTimeMillis(), vehicleId,
-                nitrogenLevel, MAX_NITROGEN, quantumLevel, MAX_QUANTUM,
-                occupiedDocks, MAX_DOCKS);
+    private StationMetrics.VehicleStats statsFor(FuelRequest request) {
+        return metrics.vehicle(typeOf(request));
+    }
 
-        notifyAll();
+    /**
+     * HANDOFF mode: admit every request that is now serviceable, in scannable
+     * FIFO order, and wake only their owners.
+     */
+    private void dispatch() {
+        long start = lockProfile == null ? 0 : System.nanoTime();
+        if (lockProfile != null) {
+            lockProfile.scanLength.record(waitingQueue.size());
+        }
+        StationEvents.WakeupScan scan = StationEvents.beginScan(waitingQueue.size());
+        int admitted = 0;
+        FuelRequest next;
+        while ((next = firstSatisfiable()) != null) {
+            admit(next);
+            admitted++;
+            if (next.getCondition() != null) {
+                next.getCondition().signal();
+            } else {
+                next.getAdmissionCallback().run();
+            }
+        }
+        StationEvents.endScan(scan, metrics.name(), admitted);
+        if (lockProfile != null) {
+            lockProfile.section("dispatch").hold.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Called after every change to levels, docks or the queue.
+     */
+    private void stateChanged() {
+        if (wakeupMode == WakeupMode.HANDOFF) {
+            dispatch();
+        } else {
+            if (lockProfile != null) {
+                lockProfile.scanLength.record(waitingQueue.size()); // every waiter wakes to re-check
+            }
+            stateCv.signalAll();
+        }
     }
 
-    private void validateAmounts(int nitrogen, int quantum) {
-        if (nitrogen < 0 || quantum < 0) {
+    private void validate(long[] amount, long[] min, String vehicleId, String what) {
+        if (amount.length != capacity.length || min.length != capacity.length) {
+            throw new IllegalArgumentException("Expected one amount per fuel type (" + capacity.length + ")");
+        }
+        if (!FuelVector.nonNegative(amount)) {
             throw new IllegalArgumentException("Fuel amounts must be non-negative");
         }
+        if (!FuelVector.nonNegative(min) || !FuelVector.covers(amount, min)) {
+            throw new IllegalArgumentException("Minimum fill must lie between zero and the amount requested");
+        }
+        if (!FuelVector.covers(capacity, amount)) {
+            throw new IllegalArgumentException(what + " exceeds station capacity: " + vehicleId);
+        }
+    }
+
+    private static Fill fill(long[] granted) {
+        return granted == null ? null : new Fill((int) granted[0], (int) granted[1]);
     }
 
-    private boolean canSatisfyDeposit(int nitrogen, int quantum, int requiredReturnNitrogen,
-            int requiredReturnQuantum) {
+    private boolean canSatisfyDeposit(long[] deposit, long[] requiredReturn) {
         // SAFE ENTRY CHECK:
         // Do not enter if the station cannot provide the return fuel immediately after
         // deposit.
         // We calculate the POST-DEPOSIT levels and check if they satisfy the return
         // requirement.
 
-        boolean spaceForDeposit = nitrogenLevel + nitrogen <= MAX_NITROGEN
-                && quantumLevel + quantum <= MAX_QUANTUM;
+        boolean spaceForDeposit = FuelVector.fits(level, deposit, capacity);
 
-        boolean fuelForReturn = (nitrogenLevel + nitrogen) >= requiredReturnNitrogen
-                && (quantumLevel + quantum) >= requiredReturnQuantum;
+        boolean fuelForReturn = FuelVector.coversAfter(available(), deposit, requiredReturn);
 
         return occupiedDocks < MAX_DOCKS && spaceForDeposit && fuelForReturn;
     }
 
-    private boolean canSatisfyFuelRequest(int nitrogen, int quantum, String vehicleId) {
+    /** Checks the minimum; a partial request then gets as much more as there is room (or fuel) for. */
+    private boolean canSatisfy(FuelRequest req) {
+        if (req.getType() == FuelRequest.RequestType.FUEL_DEPOSIT) {
+            return canSatisfyDeposit(req.getMin(), req.getReturn());
+        }
+        return canSatisfyFuelRequest(req.getMin(), req.getVehicleId());
+    }
+
+    private boolean canSatisfyFuelRequest(long[] fuel, String vehicleId) {
         // If vehicle is already docked, it doesn't need a new dock.
-        boolean hasDock = dockedVehicles.contains(vehicleId);
+        boolean hasDock = dockedVehicles.containsKey(vehicleId);
         boolean waitingForDock = !hasDock && occupiedDocks >= MAX_DOCKS;
 
         if (waitingForDock) {
             return false;
         }
 
-        return nitrogenLevel >= nitrogen && quantumLevel >= quantum;
+        return FuelVector.covers(available(), fuel);
     }
 
     /**
      * Scannable FIFO: target can proceed only if no earlier request is currently
-     * satisfiable.
+     * satisfiable. The indexed queue finds the earliest satisfiable request
+     * directly, so this no longer walks every earlier waiter.
      */
     private boolean isFirstSatisfiable(FuelRequest targetRequest) {
-        // iterate through queue from start
-        for (FuelRequest req : waitingQueue) {
-            if (req == targetRequest) {
-                return true;
-            }
+        return firstSatisfiable() == targetRequest;
+    }
 
-            if (req.getType() == FuelRequest.RequestType.FUEL_DEPOSIT) {
-                if (canSatisfyDeposit(req.getNitrogenAmount(), req.getQuantumAmount(),
-                        req.getReturnNitrogen(), req.getReturnQuantum())) {
-                    return false;
-                }
-            } else {
-                if (canSatisfyFuelRequest(req.getNitrogenAmount(), req.getQuantumAmount(), req.getVehicleId())) {
-                    return false;
-                }
-            }
-        }
-        return true;
+    /**
+     * The queue's earliest serviceable request. The reserved return fuel is
+     * taken out of both level and capacity: it is not on offer, and the
+     * space a deposit needs stays what it is.
+     */
+    private FuelRequest firstSatisfiable() {
+        long[] room = reservations == 0 ? capacity : FuelVector.minus(capacity, reserved);
+        return waitingQueue.firstSatisfiable(available(), room, occupiedDocks < MAX_DOCKS);
+    }
+
+    /** Fuel i for the two-fuel log lines; 0 past the station's width. */
+    private long levelOf(int fuel) {
+        return FuelVector.get(level, fuel);
+    }
+
+    private long capacityOf(int fuel) {
+        return FuelVector.get(capacity, fuel);
     }
 
     /**
-     * Helper to print detailed debug state of the station.
+     * Helper to log detailed debug state of the station. Only active at DEBUG
+     * level; the lines are queued for the logger thread, not printed here.
      */
-    private void printDebugState(String reason) {
-        System.out.println("\n--- DEBUG STATE [" + reason + "] ---");
-        System.out.printf("Values: N2=%d/%d, QF=%d/%d, Docks=%d/%d\n",
-                nitrogenLevel, MAX_NITROGEN, quantumLevel, MAX_QUANTUM, occupiedDocks, MAX_DOCKS);
-        System.out.println("Wait Queue:");
-        if (waitingQueue.isEmpty()) {
-            System.out.println("  (Empty)");
-        } else {
-            for (FuelRequest req : waitingQueue) {
-                String typeStr = (req.getType() == FuelRequest.RequestType.FUEL_DEPOSIT) ? "DEPOSIT" : "REQUEST";
-                System.out.printf("  - %s [%s]: N2=%d, QF=%d (Served=%s)\n",
-                        req.getVehicleId(), typeStr, req.getNitrogenAmount(), req.getQuantumAmount(), req.isServed());
-            }
+    private void printDebugState(String vehicleId, String template) {
+        if (!Logger.isEnabled(Logger.Level.DEBUG)) {
+            return;
+        }
+        Logger.log(Logger.Level.DEBUG, vehicleId, template, levelOf(0), capacityOf(0), levelOf(1), capacityOf(1),
+                occupiedDocks, MAX_DOCKS, waitingQueue.size());
+        for (FuelRequest req : waitingQueue) {
+            String line = (req.getType() == FuelRequest.RequestType.FUEL_DEPOSIT)
+                    ? "queued [DEPOSIT]: N2={}, QF={}"
+                    : "queued [REQUEST]: N2={}, QF={}";
+            Logger.log(Logger.Level.DEBUG, req.getVehicleId(), line, req.getNitrogenAmount(), req.getQuantumAmount());
         }
-        System.out.println("----------------------------------------\n");
     }
 }
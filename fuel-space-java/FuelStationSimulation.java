@@ -1,3 +1,5 @@
+import java.util.concurrent.ExecutorService;
+
 /**
  * Main simulation program for the Fuel Space Station.
  */
@@ -9,6 +11,8 @@ public class FuelStationSimulation {
         int numRegularVehicles = 5;
         int numSupplyVehicles = 2;
         int numTrips = 3;
+        FuelStation.WakeupMode wakeupMode = FuelStation.WakeupMode.BROADCAST;
+        FleetMode fleetMode = FleetMode.PLATFORM;
 
         try {
             if (args.length > 0) {
@@ -29,9 +33,15 @@ public class FuelStationSimulation {
             if (args.length > 5) {
                 numSupplyVehicles = Integer.parseInt(args[5]);
             }
-        } catch (NumberFormatException e) {
-            System.err.println("Invalid numeric argument.");
-            System.err.println("Usage: java FuelStationSimulation [numTrips] [maxDocks] [maxNitrogen] [maxQuantum] [numRegularVehicles] [numSupplyVehicles]");
+            if (args.length > 6) {
+                wakeupMode = FuelStation.WakeupMode.valueOf(args[6].toUpperCase());
+            }
+            if (args.length > 7) {
+                fleetMode = FleetMode.parse(args[7]);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid argument: " + e.getMessage());
+            System.err.println("Usage: java FuelStationSimulation [numTrips] [maxDocks] [maxNitrogen] [maxQuantum] [numRegularVehicles] [numSupplyVehicles] [broadcast|handoff] [platform|virtual]");
             return;
         }
 
@@ -77,42 +87,63 @@ public class FuelStationSimulation {
                 initialNitrogen, initialQuantum);
         System.out.printf("Vehicles: %d regular, %d supply%n",
                 numRegularVehicles, numSupplyVehicles);
-        System.out.printf("Trips per vehicle: %d%n%n", numTrips);
+        System.out.printf("Trips per vehicle: %d%n", numTrips);
+        System.out.printf("Wakeup mode: %s%n", wakeupMode);
+        System.out.printf("Fleet mode: %s%n%n", fleetMode);
 
-        FuelStation station = new FuelStation(maxDocks, maxNitrogen, maxQuantum, initialNitrogen, initialQuantum);
+        FuelStation station = new FuelStation(maxDocks, maxNitrogen, maxQuantum, initialNitrogen, initialQuantum,
+                wakeupMode);
 
         int maxTravelTime = 1000;
         int maxServiceTime = 300;
 
-        Thread[] regularVehicles = new Thread[numRegularVehicles];
-        for (int i = 0; i < numRegularVehicles; i++) {
-            regularVehicles[i] = new RegularVehicle(
-                    station, i + 1, regularNitrogen, regularQuantum,
-                    numTrips, maxTravelTime, maxServiceTime);
-            regularVehicles[i].start();
-        }
-
-        Thread[] supplyVehicles = new Thread[numSupplyVehicles];
-        for (int i = 0; i < numSupplyVehicles; i++) {
-            supplyVehicles[i] = new SupplyVehicle(
-                    station, i + 1, supplyNitrogen, supplyQuantum,
-                    supplyReturnNitrogen, supplyReturnQuantum,
-                    numTrips, maxTravelTime, maxServiceTime);
-            supplyVehicles[i].start();
-        }
+        RegularVehicle[] regularVehicles = new RegularVehicle[numRegularVehicles];
+        SupplyVehicle[] supplyVehicles = new SupplyVehicle[numSupplyVehicles];
+        long startTime = System.nanoTime();
 
-        try {
-            for (Thread vehicle : regularVehicles) {
-                vehicle.join();
+        // close() waits for every vehicle to retire.
+        try (ExecutorService fleet = fleetMode.newExecutor()) {
+            for (int i = 0; i < numRegularVehicles; i++) {
+                regularVehicles[i] = new RegularVehicle(
+                        station, i + 1, regularNitrogen, regularQuantum,
+                        numTrips, maxTravelTime, maxServiceTime);
+                fleet.execute(regularVehicles[i]);
             }
-            for (Thread vehicle : supplyVehicles) {
-                vehicle.join();
+
+            for (int i = 0; i < numSupplyVehicles; i++) {
+                supplyVehicles[i] = new SupplyVehicle(
+                        station, i + 1, supplyNitrogen, supplyQuantum,
+                        supplyReturnNitrogen, supplyReturnQuantum,
+                        numTrips, maxTravelTime, maxServiceTime);
+                fleet.execute(supplyVehicles[i]);
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
         }
 
+        long elapsedMs = Math.max(1, (System.nanoTime() - startTime) / 1_000_000);
+        long visits = 0;
+        for (RegularVehicle vehicle : regularVehicles) {
+            visits += vehicle.getCompletedTrips();
+        }
+        for (SupplyVehicle vehicle : supplyVehicles) {
+            visits += vehicle.getCompletedTrips();
+        }
+
+        Logger.flush();
         System.out.println();
         System.out.println("=== SIMULATION COMPLETE ===");
+        System.out.printf("Completed %d visits in %d ms (%.1f visits/s)%n",
+                visits, elapsedMs, visits * 1000.0 / elapsedMs);
+
+        // -Dstation.metrics=true adds the station's latency histograms and gauges.
+        if (Boolean.getBoolean("station.metrics")) {
+            System.out.println();
+            station.metrics().dump(System.out);
+        }
+
+        // -Dstation.lockprofile=true adds lock wait and hold times per critical section.
+        if (station.lockProfile() != null) {
+            System.out.println();
+            station.lockProfile().dump(System.out);
+        }
     }
 }
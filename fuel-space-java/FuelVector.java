@@ -0,0 +1,87 @@
+/**
+ * Resource vectors: one long per fuel type, indexed the same way in every
+ * array a station holds (capacities, levels, demands, return fuel). Fuel 0
+ * is nitrogen and fuel 1 quantum for the two-fuel API.
+ *
+ * The checks run over the whole width without branching: they OR together
+ * the per-fuel slack and test the sign once, so the loop body is the same
+ * for every fuel and the JIT can unroll (and, for wide vectors, vectorize)
+ * it. Amounts stay far below 2^62, so the differences cannot overflow.
+ * Arrays passed in are never modified; the arithmetic returns new ones.
+ */
+public final class FuelVector {
+
+    private FuelVector() {
+    }
+
+    /** The two-fuel vector {nitrogen, quantum}. */
+    public static long[] of(int nitrogen, int quantum) {
+        return new long[] { nitrogen, quantum };
+    }
+
+    /** Fuel i of v, or 0 past its width (for two-fuel logs and gauges). */
+    public static long get(long[] v, int i) {
+        return i < v.length ? v[i] : 0;
+    }
+
+    /** have >= need for every fuel. */
+    public static boolean covers(long[] have, long[] need) {
+        long gap = 0;
+        for (int i = 0; i < need.length; i++) {
+            gap |= have[i] - need[i];
+        }
+        return gap >= 0;
+    }
+
+    /** level + add <= capacity for every fuel. */
+    public static boolean fits(long[] level, long[] add, long[] capacity) {
+        long gap = 0;
+        for (int i = 0; i < add.length; i++) {
+            gap |= capacity[i] - level[i] - add[i];
+        }
+        return gap >= 0;
+    }
+
+    /** level + add >= need for every fuel. */
+    public static boolean coversAfter(long[] level, long[] add, long[] need) {
+        long gap = 0;
+        for (int i = 0; i < need.length; i++) {
+            gap |= level[i] + add[i] - need[i];
+        }
+        return gap >= 0;
+    }
+
+    /** Every fuel >= 0. */
+    public static boolean nonNegative(long[] v) {
+        long sign = 0;
+        for (long x : v) {
+            sign |= x;
+        }
+        return sign >= 0;
+    }
+
+    /** Per fuel, the smaller of want and limit. */
+    public static long[] min(long[] want, long[] limit) {
+        long[] out = new long[want.length];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = Math.min(want[i], limit[i]);
+        }
+        return out;
+    }
+
+    public static long[] plus(long[] a, long[] b) {
+        long[] out = new long[a.length];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = a[i] + b[i];
+        }
+        return out;
+    }
+
+    public static long[] minus(long[] a, long[] b) {
+        long[] out = new long[a.length];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = a[i] - b[i];
+        }
+        return out;
+    }
+}
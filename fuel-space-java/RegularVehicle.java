@@ -3,8 +3,9 @@ import java.util.Random;
 /**
  * Regular vehicle that periodically visits the station to request fuel.
  */
-public class RegularVehicle extends Thread {
+public class RegularVehicle implements Runnable {
     private final FuelStation station;
+    private final int id;
     private final String vehicleId;
     private final int nitrogenNeeded;
     private final int quantumNeeded;
@@ -12,16 +13,18 @@ public class RegularVehicle extends Thread {
     private final Random random;
     private final int maxTravelTime;
     private final int maxServiceTime;
+    private int completedTrips;
 
     public RegularVehicle(FuelStation station, int id, int nitrogenNeeded,
             int quantumNeeded, int numTrips,
             int maxTravelTime, int maxServiceTime) {
         this.station = station;
+        this.id = id;
         this.vehicleId = "Vehicle-" + id;
         this.nitrogenNeeded = nitrogenNeeded;
         this.quantumNeeded = quantumNeeded;
         this.numTrips = numTrips;
-        this.random = new Random();
+        this.random = WorkloadTrace.vehicleRandom(WorkloadTrace.REFUEL, id);
         this.maxTravelTime = maxTravelTime;
         this.maxServiceTime = maxServiceTime;
     }
@@ -33,21 +36,29 @@ public class RegularVehicle extends Thread {
                 int travelTime = random.nextInt(maxTravelTime) + 100;
                 Thread.sleep(travelTime);
 
-                boolean dockAcquired = station.requestFuel(nitrogenNeeded, quantumNeeded, vehicleId);
-                if (!dockAcquired) {
+                // Drawn before docking so the trace holds the whole visit; same draw order as before.
+                int serviceTime = random.nextInt(maxServiceTime) + 50;
+                WorkloadTrace.record(WorkloadTrace.REFUEL, id, nitrogenNeeded, quantumNeeded, 0, 0, serviceTime, 0);
+                FuelStation.Fill fill = station.requestFuel(nitrogenNeeded, quantumNeeded,
+                        FuelStation.acceptable(nitrogenNeeded), FuelStation.acceptable(quantumNeeded), vehicleId);
+                if (fill == null) {
                     return;
                 }
 
                 try {
-                    int serviceTime = random.nextInt(maxServiceTime) + 50;
                     Thread.sleep(serviceTime);
                 } finally {
                     station.releaseDock(vehicleId);
                 }
+                completedTrips++;
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 return;
             }
         }
     }
+
+    public int getCompletedTrips() {
+        return completedTrips;
+    }
 }
@@ -0,0 +1,411 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Waiting queue for the FuelStation, indexed by request type and fuel demand.
+ *
+ * Requests with identical demand are grouped into a FIFO bucket, so every
+ * bucket is either entirely satisfiable or entirely blocked. Demand here is
+ * what admission needs: the minimum of a request that accepts a partial
+ * fill, the full amount otherwise. Buckets sit in DemandTrees keyed on the
+ * demand for fuels 0 and 1 (nitrogen, then quantum), in which every node
+ * knows its earliest bucket, so "which is the earliest request that can be
+ * served right now" is a prefix-minimum over O(log^2 C) nodes for tanks of
+ * capacity C, whatever the number of waiters or demand sizes. Any further
+ * fuels cannot be part of the key: on a wider station the lookup descends
+ * to the buckets, still pruning every subtree whose earliest bucket comes
+ * later than the best found so far, and checks them with one FuelVector
+ * pass over the whole demand vector.
+ *
+ * A deposit must fit the free space and also leave the return fuel
+ * (return <= level + deposit). Most deposits bring more than they take
+ * back, so the second condition always holds and they are keyed on their
+ * deposit against the free space. A deposit that would leave short is
+ * keyed instead on its shortfall (return - deposit, per fuel) against the
+ * level, the condition that actually holds it back, and its space is
+ * checked at the bucket.
+ * Insertion and removal are O(log^2 C) as well.
+ */
+public class SatisfiabilityQueue implements Iterable<FuelRequest> {
+
+    /** Requests with the same demand, in arrival order. */
+    private static class Bucket {
+        final DemandTree index;
+        final long key0, key1; // its point in index
+        final long[] need;
+        final long[] returnFuel;
+        final LinkedHashSet<FuelRequest> requests = new LinkedHashSet<>();
+
+        Bucket(DemandTree index, long key0, long key1, long[] need, long[] returnFuel) {
+            this.index = index;
+            this.key0 = key0;
+            this.key1 = key1;
+            this.need = need;
+            this.returnFuel = returnFuel;
+        }
+
+        FuelRequest head() {
+            return requests.iterator().next();
+        }
+
+        long sequence() {
+            return head().getSequence();
+        }
+    }
+
+    /**
+     * Buckets by two keys, each in 0..limit (larger keys are kept at
+     * limit + 1, beyond any bound). A segment tree over key 0 whose every
+     * node holds a segment tree over key 1 with the earliest bucket of that
+     * key-0 range at each key 1; both levels only grow where buckets are,
+     * and drop nodes that empty. Buckets sharing a point (they differ in a
+     * further fuel or their return fuel) hang off its leaf.
+     */
+    private static final class DemandTree {
+        private static final class Outer {
+            Outer lo, hi;
+            Inner inner;
+        }
+
+        private static final class Inner {
+            Inner lo, hi;
+            Bucket min;
+            List<Bucket> buckets; // leaves of the innermost trees only
+        }
+
+        private final long limit0, limit1;
+        private Outer root;
+
+        DemandTree(long limit0, long limit1) {
+            this.limit0 = limit0 + 1;
+            this.limit1 = limit1 + 1;
+        }
+
+        long key0(long amount) {
+            return Math.min(amount, limit0);
+        }
+
+        long key1(long amount) {
+            return Math.min(amount, limit1);
+        }
+
+        /** The buckets at a point, or null. */
+        List<Bucket> at(long k0, long k1) {
+            Outer o = root;
+            for (long from = 0, to = limit0; o != null && from < to; ) {
+                long mid = from + (to - from) / 2;
+                if (k0 <= mid) {
+                    o = o.lo;
+                    to = mid;
+                } else {
+                    o = o.hi;
+                    from = mid + 1;
+                }
+            }
+            Inner i = o == null ? null : o.inner;
+            for (long from = 0, to = limit1; i != null && from < to; ) {
+                long mid = from + (to - from) / 2;
+                if (k1 <= mid) {
+                    i = i.lo;
+                    to = mid;
+                } else {
+                    i = i.hi;
+                    from = mid + 1;
+                }
+            }
+            return i == null ? null : i.buckets;
+        }
+
+        /** Re-indexes a point after its buckets, or a bucket's head, changed; empty drops it. */
+        void update(long k0, long k1, List<Bucket> buckets) {
+            root = update(root, 0, limit0, k0, k1, buckets);
+        }
+
+        private Outer update(Outer node, long from, long to, long k0, long k1, List<Bucket> buckets) {
+            if (node == null) {
+                if (buckets.isEmpty()) {
+                    return null;
+                }
+                node = new Outer();
+            }
+            if (from == to) {
+                Bucket min = null;
+                for (Bucket b : buckets) {
+                    min = earlier(min, b);
+                }
+                node.inner = set(node.inner, 0, limit1, k1, min, buckets);
+            } else {
+                long mid = from + (to - from) / 2;
+                if (k0 <= mid) {
+                    node.lo = update(node.lo, from, mid, k0, k1, buckets);
+                } else {
+                    node.hi = update(node.hi, mid + 1, to, k0, k1, buckets);
+                }
+                node.inner = set(node.inner, 0, limit1, k1, earlier(minAt(node.lo, k1), minAt(node.hi, k1)), null);
+            }
+            return node.inner == null ? null : node;
+        }
+
+        private Bucket minAt(Outer node, long k1) {
+            Inner i = node == null ? null : node.inner;
+            for (long from = 0, to = limit1; i != null && from < to; ) {
+                long mid = from + (to - from) / 2;
+                if (k1 <= mid) {
+                    i = i.lo;
+                    to = mid;
+                } else {
+                    i = i.hi;
+                    from = mid + 1;
+                }
+            }
+            return i == null ? null : i.min;
+        }
+
+        private static Inner set(Inner node, long from, long to, long k1, Bucket min, List<Bucket> buckets) {
+            if (node == null) {
+                if (min == null) {
+                    return null;
+                }
+                node = new Inner();
+            }
+            if (from == to) {
+                node.min = min;
+                node.buckets = min == null ? null : buckets;
+            } else {
+                long mid = from + (to - from) / 2;
+                if (k1 <= mid) {
+                    node.lo = set(node.lo, from, mid, k1, min, buckets);
+                } else {
+                    node.hi = set(node.hi, mid + 1, to, k1, min, buckets);
+                }
+                node.min = earlier(node.lo == null ? null : node.lo.min, node.hi == null ? null : node.hi.min);
+            }
+            return node.min == null ? null : node;
+        }
+
+        /**
+         * The earliest bucket with key 0 <= bound0 and key 1 <= bound1 that
+         * passes check (null: every one does), if it is earlier than best;
+         * best otherwise.
+         */
+        Bucket earliest(long bound0, long bound1, Predicate<Bucket> check, Bucket best) {
+            return earliest(root, 0, limit0, bound0, bound1, check, best);
+        }
+
+        private Bucket earliest(Outer node, long from, long to, long bound0, long bound1, Predicate<Bucket> check,
+                Bucket best) {
+            if (node == null || from > bound0) {
+                return best;
+            }
+            if (to <= bound0) {
+                Bucket min = prefixMin(node.inner, 0, limit1, bound1);
+                if (min == null || !isEarlier(min, best)) {
+                    return best; // nothing in here beats best
+                }
+                if (check == null) {
+                    return min;
+                }
+                if (from == to) {
+                    return search(node.inner, 0, limit1, bound1, check, best);
+                }
+            }
+            long mid = from + (to - from) / 2;
+            best = earliest(node.lo, from, mid, bound0, bound1, check, best);
+            return earliest(node.hi, mid + 1, to, bound0, bound1, check, best);
+        }
+
+        private static Bucket prefixMin(Inner node, long from, long to, long bound1) {
+            if (node == null || from > bound1) {
+                return null;
+            }
+            if (to <= bound1) {
+                return node.min;
+            }
+            long mid = from + (to - from) / 2;
+            return earlier(prefixMin(node.lo, from, mid, bound1), prefixMin(node.hi, mid + 1, to, bound1));
+        }
+
+        private static Bucket search(Inner node, long from, long to, long bound1, Predicate<Bucket> check,
+                Bucket best) {
+            if (node == null || from > bound1 || !isEarlier(node.min, best)) {
+                return best;
+            }
+            if (from == to) {
+                for (Bucket b : node.buckets) {
+                    if (isEarlier(b, best) && check.test(b)) {
+                        best = b;
+                    }
+                }
+                return best;
+            }
+            long mid = from + (to - from) / 2;
+            best = search(node.lo, from, mid, bound1, check, best);
+            return search(node.hi, mid + 1, to, bound1, check, best);
+        }
+    }
+
+    private final DemandTree refuels;
+    private final DemandTree dockedRefuels;
+    private final DemandTree deposits;      // keyed on the deposit, against the free space
+    private final DemandTree shortDeposits; // keyed on the return shortfall, against the level
+
+    private final Map<FuelRequest, Bucket> bucketOf = new HashMap<>();
+    private final LinkedHashSet<FuelRequest> arrivalOrder = new LinkedHashSet<>();
+    private long nextSequence = 0;
+    private volatile int depth = 0; // size() for lock-free metrics readers
+    // Full demand of waiting refuels, replaced (never mutated) so lock-free readers see whole vectors.
+    private volatile long[] refuelDemand;
+
+    /** A queue for a station with the given tank capacities, one per fuel type. */
+    public SatisfiabilityQueue(long[] capacity) {
+        long limit0 = FuelVector.get(capacity, 0), limit1 = FuelVector.get(capacity, 1);
+        this.refuels = new DemandTree(limit0, limit1);
+        this.dockedRefuels = new DemandTree(limit0, limit1);
+        this.deposits = new DemandTree(limit0, limit1);
+        this.shortDeposits = new DemandTree(limit0, limit1);
+        this.refuelDemand = new long[capacity.length];
+    }
+
+    /**
+     * Appends a request. holdsDock marks a refuel from a vehicle that is already
+     * docked (a supply vehicle taking its return fuel) and so needs no free dock.
+     */
+    public void add(FuelRequest request, boolean holdsDock) {
+        request.setSequence(nextSequence++);
+
+        long[] need = request.getMin();
+        DemandTree index;
+        long[] key = need;
+        if (request.getType() != FuelRequest.RequestType.FUEL_DEPOSIT) {
+            index = holdsDock ? dockedRefuels : refuels;
+        } else if (FuelVector.covers(need, request.getReturn())) {
+            index = deposits;
+        } else {
+            index = shortDeposits;
+            key = FuelVector.minus(request.getReturn(), need); // negative fuels: no shortfall, key 0
+        }
+        long k0 = index.key0(Math.max(0, FuelVector.get(key, 0)));
+        long k1 = index.key1(Math.max(0, FuelVector.get(key, 1)));
+
+        List<Bucket> buckets = index.at(k0, k1);
+        Bucket bucket = null;
+        if (buckets == null) {
+            buckets = new ArrayList<>(1);
+        } else {
+            for (Bucket b : buckets) {
+                if (Arrays.equals(b.need, need) && Arrays.equals(b.returnFuel, request.getReturn())) {
+                    bucket = b;
+                    break;
+                }
+            }
+        }
+        boolean newBucket = bucket == null;
+        if (newBucket) {
+            bucket = new Bucket(index, k0, k1, need, request.getReturn());
+            buckets.add(bucket);
+        }
+
+        bucket.requests.add(request);
+        bucketOf.put(request, bucket);
+        arrivalOrder.add(request);
+        depth = arrivalOrder.size();
+        if (index == refuels || index == dockedRefuels) {
+            refuelDemand = FuelVector.plus(refuelDemand, request.getAmount());
+        }
+        if (newBucket) {
+            index.update(k0, k1, buckets); // a later arrival in an old bucket leaves its head alone
+        }
+    }
+
+    /**
+     * Removes a request (served or abandoned). Does nothing if it is not queued.
+     */
+    public void remove(FuelRequest request) {
+        Bucket bucket = bucketOf.remove(request);
+        if (bucket == null) {
+            return;
+        }
+        arrivalOrder.remove(request);
+        depth = arrivalOrder.size();
+        DemandTree index = bucket.index;
+        if (index == refuels || index == dockedRefuels) {
+            refuelDemand = FuelVector.minus(refuelDemand, request.getAmount());
+        }
+        boolean wasHead = bucket.head() == request;
+        bucket.requests.remove(request);
+        if (!wasHead) {
+            return; // the bucket's earliest request, all the tree knows of it, is unchanged
+        }
+
+        // Drop empty buckets so lookups only ever see live demand sizes.
+        List<Bucket> buckets = index.at(bucket.key0, bucket.key1);
+        if (bucket.requests.isEmpty()) {
+            buckets.remove(bucket);
+        }
+        index.update(bucket.key0, bucket.key1, buckets);
+    }
+
+    public boolean isEmpty() {
+        return arrivalOrder.isEmpty();
+    }
+
+    public int size() {
+        return arrivalOrder.size();
+    }
+
+    /** size() without the station lock; may lag a concurrent add or remove. */
+    public int depth() {
+        return depth;
+    }
+
+    /** What the waiting refuels came for, per fuel, without the station lock; do not modify. */
+    public long[] refuelDemand() {
+        return refuelDemand;
+    }
+
+    /** Iterates waiting requests in arrival order. */
+    @Override
+    public Iterator<FuelRequest> iterator() {
+        return arrivalOrder.iterator();
+    }
+
+    /**
+     * Scannable FIFO lookup: returns the earliest request in arrival order that
+     * the station could serve with the given levels, or null if none can.
+     * O(log^2 C) on a two-fuel station, see the class comment.
+     */
+    public FuelRequest firstSatisfiable(long[] level, long[] capacity, boolean dockFree) {
+        boolean wide = level.length > 2;
+        Predicate<Bucket> covered = wide ? b -> FuelVector.covers(level, b.need) : null;
+        long level0 = FuelVector.get(level, 0), level1 = FuelVector.get(level, 1);
+
+        Bucket best = dockedRefuels.earliest(level0, level1, covered, null);
+        if (dockFree) {
+            best = refuels.earliest(level0, level1, covered, best);
+            // Deposits must fit into the tanks and leave enough for the return trip.
+            best = deposits.earliest(FuelVector.get(capacity, 0) - level0, FuelVector.get(capacity, 1) - level1,
+                    wide ? b -> FuelVector.fits(level, b.need, capacity) : null, best);
+            best = shortDeposits.earliest(level0, level1,
+                    b -> FuelVector.fits(level, b.need, capacity) && FuelVector.coversAfter(level, b.need, b.returnFuel),
+                    best);
+        }
+        return best == null ? null : best.head();
+    }
+
+    private static boolean isEarlier(Bucket a, Bucket best) {
+        return best == null || a.sequence() < best.sequence();
+    }
+
+    private static Bucket earlier(Bucket a, Bucket b) {
+        if (a == null) {
+            return b;
+        }
+        return b == null || b.sequence() >= a.sequence() ? a : b;
+    }
+}
@@ -3,8 +3,9 @@ import java.util.Random;
 /**
  * Supply vehicle that delivers fuel, then requests fuel for return trip.
  */
-public class SupplyVehicle extends Thread {
+public class SupplyVehicle implements Runnable {
     private final FuelStation station;
+    private final int id;
     private final String vehicleId;
     private final int nitrogenDelivery;
     private final int quantumDelivery;
@@ -14,19 +15,21 @@ public class SupplyVehicle extends Thread {
     private final Random random;
     private final int maxTravelTime;
     private final int maxServiceTime;
+    private int completedTrips;
 
     public SupplyVehicle(FuelStation station, int id, int nitrogenDelivery,
             int quantumDelivery, int nitrogenForReturn,
             int quantumForReturn, int numTrips,
             int maxTravelTime, int maxServiceTime) {
         this.station = station;
+        this.id = id;
         this.vehicleId = "SupplyVehicle-" + id;
         this.nitrogenDelivery = nitrogenDelivery;
         this.quantumDelivery = quantumDelivery;
         this.nitrogenForReturn = nitrogenForReturn;
         this.quantumForReturn = quantumForReturn;
         this.numTrips = numTrips;
-        this.random = new Random();
+        this.random = WorkloadTrace.vehicleRandom(WorkloadTrace.SUPPLY, id);
         this.maxTravelTime = maxTravelTime;
         this.maxServiceTime = maxServiceTime;
     }
@@ -36,41 +39,89 @@ public class SupplyVehicle extends Thread {
         for (int trip = 1; trip <= numTrips; trip++) {
             try {
                 int travelTime = random.nextInt(maxTravelTime) + 200;
-                Thread.sleep(travelTime);
 
-                boolean depositDockAcquired = station.depositFuel(nitrogenDelivery, quantumDelivery, vehicleId,
-                        nitrogenForReturn, quantumForReturn);
-                if (!depositDockAcquired) {
-                    return;
-                }
-
-                // Simulate pumping time for deposit
-                try {
-                    int serviceTime = random.nextInt(maxServiceTime) + 100;
-                    Thread.sleep(serviceTime);
-                } catch (InterruptedException e) {
-                    station.releaseDock(vehicleId); // Ensure release if interrupted
-                    throw e;
-                }
-
-                // Turnaround time (staying at dock)
-                Thread.sleep(50);
-
-                // Refuel using standard method (Station logic handles the fact we hold the
-                // dock)
-                station.requestFuel(nitrogenForReturn, quantumForReturn, vehicleId);
-
-                // Simulate pumping time for refuel
+                // With a dispatcher the vehicle waits for its slot and brings what the tanks will need.
+                SupplyDispatcher dispatcher = station.dispatcher();
+                SupplyDispatcher.Dispatch run = dispatcher == null ? null : awaitDispatch(dispatcher, travelTime);
                 try {
-                    int serviceTime = random.nextInt(maxServiceTime) + 50;
-                    Thread.sleep(serviceTime);
+                    Thread.sleep(travelTime);
+                    if (!deliver(run == null ? nitrogenDelivery : run.nitrogen(),
+                            run == null ? quantumDelivery : run.quantum())) {
+                        return;
+                    }
                 } finally {
-                    station.releaseDock(vehicleId);
+                    if (run != null) dispatcher.landed(run);
                 }
+                completedTrips++;
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 return;
             }
         }
     }
+
+    /** Docks, unloads nitrogen and quantum, takes the return fuel and undocks; false if turned away. */
+    private boolean deliver(int nitrogen, int quantum) throws InterruptedException {
+        // Drawn before docking so the trace holds the whole visit; same draw order as before.
+        int depositTime = random.nextInt(maxServiceTime) + 100;
+        int refuelTime = random.nextInt(maxServiceTime) + 50;
+        WorkloadTrace.record(WorkloadTrace.SUPPLY, id, nitrogen, quantum,
+                nitrogenForReturn, quantumForReturn, depositTime, refuelTime);
+        // With -Dstation.partial the vehicle unloads what fits, undocks and queues
+        // again with the rest; each leg unloads at least one unit of every fuel left.
+        int leftNitrogen = nitrogen, leftQuantum = quantum;
+        while (true) {
+            FuelStation.Fill unloaded = station.depositFuel(leftNitrogen, leftQuantum,
+                    Math.min(FuelStation.acceptable(nitrogen), leftNitrogen),
+                    Math.min(FuelStation.acceptable(quantum), leftQuantum),
+                    vehicleId, nitrogenForReturn, quantumForReturn);
+            if (unloaded == null) {
+                return false;
+            }
+
+            // Simulate pumping time for deposit
+            try {
+                Thread.sleep(depositTime);
+            } catch (InterruptedException e) {
+                station.releaseDock(vehicleId); // Ensure release if interrupted
+                throw e;
+            }
+            leftNitrogen -= unloaded.nitrogen();
+            leftQuantum -= unloaded.quantum();
+            if (leftNitrogen == 0 && leftQuantum == 0) {
+                break;
+            }
+            station.releaseDock(vehicleId);
+        }
+
+        // Turnaround time (staying at dock)
+        Thread.sleep(50);
+
+        // Refuel using standard method (Station logic handles the fact we hold the
+        // dock)
+        station.requestFuel(nitrogenForReturn, quantumForReturn, vehicleId);
+
+        // Simulate pumping time for refuel
+        try {
+            Thread.sleep(refuelTime);
+        } finally {
+            station.releaseDock(vehicleId);
+        }
+        return true;
+    }
+
+    private SupplyDispatcher.Dispatch awaitDispatch(SupplyDispatcher dispatcher, int travelTime)
+            throws InterruptedException {
+        long held = 0;
+        SupplyDispatcher.Dispatch run;
+        while ((run = dispatcher.plan(travelTime, nitrogenDelivery, quantumDelivery, held)).waitMs() > 0) {
+            Thread.sleep(run.waitMs());
+            held += run.waitMs();
+        }
+        return run;
+    }
+
+    public int getCompletedTrips() {
+        return completedTrips;
+    }
 }